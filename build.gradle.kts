@@ -1,5 +1,6 @@
 plugins {
     `java-library`
+    `java-test-fixtures`
 }
 
 group = "be.kdg.int5"
@@ -15,12 +16,42 @@ repositories {
     mavenCentral()
 }
 
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations {
+    named(jmh.implementationConfigurationName) { extendsFrom(configurations.implementation.get()) }
+    named(jmh.runtimeOnlyConfigurationName) { extendsFrom(configurations.runtimeOnly.get()) }
+}
+
 dependencies {
     implementation("com.fasterxml.jackson.core:jackson-databind:2.18.1")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+
+    "jmhImplementation"(testFixtures(project))
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.test {
     useJUnitPlatform()
 }
+
+// Runs the JMH benchmarks in src/jmh once per thread count, e.g.
+// ./gradlew jmh -Pjmh.include=RequestEncoding -Pjmh.threads=1,4,16
+// -Pjmh.baseUrl=http://host:port points the end-to-end benchmarks at a running platform instead of the embedded stub
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks with the gc profiler at several thread counts."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("be.kdg.int5.BenchmarkRunner")
+    args(
+        providers.gradleProperty("jmh.include").getOrElse(".*"),
+        providers.gradleProperty("jmh.threads").getOrElse("1,4,8"),
+        layout.buildDirectory.dir("reports/jmh").get().asFile.path
+    )
+    providers.gradleProperty("jmh.baseUrl").orNull?.let { systemProperty("bench.baseUrl", it) }
+}
@@ -0,0 +1,44 @@
+package be.kdg.int5;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link GameSDK#bearerToken()} fast path every request takes, shared by all benchmark threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BearerTokenBenchmark {
+    private GameSDK sdk;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sdk = BenchmarkPlatform.loopbackSdk();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sdk.close();
+    }
+
+    @Benchmark
+    public String bearerToken() {
+        return sdk.bearerToken();
+    }
+}
@@ -0,0 +1,46 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.LoopbackTransport;
+import be.kdg.int5.transport.Transport;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Canned platform responses for the benchmarks that run without sockets, the ones over a socket use {@link be.kdg.int5.stub.PlatformStub}.
+ */
+final class BenchmarkPlatform {
+    static final byte[] AUTH_RESPONSE = "{\"access_token\":\"benchmark-token\",\"token_type\":\"Bearer\",\"expires_in\":3600}"
+            .getBytes(StandardCharsets.UTF_8);
+    static final byte[] UUID_RESPONSE = ("{\"uuid\":\"" + UUID.randomUUID() + "\"}").getBytes(StandardCharsets.UTF_8);
+
+    private BenchmarkPlatform() {
+    }
+
+    static int status(String method, String path) {
+        if (path.endsWith("/lobby") && method.equals("POST")) return 201;
+        return 200;
+    }
+
+    static byte[] body(String method, String path) {
+        if (path.endsWith("/registry/auth")) return AUTH_RESPONSE;
+        if (path.endsWith("/registry/games") || (path.endsWith("/lobby") && method.equals("POST"))) return UUID_RESPONSE;
+        return null;
+    }
+
+    static Transport loopback() {
+        return new LoopbackTransport(request -> {
+            String method = request.method();
+            String path = request.uri().getPath();
+            byte[] body = body(method, path);
+            return body == null ? LoopbackTransport.Reply.of(status(method, path)) : LoopbackTransport.Reply.of(status(method, path), body);
+        });
+    }
+
+    static GameSDK loopbackSdk() {
+        return new GameSDK.Builder()
+                .baseUrl("http://loopback")
+                .transport(loopback())
+                .init("benchmark");
+    }
+}
@@ -0,0 +1,38 @@
+package be.kdg.int5;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Entry point of the {@code jmh} Gradle task, runs the selected benchmarks once per thread count with the gc profiler,
+ * so both the throughput and the allocation rate ({@code gc.alloc.rate.norm}) of every hot path are reported.
+ * <br><br>
+ * Arguments: the benchmark include pattern, a comma separated list of thread counts and the directory for the JSON results.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+        String threadCounts = args.length > 1 ? args[1] : "1,4,8";
+        File outputDirectory = new File(args.length > 2 ? args[2] : "build/reports/jmh");
+        outputDirectory.mkdirs();
+
+        for (String threadCount : threadCounts.split(",")) {
+            int threads = Integer.parseInt(threadCount.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(outputDirectory, "results-" + threads + "-threads.json").getPath());
+            String baseUrl = System.getProperty(EndToEndBenchmark.BASE_URL_PROPERTY);
+            if (baseUrl != null) options.jvmArgsAppend("-D" + EndToEndBenchmark.BASE_URL_PROPERTY + "=" + baseUrl);
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.Achievement;
+import be.kdg.int5.domain.Rule;
+import be.kdg.int5.transport.Transport;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU side of the {@link CompressionPolicy} trade-off: compressing a game registration per coding and level, and
+ * decompressing it again the way responses are. The byte side is in the {@code bodyBytes} and {@code wireBytes}
+ * counters of {@code compress}, their ratio is what the coding saves on the wire ({@code NONE} sends the body as it is).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    @Param({"10", "1000"})
+    private int listSize;
+
+    @Param({"NONE", "GZIP", "DEFLATE"})
+    private String coding;
+
+    @Param({"1", "6", "9"})
+    private int level;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long bodyBytes;
+        public long wireBytes;
+    }
+
+    private GameSDK sdk;
+    private Compression compression;
+    private byte[] body;
+    private byte[] compressed;
+    private Map<String, List<String>> responseHeaders;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sdk = BenchmarkPlatform.loopbackSdk();
+        List<Rule> rules = new ArrayList<>();
+        List<String> screenshots = new ArrayList<>();
+        List<Achievement> achievements = new ArrayList<>();
+        for (int i = 0; i < listSize; i++) {
+            rules.add(new Rule(i, "Move a piece to an empty square next to it, rule " + i));
+            screenshots.add("https://cdn.example.com/games/benchmark/screenshots/" + i + ".png");
+            achievements.add(new Achievement(i, "Achievement " + i, "Win " + i + " games in a row", i + 1));
+        }
+        body = RequestBodies.registerGame(
+                sdk,
+                "Benchmark game",
+                "https://games.example.com/benchmark",
+                "A game that only exists to be compressed",
+                new BigDecimal("9.99"),
+                "https://cdn.example.com/icon.png",
+                "https://cdn.example.com/background.png",
+                rules,
+                screenshots,
+                achievements
+        );
+
+        if (coding.equals("NONE")) {
+            compressed = body;
+            responseHeaders = Map.of();
+        } else {
+            CompressionPolicy.Coding selected = CompressionPolicy.Coding.valueOf(coding);
+            compression = new Compression(CompressionPolicy.builder().coding(selected).level(level).minimumSize(0).build());
+            compressed = compression.compress(body);
+            responseHeaders = Map.of("Content-Encoding", List.of(selected.contentEncoding()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sdk.close();
+    }
+
+    @Benchmark
+    public byte[] compress(Sizes sizes) {
+        byte[] wire = compression != null ? compression.compress(body) : null;
+        if (wire == null) wire = body;
+        sizes.bodyBytes += body.length;
+        sizes.wireBytes += wire.length;
+        return wire;
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        Transport.BodyConsumer<Long> consumer = Compression.decoding(CompressionBenchmark::counting).open(200, responseHeaders);
+        consumer.accept(ByteBuffer.wrap(compressed));
+        return consumer.finish();
+    }
+
+    private static Transport.BodyConsumer<Long> counting(int statusCode, Map<String, List<String>> headers) {
+        return new Transport.BodyConsumer<>() {
+            private long size;
+
+            @Override
+            public void accept(ByteBuffer chunk) {
+                size += chunk.remaining();
+            }
+
+            @Override
+            public Long finish() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.EndState;
+import be.kdg.int5.domain.GameContext;
+import be.kdg.int5.domain.LobbyContext;
+import be.kdg.int5.stub.PlatformStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete SDK calls, in-process through the loopback transport ({@code loopback}, the SDK's own cost) and over a
+ * local socket with HTTP/1.1 ({@code http1}) or HTTP/2 ({@code http2}).
+ * <br><br>
+ * <i>Note: The embedded {@link PlatformStub} only speaks HTTP/1.1, so {@code http2} falls back to it. Pass a server that speaks h2c
+ * through the {@code bench.baseUrl} system property ({@code -Pjmh.baseUrl}) to compare both versions.</i>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+    static final String BASE_URL_PROPERTY = "bench.baseUrl";
+
+    @Param({"loopback", "http1", "http2"})
+    private String transport;
+
+    private PlatformStub stub;
+    private GameSDK sdk;
+    private GameContext game;
+    private LocalDateTime startTime;
+
+    @State(Scope.Thread)
+    public static class PlayerState {
+        private final UUID playerId = UUID.randomUUID();
+        private LobbyContext lobby;
+        private int playerCount;
+
+        @Setup(Level.Trial)
+        public void setUp(EndToEndBenchmark benchmark) {
+            lobby = benchmark.sdk.createLobby(benchmark.game, playerId, 1_000_000);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        GameSDK.Builder builder = new GameSDK.Builder();
+        if (transport.equals("loopback")) {
+            builder.baseUrl("http://loopback").transport(BenchmarkPlatform.loopback());
+        } else {
+            String baseUrl = System.getProperty(BASE_URL_PROPERTY);
+            if (baseUrl == null) {
+                stub = PlatformStub.builder().recordRequests(false).start();
+                baseUrl = stub.baseUrl();
+            }
+            builder.baseUrl(baseUrl).httpVersion(transport.equals("http2") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+        }
+        sdk = builder.init("benchmark");
+        game = new GameContext(UUID.randomUUID());
+        startTime = LocalDateTime.of(2025, 1, 1, 12, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sdk.close();
+        if (stub != null) stub.close();
+    }
+
+    @Benchmark
+    public LobbyContext createLobby(PlayerState player) {
+        return sdk.createLobby(game, player.playerId, 4);
+    }
+
+    @Benchmark
+    public void updateLobbyPlayerCount(PlayerState player) {
+        // A different count every call, the lobby lane would skip a patch that does not change anything
+        sdk.updateLobbyPlayerCount(player.lobby, ++player.playerCount);
+    }
+
+    @Benchmark
+    public boolean submitCompletedSession(PlayerState player) {
+        return sdk.submitCompletedSession(game, player.playerId, startTime, startTime.plusMinutes(10), EndState.WIN, 31, 4.5, 12, 9, 220, "knight", true);
+    }
+
+    @Benchmark
+    public boolean updateAchievementProgress(PlayerState player) {
+        return sdk.updateAchievementProgress(game, player.playerId, 1, ++player.playerCount);
+    }
+}
@@ -0,0 +1,85 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.GameContext;
+import be.kdg.int5.transport.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the request of a call once its body is encoded, the {@link RequestTemplate}s against building every
+ * uri and header from strings the way the modules did before (the {@code legacy} benchmarks).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBuildingBenchmark {
+    private GameSDK sdk;
+    private GameContext gameContext;
+    private UUID playerId;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sdk = BenchmarkPlatform.loopbackSdk();
+        gameContext = new GameContext(UUID.randomUUID());
+        playerId = UUID.randomUUID();
+        body = "{\"newProgressAmount\":3}".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sdk.close();
+    }
+
+    @Benchmark
+    public Transport.Request createLobby() {
+        return sdk.endpoints.createLobby.request(sdk.tokenManager.token(), body);
+    }
+
+    @Benchmark
+    public Transport.Request createLobbyLegacy() {
+        return Transport.Request.newBuilder()
+                .method("POST", body)
+                .setHeader("Authorization", "Bearer "+sdk.bearerToken())
+                .setHeader("Content-Type", "application/json")
+                .setHeader("Accept", "application/json")
+                .uri(URI.create(sdk.gameplayBaseUrl+"/lobby"))
+                .build();
+    }
+
+    @Benchmark
+    public Transport.Request updateAchievementProgress() {
+        String path = Endpoints.updateAchievementProgressPath(gameContext, playerId, 7);
+        RequestTemplate template = sdk.endpoints.updateAchievementProgress;
+        return template.prepare(template.uri(path), body).create(sdk.tokenManager.token());
+    }
+
+    @Benchmark
+    public Transport.Request updateAchievementProgressLegacy() {
+        String path = "/statistics/achievements/" + 7 + "?playerId=" + playerId + "&gameId=" + gameContext.gameId();
+        return Transport.Request.newBuilder()
+                .method("POST", body)
+                .setHeader("Authorization", "Bearer "+sdk.bearerToken())
+                .setHeader("Content-Type", "application/json")
+                .uri(URI.create(sdk.statisticsBaseUrl+path))
+                .build();
+    }
+}
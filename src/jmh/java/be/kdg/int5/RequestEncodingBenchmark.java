@@ -0,0 +1,157 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.Achievement;
+import be.kdg.int5.domain.EndState;
+import be.kdg.int5.domain.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body encoding, {@link RequestBodies} against the string concatenation the modules used before (the {@code legacy} benchmarks).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestEncodingBenchmark {
+    @Param({"10", "1000"})
+    private int listSize;
+
+    private GameSDK sdk;
+    private List<Rule> rules;
+    private List<String> screenshots;
+    private List<Achievement> achievements;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sdk = BenchmarkPlatform.loopbackSdk();
+        rules = new ArrayList<>();
+        screenshots = new ArrayList<>();
+        achievements = new ArrayList<>();
+        for (int i = 0; i < listSize; i++) {
+            rules.add(new Rule(i, "Move a piece to an empty square next to it, rule " + i));
+            screenshots.add("https://cdn.example.com/games/benchmark/screenshots/" + i + ".png");
+            achievements.add(new Achievement(i, "Achievement " + i, "Win " + i + " games in a row", i + 1));
+        }
+        startTime = LocalDateTime.of(2025, 1, 1, 12, 0);
+        endTime = startTime.plusMinutes(12);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sdk.close();
+    }
+
+    @Benchmark
+    public byte[] registerGame() {
+        return RequestBodies.registerGame(
+                sdk,
+                "Benchmark game",
+                "https://games.example.com/benchmark",
+                "A game that only exists to be encoded",
+                new BigDecimal("9.99"),
+                "https://cdn.example.com/icon.png",
+                "https://cdn.example.com/background.png",
+                rules,
+                screenshots,
+                achievements
+        );
+    }
+
+    @Benchmark
+    public byte[] registerGameLegacy() {
+        String json = "{";
+        json += "\"title\": \"" + "Benchmark game" + "\"";
+        json += ", \"currentHost\": \"" + "https://games.example.com/benchmark" + "\"";
+        json += ", \"description\": \"" + "A game that only exists to be encoded" + "\"";
+        json += ", \"currentPrice\": " + new BigDecimal("9.99").doubleValue();
+        json += ", \"iconUrl\": \"" + "https://cdn.example.com/icon.png" + "\"";
+        json += ", \"backgroundUrl\": \"" + "https://cdn.example.com/background.png" + "\"";
+
+        boolean firstElement;
+        json += ", \"rules\": [";
+        firstElement = true;
+        for (Rule r : rules) {
+            if (firstElement) firstElement = false; else json += ",";
+            json += r.toJson();
+        }
+        json += "]";
+
+        json += ", \"screenshots\": [";
+        firstElement = true;
+        for (String screenshotUrl : screenshots) {
+            if (firstElement) firstElement = false; else json += ",";
+            json += "\"" + screenshotUrl + "\"";
+        }
+        json += "]";
+
+        json += ", \"achievements\": [";
+        firstElement = true;
+        for (Achievement a : achievements) {
+            if (firstElement) firstElement = false; else json += ",";
+            json += a.toJson();
+        }
+        json += "]";
+        json += "}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] submitCompletedSession() {
+        return RequestBodies.submitCompletedSession(sdk, startTime, endTime, EndState.WIN, 31, 4.5, 12, 9, 220, "knight", true);
+    }
+
+    @Benchmark
+    public byte[] submitCompletedSessionLegacy() {
+        String json = """
+            {
+                "startTime": "%s",
+                "endTime": "%s",
+                "endState": "%s",
+                "turnsTaken": "%s",
+                "avgSecondsPerTurn": "%s",
+                "playerScore": "%s",
+                "opponentScore": "%s",
+                "clicks": "%s",
+                "character": "%s",
+                "wasFirstToGo": "%s"
+            }
+            """
+            .formatted(
+                    Objects.requireNonNull(startTime.toString()),
+                    Objects.requireNonNull(endTime.toString()),
+                    Objects.requireNonNull(EndState.WIN),
+                    31,
+                    4.5,
+                    12,
+                    9,
+                    220,
+                    "knight",
+                    true
+            );
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response decoding, the streaming field extraction of {@link ResponseBodies} against binding the whole body to a {@link Map}.
+ * <br><br>
+ * {@code extraFields} pads the registry response with fields the SDK does not need, like the full game the registry echoes back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseDecodingBenchmark {
+    @Param({"0", "100"})
+    private int extraFields;
+
+    private GameSDK sdk;
+    private byte[] authResponse;
+    private byte[] uuidResponse;
+    private Transport.BodyReader<String[]> authReader;
+    private Transport.BodyReader<String[]> uuidReader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sdk = BenchmarkPlatform.loopbackSdk();
+        authResponse = BenchmarkPlatform.AUTH_RESPONSE;
+
+        StringBuilder json = new StringBuilder("{\"uuid\":\"").append(UUID.randomUUID()).append('"');
+        for (int i = 0; i < extraFields; i++) {
+            json.append(",\"field").append(i).append("\":{\"title\":\"Achievement ").append(i).append("\",\"counterTotal\":").append(i).append('}');
+        }
+        uuidResponse = json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+
+        authReader = ResponseBodies.fields(sdk, 200, "access_token", "expires_in");
+        uuidReader = ResponseBodies.fields(sdk, 200, "uuid");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sdk.close();
+    }
+
+    @Benchmark
+    public String[] authenticate() throws IOException {
+        return read(authReader, authResponse);
+    }
+
+    @Benchmark
+    public Map<?, ?> authenticateMap() throws IOException {
+        return sdk.objectMapper.readValue(new String(authResponse, StandardCharsets.UTF_8), Map.class);
+    }
+
+    @Benchmark
+    public String[] uuid() throws IOException {
+        return read(uuidReader, uuidResponse);
+    }
+
+    @Benchmark
+    public Map<?, ?> uuidMap() throws IOException {
+        return sdk.objectMapper.readValue(new String(uuidResponse, StandardCharsets.UTF_8), Map.class);
+    }
+
+    private static String[] read(Transport.BodyReader<String[]> reader, byte[] body) throws IOException {
+        Transport.BodyConsumer<String[]> consumer = reader.open(200, Map.of());
+        consumer.accept(ByteBuffer.wrap(body));
+        return consumer.finish();
+    }
+}
@@ -0,0 +1,291 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.Achievement;
+import be.kdg.int5.domain.GameContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects achievement progress as increments and periodically sends the resulting total, so a game does not need to
+ * keep running totals itself and a burst of increments turns into a single request.
+ * <br><br>
+ * Increments are added to a striped counter per (game, player, achievement), which keeps {@link #add} cheap under
+ * contention. Once every {@code window} the totals that changed are sent as the absolute {@code newProgressAmount}.
+ * Totals are capped at the achievement's {@link Achievement#counterTotal()} when the game was registered through
+ * this SDK (or the achievements were passed to the builder) and nothing is sent anymore once that total is reached.
+ * <br><br>
+ * Totals are kept for as long as the aggregator lives. With {@link Builder#expireAfter(Duration)} a total that has been
+ * sent and did not change for that long is replaced by just the value that was sent, which a returning player's
+ * increments are counted on top of again, so the progress sent never goes backwards.
+ * <br><br>
+ * Create one through {@link GameSDK#achievementAggregator()} and {@link #close()} it on shutdown so pending progress is sent.
+ */
+public class AchievementAggregator implements AutoCloseable {
+    private record Key(UUID gameId, UUID playerId, int achievementNumber) {
+    }
+
+    private static final class Progress {
+        private final GameContext gameContext;
+        private final LongAdder total = new LongAdder();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean dirty;
+        private volatile long sent;
+        // Set while the entry is being expired, and for good once it was removed
+        private volatile boolean retired;
+        // The total seen by the previous expiry sweep, only used by the sweep
+        private long sweptTotal = -1;
+
+        private Progress(GameContext gameContext) {
+            this.gameContext = gameContext;
+        }
+    }
+
+    private static final int CLOSE_ROUNDS = 3;
+
+    private final GameSDK sdk;
+    private final ConcurrentHashMap<Key, Progress> progress = new ConcurrentHashMap<>();
+    // The last total sent for each expired entry, picked up again by the next entry of the key
+    private final ConcurrentHashMap<Key, Long> expired = new ConcurrentHashMap<>();
+    private final Set<Key> dirtyKeys = ConcurrentHashMap.newKeySet();
+    private final ScheduledFuture<?> scheduledFlush;
+    private final long expireAfterNanos;
+    private long lastSweep = System.nanoTime();
+    private volatile boolean closed;
+
+    private AchievementAggregator(Builder builder) {
+        this.sdk = builder.sdk;
+        this.expireAfterNanos = builder.expireAfter != null ? builder.expireAfter.toNanos() : 0;
+        long windowMillis = builder.window.toMillis();
+        this.scheduledFlush = sdk.scheduler.scheduleWithFixedDelay(() -> {
+            flush();
+            if (expireAfterNanos > 0) expireIdle();
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void increment(GameContext ctx, UUID playerId, int achievementNumber) {
+        add(ctx, playerId, achievementNumber, 1);
+    }
+
+    /**
+     * @param delta how much progress the player made since the last call, must not be negative
+     */
+    public void add(GameContext ctx, UUID playerId, int achievementNumber, long delta) {
+        if (delta < 0) throw new IllegalArgumentException("delta must not be negative");
+        if (closed) throw new IllegalStateException("AchievementAggregator is closed");
+
+        Key key = new Key(ctx.gameId(), Objects.requireNonNull(playerId), achievementNumber);
+        markDirty(key, addTo(key, ctx, delta));
+    }
+
+    /**
+     * Sets the progress the player already had before this aggregator was used, increments are counted on top of it.
+     * <br><br>
+     * <i>Note: Call this before the first increment for that achievement, the seed itself is not sent. A total this
+     * aggregator already holds or sent is only raised by it, never lowered.</i>
+     */
+    public void seed(GameContext ctx, UUID playerId, int achievementNumber, long currentProgress) {
+        Key key = new Key(ctx.gameId(), Objects.requireNonNull(playerId), achievementNumber);
+        Progress entry = addTo(key, ctx, 0);
+        long missing = currentProgress - entry.total.sum();
+        if (missing > 0) entry.total.add(missing);
+        entry.sent = Math.max(entry.sent, currentProgress);
+    }
+
+    /**
+     * Sends the latest total of every achievement that changed since it was last sent.
+     * @return a future that completes when all of those requests finished, failed updates are retried on the next flush
+     */
+    public CompletableFuture<Void> flush() {
+        List<CompletableFuture<?>> requests = new ArrayList<>();
+        for (Key key : dirtyKeys) {
+            dirtyKeys.remove(key);
+            Progress entry = progress.get(key);
+            if (entry == null) continue;
+            // An update for this key is still on its way, sending another one could overtake it
+            if (!entry.sending.compareAndSet(false, true)) {
+                dirtyKeys.add(key);
+                continue;
+            }
+            entry.dirty = false;
+
+            long total = entry.total.sum();
+            Achievement achievement = sdk.registeredAchievement(entry.gameContext, key.achievementNumber());
+            if (achievement != null) total = Math.min(total, achievement.counterTotal());
+            total = Math.min(total, Integer.MAX_VALUE);
+
+            boolean alreadyComplete = achievement != null && entry.sent >= achievement.counterTotal();
+            if (total <= entry.sent || alreadyComplete) {
+                entry.sending.set(false);
+                continue;
+            }
+
+            long newTotal = total;
+            requests.add(send(entry, key, newTotal).whenComplete((updated, failure) -> {
+                if (failure == null) entry.sent = Math.max(entry.sent, newTotal);
+                entry.sending.set(false);
+                if (failure != null || entry.total.sum() > newTotal) markDirty(key, entry);
+            }));
+        }
+        return CompletableFuture.allOf(requests.toArray(CompletableFuture<?>[]::new)).exceptionally(failure -> null);
+    }
+
+    /**
+     * Stops the periodic flush and sends all pending progress, waiting for it to be sent.
+     * <br><br>
+     * Updates that keep failing are retried a few times, after that their progress is lost.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        scheduledFlush.cancel(false);
+        awaitSending();
+        for (int round = 0; round < CLOSE_ROUNDS && !dirtyKeys.isEmpty(); round++) {
+            flush().join();
+            awaitSending();
+        }
+    }
+
+    /**
+     * @return the number of achievements whose counter is held, not counting the totals left by expired ones
+     */
+    int heldCounters() {
+        return progress.size();
+    }
+
+    private void awaitSending() {
+        for (Progress entry : progress.values()) {
+            while (entry.sending.get()) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private Progress addTo(Key key, GameContext ctx, long delta) {
+        while (true) {
+            Progress entry = progress.computeIfAbsent(key, k -> create(k, ctx));
+            entry.total.add(delta);
+            if (!entry.retired) return entry;
+            // The entry is being expired, take the delta back and add it to whichever entry is left in its place
+            entry.total.add(-delta);
+            Thread.onSpinWait();
+        }
+    }
+
+    private Progress create(Key key, GameContext ctx) {
+        Progress entry = new Progress(ctx);
+        Long floor = expired.remove(key);
+        if (floor != null) {
+            entry.total.add(floor);
+            entry.sent = floor;
+        }
+        return entry;
+    }
+
+    /**
+     * Replaces the entries whose total was sent and did not change since the previous sweep by the total that was sent,
+     * a sweep runs once every {@code expireAfter} so an entry is forgotten after being idle for one to two times that long.
+     */
+    private void expireIdle() {
+        long now = System.nanoTime();
+        if (now - lastSweep < expireAfterNanos) return;
+        lastSweep = now;
+        progress.forEach((key, entry) -> {
+            long total = entry.total.sum();
+            if (total != entry.sweptTotal) {
+                entry.sweptTotal = total;
+                return;
+            }
+            // Same guard as the flush, an entry with an update on its way is not idle
+            if (entry.dirty || !entry.sending.compareAndSet(false, true)) return;
+            entry.retired = true;
+            // An add that did not see the retired flag is counted in this sum, so the entry is only removed when there was none
+            if (!entry.dirty && entry.total.sum() == total) {
+                // Put before the removal, the next entry of the key can only be created once this one is gone
+                if (entry.sent > 0) expired.put(key, entry.sent);
+                progress.remove(key, entry);
+            } else {
+                entry.retired = false;
+            }
+            entry.sending.set(false);
+        });
+    }
+
+    private CompletableFuture<Boolean> send(Progress entry, Key key, long total) {
+        try {
+            return UpdateAchievementProgressModule.updateAchievementProgressAsync(
+                    sdk,
+                    entry.gameContext,
+                    key.playerId(),
+                    key.achievementNumber(),
+                    (int) total
+            );
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void markDirty(Key key, Progress entry) {
+        if (entry.dirty) return;
+        entry.dirty = true;
+        dirtyKeys.add(key);
+    }
+
+
+    public static class Builder {
+        private final GameSDK sdk;
+        private Duration window = Duration.ofSeconds(1);
+        private Duration expireAfter;
+
+        Builder(GameSDK sdk) {
+            this.sdk = sdk;
+        }
+
+        /**
+         * @param window how long increments are merged before the totals are sent
+         * @return the builder
+         */
+        public Builder window(Duration window) {
+            if (window.isNegative() || window.isZero()) throw new IllegalArgumentException("window must be positive");
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Only keeps the last total that was sent of an achievement that stopped changing, instead of its counter.
+         * Totals are not expired by default.
+         * @param expireAfter how long the total of an achievement is kept after it was sent and stopped changing
+         * @return the builder
+         */
+        public Builder expireAfter(Duration expireAfter) {
+            if (expireAfter.isNegative() || expireAfter.isZero()) throw new IllegalArgumentException("expireAfter must be positive");
+            this.expireAfter = expireAfter;
+            return this;
+        }
+
+        /**
+         * Only needed for games that were not registered through this SDK instance.
+         * @param ctx the game the achievements belong to
+         * @param achievements the achievements of the game, used to cap progress at their {@link Achievement#counterTotal()}
+         * @return the builder
+         */
+        public Builder achievements(GameContext ctx, List<Achievement> achievements) {
+            sdk.rememberAchievements(ctx, achievements);
+            return this;
+        }
+
+        public AchievementAggregator build() {
+            return new AchievementAggregator(this);
+        }
+    }
+}
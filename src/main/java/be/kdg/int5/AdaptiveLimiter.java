@@ -0,0 +1,143 @@
+package be.kdg.int5;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Latency based concurrency limit of a single {@link PlatformService}, see {@link ConcurrencyLimitPolicy}.
+ * <br><br>
+ * The limit follows a gradient: every call compares its latency with the long term average latency of the service.
+ * While the ratio stays within the tolerance every call grows the limit by a fraction of its square root, beyond it
+ * the limit is scaled down by the ratio (at most halved). The long term average only adapts slowly and drifts down after
+ * a latency spike, so a service that got slower gradually still makes the limit shrink. Signs of overload shrink the
+ * limit multiplicatively. Calls that find the limit reached wait in a FIFO queue of grants, which serves blocking and
+ * asynchronous callers alike.
+ */
+final class AdaptiveLimiter {
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private static final int LATENCY_WINDOW = 100;
+    private static final double SMOOTHING = 0.2;
+    private static final double OVERLOAD_BACKOFF = 0.9;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final ConcurrencyLimitPolicy policy;
+
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private final ArrayDeque<CompletableFuture<Void>> queue = new ArrayDeque<>();
+    private long shed;
+    private double averageLatencyNanos;
+    private long samples;
+
+    AdaptiveLimiter(ConcurrencyLimitPolicy policy) {
+        this.policy = policy;
+        this.limit = policy.initialLimit();
+    }
+
+    /**
+     * @return a grant that completes once the call may be sent, from then on it holds a permit that must be returned
+     * through {@link #release}, or null when the queue is full and the call is shed
+     */
+    CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (queue.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return GRANTED;
+            }
+            if (queue.size() >= policy.maxQueue()) {
+                shed++;
+                return null;
+            }
+            CompletableFuture<Void> grant = new CompletableFuture<>();
+            queue.add(grant);
+            return grant;
+        }
+    }
+
+    /**
+     * Waits for a permit on the calling thread.
+     * @return false when the call is shed
+     */
+    boolean acquireBlocking() throws InterruptedException {
+        CompletableFuture<Void> grant = acquire();
+        if (grant == null) return false;
+        try {
+            grant.get();
+            return true;
+        } catch (InterruptedException e) {
+            abandon(grant);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gives up on a grant that is no longer wanted, returning its permit if it was granted in the meantime.
+     */
+    void abandon(CompletableFuture<Void> grant) {
+        boolean removed;
+        synchronized (this) {
+            removed = queue.remove(grant);
+        }
+        if (!removed) release(0, 0, false);
+    }
+
+    /**
+     * Returns the permit of a completed call and learns from it.
+     * @param latencyNanos how long the call took, 0 when it was not sent
+     * @param inFlightAtStart the value of {@link #inFlight()} when the call was sent
+     * @param overloaded whether the service signalled overload
+     */
+    void release(long latencyNanos, int inFlightAtStart, boolean overloaded) {
+        List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            if (overloaded) {
+                limit = Math.max(policy.minLimit(), limit * OVERLOAD_BACKOFF);
+            } else if (latencyNanos > 0) {
+                learn(latencyNanos, inFlightAtStart);
+            }
+            granted = grantWaiting();
+        }
+        // Completing a grant starts the call, never do that while holding the lock
+        for (CompletableFuture<Void> grant : granted) grant.complete(null);
+    }
+
+    private void learn(long latencyNanos, int inFlightAtStart) {
+        samples++;
+        averageLatencyNanos += (latencyNanos - averageLatencyNanos) / Math.min(samples, LATENCY_WINDOW);
+        // After a spike the raised average would make normal latency look fast for a long time, let it recover faster
+        if (averageLatencyNanos > 2.0 * latencyNanos) averageLatencyNanos *= 0.95;
+
+        // A service that is not kept busy tells nothing about its capacity, the limit must not grow without bound
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, policy.latencyTolerance() * averageLatencyNanos / latencyNanos));
+        if (gradient == 1.0 && inFlightAtStart * 2 < limit) return;
+
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(policy.minLimit(), Math.min(policy.maxLimit(), limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    private List<CompletableFuture<Void>> grantWaiting() {
+        List<CompletableFuture<Void>> granted = List.of();
+        while (!queue.isEmpty() && inFlight < (int) limit) {
+            if (granted.isEmpty()) granted = new ArrayList<>();
+            granted.add(queue.poll());
+            inFlight++;
+        }
+        return granted;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized ConcurrencyLimit snapshot() {
+        return new ConcurrencyLimit((int) limit, inFlight, queue.size(), shed);
+    }
+}
@@ -1,38 +1,60 @@
 package be.kdg.int5;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.time.Instant;
-import java.util.Map;
+import be.kdg.int5.transport.Transport;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 class AuthenticationModule {
-    protected static void authenticate(GameSDK sdk) {
-        sdk.bearerToken = null;
+    /**
+     * Requests a new bearer token, the caller decides what to do with it (see {@link TokenManager}).
+     * <br><br>
+     * The returned future always fails with an {@link GameSDK.AuthenticationFailedException} as cause.
+     */
+    protected static CompletableFuture<TokenManager.Token> authenticateAsync(GameSDK sdk) {
+        Transport.Request request = sdk.endpoints.authenticate.request(null, RequestBodies.authenticate(sdk, sdk.apiKey));
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .POST(HttpRequest.BodyPublishers.ofString("{\"apiKey\":\""+sdk.apiKey+"\"}"))
-                .setHeader("Content-Type", "application/json")
-                .setHeader("Accept", "application/json")
-                .uri(URI.create(sdk.gameRegistryBaseUrl+"/registry/auth"))
-                .build();
-        try {
-            HttpResponse<String> response = sdk.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if(response.statusCode() != 200) {
-                throw new GameSDK.AuthenticationFailedException("Non-OK response status code: "+response.statusCode());
-            }
+        SdkCallEvent event = new SdkCallEvent(Operation.AUTHENTICATE);
+        event.request(request);
+        long start = sdk.metrics.start(Operation.AUTHENTICATE);
+        return sdk.transport.send(request, event.countResponse(Compression.decoding(ResponseBodies.fields(sdk, 200, "access_token", "expires_in"))))
+                .handle((response, failure) -> {
+                    if (failure != null) {
+                        GameSDK.AuthenticationFailedException mapped = new GameSDK.AuthenticationFailedException(ModuleSupport.unwrap(failure).getMessage());
+                        ModuleSupport.finish(sdk, Operation.AUTHENTICATE, start, event, 0, mapped);
+                        throw mapped;
+                    }
+                    try {
+                        TokenManager.Token token = authenticationResponse(sdk, response);
+                        ModuleSupport.finish(sdk, Operation.AUTHENTICATE, start, event, response.statusCode(), null);
+                        return token;
+                    } catch (RuntimeException e) {
+                        ModuleSupport.finish(sdk, Operation.AUTHENTICATE, start, event, response.statusCode(), e);
+                        throw e;
+                    }
+                });
+    }
 
-            @SuppressWarnings("unchecked")
-            Map<String, Object> jsonMap = sdk.objectMapper.readValue(response.body(), Map.class);
-            if(!jsonMap.containsKey("access_token") || !jsonMap.containsKey("expires_in")) {
-                throw new GameSDK.AuthenticationFailedException("Got malformed response");
-            }
+    private static TokenManager.Token authenticationResponse(GameSDK sdk, Transport.Response<String[]> response) {
+        if(response.statusCode() != 200) {
+            throw new GameSDK.AuthenticationFailedException("Non-OK response status code: "+response.statusCode());
+        }
 
-            sdk.bearerToken = (String) jsonMap.get("access_token");
-            sdk.tokenExpiresAt = Instant.now().plusSeconds(((int) jsonMap.get("expires_in")) - sdk.tokenExpirationMargin);
-        }catch (IOException | InterruptedException e) {
-            throw new GameSDK.AuthenticationFailedException(e.getMessage());
+        String accessToken = response.body()[0];
+        String expiresInText = response.body()[1];
+        if(accessToken == null || expiresInText == null) {
+            throw new GameSDK.AuthenticationFailedException("Got malformed response");
+        }
+
+        long expiresIn;
+        try {
+            expiresIn = new BigDecimal(expiresInText).longValue();
+        } catch (NumberFormatException e) {
+            throw new GameSDK.AuthenticationFailedException("Got malformed response");
         }
+        return new TokenManager.Token(
+                accessToken,
+                System.currentTimeMillis() + (expiresIn - sdk.tokenExpirationMargin) * 1000
+        );
     }
 }
@@ -0,0 +1,45 @@
+package be.kdg.int5;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+
+/**
+ * Runs a single-item sdk method for every item of a collection, each on its own virtual thread.
+ * <br><br>
+ * At most {@code bulkParallelism} items are in flight at once, the calling thread blocks until every item finished.
+ * A failing item never affects the others, its exception ends up in the {@link BulkResult}.
+ */
+class BulkModule {
+    protected static <T> BulkResult<T> fanOut(GameSDK sdk, Collection<T> requests, Predicate<T> call) {
+        List<T> items = List.copyOf(requests);
+        List<CompletableFuture<BulkResult.Item<T>>> results = new ArrayList<>(items.size());
+        Semaphore permits = new Semaphore(sdk.bulkParallelism);
+
+        for (T item : items) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(CompletableFuture.completedFuture(new BulkResult.Item<>(item, false, new GameSDK.GeneralMethodFailedException("Interrupted before the request was sent"))));
+                continue;
+            }
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new BulkResult.Item<>(item, call.test(item), null);
+                } catch (RuntimeException e) {
+                    return new BulkResult.Item<>(item, false, e);
+                } finally {
+                    permits.release();
+                }
+            }, SdkExecutors.virtualThreads()));
+        }
+
+        List<BulkResult.Item<T>> outcomes = new ArrayList<>(results.size());
+        for (CompletableFuture<BulkResult.Item<T>> result : results) outcomes.add(result.join());
+        return new BulkResult<>(List.copyOf(outcomes));
+    }
+}
@@ -0,0 +1,32 @@
+package be.kdg.int5;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk call such as {@link GameSDK#submitCompletedSessions}, one item per request in the order they were given.
+ * @param items the outcome of every request
+ * @param <T> the type of the requests
+ */
+public record BulkResult<T>(List<Item<T>> items) {
+    /**
+     * @param request the request this is the outcome of
+     * @param succeeded what the single-item method returned, false when it threw
+     * @param failure what the single-item method threw, null when it returned
+     */
+    public record Item<T>(T request, boolean succeeded, RuntimeException failure) {
+    }
+
+    public boolean allSucceeded() {
+        for (Item<T> item : items) {
+            if (!item.succeeded()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the items that did not succeed, e.g. to retry them later
+     */
+    public List<Item<T>> failures() {
+        return items.stream().filter(item -> !item.succeeded()).toList();
+    }
+}
@@ -0,0 +1,76 @@
+package be.kdg.int5;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consecutive-failure circuit breaker of a single platform service.
+ * <br><br>
+ * Closed it lets every call through. After {@code failureThreshold} failures in a row it opens and rejects calls
+ * for {@code openNanos}, after which exactly one call is let through as a probe: its success closes the breaker,
+ * its failure opens it again. All state is in two atomics, so checking a closed breaker costs a single volatile read.
+ */
+final class CircuitBreaker {
+    private static final long CLOSED = 0;
+    private static final long PROBING = -1;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // CLOSED, PROBING or the System.nanoTime() at which the open breaker lets a probe through
+    private final AtomicLong state = new AtomicLong(CLOSED);
+
+    /**
+     * @param failureThreshold 0 for a breaker that never opens
+     */
+    CircuitBreaker(int failureThreshold, long openNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * @return whether the call may be sent, a permitted call must report its outcome through {@link #onSuccess()} or {@link #onFailure()}
+     */
+    boolean tryAcquire() {
+        long current = state.get();
+        if (current == CLOSED) return true;
+        if (current == PROBING || System.nanoTime() - current < 0) return false;
+        return state.compareAndSet(current, PROBING);
+    }
+
+    /**
+     * The service answered, also when it answered with a client error.
+     */
+    void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() != CLOSED) state.set(CLOSED);
+    }
+
+    /**
+     * The service could not be reached or answered with a server error.
+     */
+    void onFailure() {
+        if (failureThreshold <= 0) return;
+        if (state.get() == PROBING || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            state.set(openUntil(System.nanoTime() + openNanos));
+            consecutiveFailures.set(0);
+        }
+    }
+
+    private static long openUntil(long nanoTime) {
+        // CLOSED and PROBING are reserved, being a nanosecond off does not matter
+        return nanoTime == CLOSED || nanoTime == PROBING ? nanoTime + 2 : nanoTime;
+    }
+
+    /**
+     * The permitted call was abandoned before the service answered, e.g. because the caller was interrupted.
+     */
+    void release() {
+        // An abandoned probe tells nothing about the service, let the next call probe instead
+        state.compareAndSet(PROBING, openUntil(System.nanoTime()));
+    }
+
+    boolean isOpen() {
+        return state.get() != CLOSED;
+    }
+}
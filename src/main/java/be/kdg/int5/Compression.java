@@ -0,0 +1,325 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.Transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Compresses request bodies and decompresses response bodies, see {@link CompressionPolicy}.
+ * <br><br>
+ * {@link Deflater}s and {@link Inflater}s hold native memory and are expensive to create, so they are pooled together
+ * with their buffers. The pools are bounded queues shared by all threads rather than thread locals, which would keep
+ * one per virtual thread. Responses are inflated chunk by chunk as the transport hands them over, so a body is never
+ * held compressed and decompressed at the same time.
+ */
+final class Compression {
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // A buffer that grew for a large body is not kept in the pool
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final BlockingQueue<Inflating> GZIP_INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflating> ZLIB_INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final CompressionPolicy policy;
+    private final BlockingQueue<Deflating> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    Compression(CompressionPolicy policy) {
+        this.policy = policy;
+    }
+
+    String contentEncoding() {
+        return policy.coding().contentEncoding();
+    }
+
+    boolean compressedResponses() {
+        return policy.compressedResponses();
+    }
+
+    /**
+     * @return the compressed body, null when the body should be sent as it is
+     */
+    byte[] compress(byte[] body) {
+        if (body.length < policy.minimumSize()) return null;
+        Deflating deflating = deflaters.poll();
+        if (deflating == null) deflating = new Deflating(policy);
+        try {
+            byte[] compressed = deflating.compress(body);
+            return compressed.length < body.length ? compressed : null;
+        } finally {
+            deflating.reset();
+            if (!deflaters.offer(deflating)) deflating.deflater.end();
+        }
+    }
+
+    /**
+     * @return a reader that hands the body to the given reader decompressed when the response has a
+     * {@code Content-Encoding}, the size counted by an {@link SdkCallEvent} wrapped around it stays the compressed size
+     */
+    static <T> Transport.BodyReader<T> decoding(Transport.BodyReader<T> reader) {
+        return (statusCode, headers) -> {
+            Transport.BodyConsumer<T> consumer = reader.open(statusCode, headers);
+            String contentEncoding = contentEncoding(headers);
+            if (contentEncoding == null || consumer.isDone()) return consumer;
+            return new InflatingConsumer<>(consumer, contentEncoding);
+        };
+    }
+
+    private static String contentEncoding(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Content-Encoding") || header.getValue().isEmpty()) continue;
+            String contentEncoding = header.getValue().get(0).trim().toLowerCase(Locale.ROOT);
+            return contentEncoding.isEmpty() || contentEncoding.equals("identity") ? null : contentEncoding;
+        }
+        return null;
+    }
+
+    private static void putIntLittleEndian(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static final class Deflating {
+        private final boolean gzip;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Deflating(CompressionPolicy policy) {
+            this.gzip = policy.coding() == CompressionPolicy.Coding.GZIP;
+            // gzip frames the raw deflate stream itself, deflate is the zlib format
+            this.deflater = new Deflater(policy.level(), gzip);
+        }
+
+        private byte[] compress(byte[] body) {
+            int length = 0;
+            if (gzip) {
+                System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+                length = GZIP_HEADER.length;
+                crc.update(body);
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (gzip) {
+                if (length + GZIP_TRAILER_SIZE > buffer.length) buffer = Arrays.copyOf(buffer, length + GZIP_TRAILER_SIZE);
+                putIntLittleEndian(buffer, length, (int) crc.getValue());
+                putIntLittleEndian(buffer, length + 4, body.length);
+                length += GZIP_TRAILER_SIZE;
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private void reset() {
+            deflater.reset();
+            crc.reset();
+            if (buffer.length > MAX_RETAINED_BUFFER_SIZE) buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    private static final class Inflating {
+        private final Inflater inflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Inflating(boolean gzip) {
+            this.inflater = new Inflater(gzip);
+        }
+
+        private static Inflating acquire(boolean gzip) {
+            Inflating inflating = (gzip ? GZIP_INFLATERS : ZLIB_INFLATERS).poll();
+            return inflating != null ? inflating : new Inflating(gzip);
+        }
+
+        private void release(boolean gzip) {
+            inflater.reset();
+            crc.reset();
+            if (!(gzip ? GZIP_INFLATERS : ZLIB_INFLATERS).offer(this)) inflater.end();
+        }
+    }
+
+    /**
+     * Inflates a gzip or zlib body as it streams in. A gzip body is framed by a header and a trailer around the raw
+     * deflate stream, which are parsed here byte by byte since they may be split over chunks.
+     * <br><br>
+     * <i>Note: A response that fails before {@link #finish()} does not return its inflater to the pool, the inflater
+     * then frees its native memory once it is garbage collected.</i>
+     */
+    private static final class InflatingConsumer<T> implements Transport.BodyConsumer<T> {
+        // The parts of a gzip body in order, a zlib body only has BODY
+        private static final int FIXED_HEADER = 0;
+        private static final int EXTRA_LENGTH = 1;
+        private static final int EXTRA = 2;
+        private static final int NAME = 3;
+        private static final int COMMENT = 4;
+        private static final int HEADER_CRC = 5;
+        private static final int BODY = 6;
+        private static final int TRAILER = 7;
+        private static final int DONE = 8;
+
+        private static final int FIXED_HEADER_SIZE = 10;
+        private static final int FLAG_HEADER_CRC = 2;
+        private static final int FLAG_EXTRA = 4;
+        private static final int FLAG_NAME = 8;
+        private static final int FLAG_COMMENT = 16;
+
+        private final Transport.BodyConsumer<T> delegate;
+        private final String unsupported;
+        private final boolean gzip;
+        private Inflating inflating;
+
+        private int part;
+        private int partRead;
+        private int flags;
+        private int extraLength;
+        private long trailer;
+        private long inflatedSize;
+
+        private InflatingConsumer(Transport.BodyConsumer<T> delegate, String contentEncoding) {
+            this.delegate = delegate;
+            this.gzip = contentEncoding.equals("gzip") || contentEncoding.equals("x-gzip");
+            boolean zlib = contentEncoding.equals("deflate");
+            this.unsupported = gzip || zlib ? null : contentEncoding;
+            this.part = gzip ? FIXED_HEADER : BODY;
+        }
+
+        @Override
+        public void accept(ByteBuffer chunk) throws IOException {
+            if (unsupported != null) throw new IOException("Unsupported Content-Encoding " + unsupported);
+            if (inflating == null) inflating = Inflating.acquire(gzip);
+            while (chunk.hasRemaining() && part != DONE && !delegate.isDone()) {
+                if (part == BODY) {
+                    inflate(chunk);
+                } else {
+                    read(chunk.get() & 0xff);
+                }
+            }
+        }
+
+        private void inflate(ByteBuffer chunk) throws IOException {
+            Inflater inflater = inflating.inflater;
+            byte[] buffer = inflating.buffer;
+            inflater.setInput(chunk);
+            try {
+                while (!delegate.isDone()) {
+                    int inflated = inflater.inflate(buffer);
+                    if (inflated > 0) {
+                        if (gzip) inflating.crc.update(buffer, 0, inflated);
+                        inflatedSize += inflated;
+                        delegate.accept(ByteBuffer.wrap(buffer, 0, inflated));
+                    }
+                    if (inflater.finished()) {
+                        // What is left of the chunk is the gzip trailer
+                        part = gzip ? TRAILER : DONE;
+                        partRead = 0;
+                        return;
+                    }
+                    if (inflater.needsDictionary()) throw new ZipException("Compressed body needs a preset dictionary");
+                    // A full buffer may leave output behind in the inflater even when it took all input
+                    if (inflated < buffer.length && inflater.needsInput()) return;
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        private void read(int b) throws IOException {
+            switch (part) {
+                case FIXED_HEADER -> {
+                    if ((partRead == 0 && b != 0x1f) || (partRead == 1 && b != 0x8b) || (partRead == 2 && b != Deflater.DEFLATED)) {
+                        throw new ZipException("Response body is not in gzip format");
+                    }
+                    if (partRead == 3) flags = b;
+                    if (++partRead == FIXED_HEADER_SIZE) nextPart();
+                }
+                case EXTRA_LENGTH -> {
+                    extraLength |= b << (8 * partRead);
+                    if (++partRead == 2) {
+                        nextPart();
+                        if (extraLength == 0) nextPart();
+                    }
+                }
+                case EXTRA -> {
+                    if (++partRead == extraLength) nextPart();
+                }
+                case NAME, COMMENT -> {
+                    if (b == 0) nextPart();
+                }
+                case HEADER_CRC -> {
+                    if (++partRead == 2) nextPart();
+                }
+                case TRAILER -> {
+                    trailer |= (long) b << (8 * partRead);
+                    if (++partRead == GZIP_TRAILER_SIZE) {
+                        if ((trailer & 0xffffffffL) != inflating.crc.getValue() || (trailer >>> 32) != (inflatedSize & 0xffffffffL)) {
+                            throw new ZipException("Corrupt gzip trailer");
+                        }
+                        part = DONE;
+                    }
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+
+        private void nextPart() {
+            partRead = 0;
+            do {
+                part++;
+            } while (part < BODY && !present(part));
+        }
+
+        private boolean present(int part) {
+            return switch (part) {
+                case EXTRA_LENGTH, EXTRA -> (flags & FLAG_EXTRA) != 0;
+                case NAME -> (flags & FLAG_NAME) != 0;
+                case COMMENT -> (flags & FLAG_COMMENT) != 0;
+                case HEADER_CRC -> (flags & FLAG_HEADER_CRC) != 0;
+                default -> true;
+            };
+        }
+
+        @Override
+        public T finish() throws IOException {
+            try {
+                if (unsupported != null) throw new IOException("Unsupported Content-Encoding " + unsupported);
+                // An empty body (e.g. of an error) is passed on as it is
+                boolean empty = inflating == null;
+                if (!empty && part != DONE && !delegate.isDone()) throw new EOFException("Compressed response body ended early");
+                return delegate.finish();
+            } finally {
+                if (inflating != null) {
+                    inflating.release(gzip);
+                    inflating = null;
+                }
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package be.kdg.int5;
+
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * Compression of the traffic of a {@link GameSDK}, set through {@link GameSDK.Builder#compression(CompressionPolicy)}.
+ * <br><br>
+ * Request bodies to the registry and statistics services (game registrations, completed sessions and achievement
+ * progress) of at least {@link Builder#minimumSize(int)} bytes are compressed and sent with a {@code Content-Encoding}
+ * header, smaller bodies are sent as they are since compressing them costs more CPU than it saves bytes. A body that does
+ * not get smaller is sent as it is as well. Responses are requested compressed through {@code Accept-Encoding} and
+ * decompressed while they stream in.
+ * <br><br>
+ * <i>Note: Only enable request compression for services that accept compressed bodies, a service that does not
+ * answers them with an error. Compressed responses are always decompressed, also without a policy.</i>
+ */
+public final class CompressionPolicy {
+    public enum Coding {
+        GZIP("gzip"),
+        /**
+         * The zlib format, as {@code deflate} is defined by HTTP.
+         */
+        DEFLATE("deflate");
+
+        private final String contentEncoding;
+
+        Coding(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+        }
+
+        /**
+         * @return the value of the {@code Content-Encoding} header
+         */
+        public String contentEncoding() {
+            return contentEncoding;
+        }
+    }
+
+    private final Coding coding;
+    private final int minimumSize;
+    private final int level;
+    private final boolean compressedResponses;
+
+    private CompressionPolicy(Builder builder) {
+        this.coding = builder.coding;
+        this.minimumSize = builder.minimumSize;
+        this.level = builder.level;
+        this.compressedResponses = builder.compressedResponses;
+    }
+
+    /**
+     * @return gzip for request bodies of at least 1 KiB at the default level, and compressed responses
+     */
+    public static CompressionPolicy gzip() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    Coding coding() {
+        return coding;
+    }
+
+    int minimumSize() {
+        return minimumSize;
+    }
+
+    int level() {
+        return level;
+    }
+
+    boolean compressedResponses() {
+        return compressedResponses;
+    }
+
+    public static class Builder {
+        private Coding coding = Coding.GZIP;
+        private int minimumSize = 1024;
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private boolean compressedResponses = true;
+
+        private Builder() {
+        }
+
+        /**
+         * @param coding how request bodies are compressed, {@link Coding#GZIP} unless set
+         * @return the builder
+         */
+        public Builder coding(Coding coding) {
+            this.coding = Objects.requireNonNull(coding);
+            return this;
+        }
+
+        /**
+         * @param minimumSize the size in bytes from which request bodies are compressed, 1024 unless set
+         * @return the builder
+         */
+        public Builder minimumSize(int minimumSize) {
+            if (minimumSize < 0) throw new IllegalArgumentException("minimumSize must not be negative");
+            this.minimumSize = minimumSize;
+            return this;
+        }
+
+        /**
+         * @param level from 1 (fastest) to 9 (smallest), or {@link Deflater#DEFAULT_COMPRESSION} (the default, level 6)
+         * @return the builder
+         */
+        public Builder level(int level) {
+            if (level != Deflater.DEFAULT_COMPRESSION && (level < 1 || level > 9)) {
+                throw new IllegalArgumentException("level must be between 1 and 9");
+            }
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * @param compressedResponses whether responses are requested compressed through {@code Accept-Encoding}, true unless set
+         * @return the builder
+         */
+        public Builder compressedResponses(boolean compressedResponses) {
+            this.compressedResponses = compressedResponses;
+            return this;
+        }
+
+        public CompressionPolicy build() {
+            return new CompressionPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package be.kdg.int5;
+
+/**
+ * Point-in-time state of the adaptive concurrency limit of one {@link PlatformService}, see {@link ConcurrencyLimitPolicy}.
+ * @param limit how many calls may currently be in flight
+ * @param inFlight how many calls are in flight
+ * @param queued how many calls are waiting for the limit
+ * @param shed how many calls were rejected because the queue was full, since the SDK was created
+ */
+public record ConcurrencyLimit(int limit, int inFlight, int queued, long shed) {
+}
@@ -0,0 +1,113 @@
+package be.kdg.int5;
+
+/**
+ * Adaptive limit on the calls a {@link GameSDK} has in flight to each {@link PlatformService}, set through
+ * {@link GameSDK.Builder#concurrencyLimit(ConcurrencyLimitPolicy)}.
+ * <br><br>
+ * The limit is learned from the latency of the calls: it keeps growing while latency stays close to its long term
+ * average and shrinks in proportion when latency climbs above it, or by 10% when the service signals overload
+ * (429, 503 or a connection failure). That way every game server backs off on its own before the service's latency
+ * collapses, without a fixed limit that is either too low for one deployment or too high for another.
+ * <br><br>
+ * Calls over the limit wait in a queue, calls over the queue capacity are shed right away with a
+ * {@link GameSDK.GeneralMethodFailedException}. The current state is available through {@link GameSDK#concurrencyLimits()}.
+ */
+public final class ConcurrencyLimitPolicy {
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final double latencyTolerance;
+
+    private ConcurrencyLimitPolicy(Builder builder) {
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueue = builder.maxQueue;
+        this.latencyTolerance = builder.latencyTolerance;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    int initialLimit() {
+        return initialLimit;
+    }
+
+    int minLimit() {
+        return minLimit;
+    }
+
+    int maxLimit() {
+        return maxLimit;
+    }
+
+    int maxQueue() {
+        return maxQueue;
+    }
+
+    double latencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public static class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 500;
+        private int maxQueue = 1_000;
+        private double latencyTolerance = 1.5;
+
+        private Builder() {
+        }
+
+        /**
+         * @param initialLimit the limit to start from, before any latency was observed
+         * @return the builder
+         */
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit < 1) throw new IllegalArgumentException("initialLimit must be at least 1");
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * @param minLimit the limit never drops below this
+         * @param maxLimit the limit never grows above this
+         * @return the builder
+         */
+        public Builder limitRange(int minLimit, int maxLimit) {
+            if (minLimit < 1 || maxLimit < minLimit) throw new IllegalArgumentException("limitRange must satisfy 1 <= minLimit <= maxLimit");
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * @param maxQueue how many calls per service may wait for the limit, 0 to shed every call over the limit
+         * @return the builder
+         */
+        public Builder maxQueue(int maxQueue) {
+            if (maxQueue < 0) throw new IllegalArgumentException("maxQueue must not be negative");
+            this.maxQueue = maxQueue;
+            return this;
+        }
+
+        /**
+         * @param tolerance how many times slower than usual a call may be before the limit shrinks, at least 1
+         * @return the builder
+         */
+        public Builder latencyTolerance(double tolerance) {
+            if (!(tolerance >= 1)) throw new IllegalArgumentException("tolerance must be at least 1");
+            this.latencyTolerance = tolerance;
+            return this;
+        }
+
+        public ConcurrencyLimitPolicy build() {
+            if (initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("initialLimit must be within limitRange");
+            }
+            return new ConcurrencyLimitPolicy(this);
+        }
+    }
+}
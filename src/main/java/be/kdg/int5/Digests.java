@@ -0,0 +1,29 @@
+package be.kdg.int5;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Hashes that end up in files, so nothing secret (like the api key) has to be written to disk.
+ */
+final class Digests {
+    private Digests() {
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a key for what belongs to the api key and registry of the SDK instance
+     */
+    static String credentials(GameSDK sdk) {
+        return sha256((sdk.apiKey + "\n" + sdk.gameRegistryBaseUrl).getBytes(StandardCharsets.UTF_8));
+    }
+}
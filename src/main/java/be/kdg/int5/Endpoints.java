@@ -0,0 +1,74 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.GameContext;
+
+import java.util.UUID;
+
+/**
+ * The {@link RequestTemplate} of every platform endpoint, resolved against the base urls once.
+ * <br><br>
+ * Only the registry and statistics requests compress their bodies, lobby requests are too small to be worth it.
+ */
+final class Endpoints {
+    private static final String JSON = "application/json";
+    private static final String EVENT_STREAM = "text/event-stream";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // Fits the longest path, so building one never grows the builder
+    private static final int PATH_CAPACITY = 128;
+
+    final RequestTemplate authenticate;
+    final RequestTemplate registerGame;
+    final RequestTemplate createLobby;
+    final RequestTemplate patchLobby;
+    final RequestTemplate lobbyEvents;
+    final RequestTemplate submitCompletedSession;
+    final RequestTemplate updateAchievementProgress;
+
+    /**
+     * @param compression the compression of the SDK, null for none
+     */
+    Endpoints(String gameRegistryBaseUrl, String statisticsBaseUrl, String gameplayBaseUrl, Compression compression) {
+        this.authenticate = new RequestTemplate("POST", gameRegistryBaseUrl, "/registry/auth", JSON, compression, false);
+        this.registerGame = new RequestTemplate("PATCH", gameRegistryBaseUrl, "/registry/games", JSON, compression, true);
+        this.createLobby = new RequestTemplate("POST", gameplayBaseUrl, "/lobby", JSON, compression, false);
+        this.patchLobby = new RequestTemplate("PATCH", gameplayBaseUrl, "/lobby", JSON, compression, false);
+        // The event stream is read as a publisher of chunks, which the response decompression does not wrap
+        this.lobbyEvents = new RequestTemplate("POST", gameplayBaseUrl, "/lobby/events", EVENT_STREAM, null, false);
+        this.submitCompletedSession = new RequestTemplate("POST", statisticsBaseUrl, null, null, compression, true);
+        this.updateAchievementProgress = new RequestTemplate("POST", statisticsBaseUrl, null, null, compression, true);
+    }
+
+    static String submitCompletedSessionPath(GameContext gameContext, UUID playerId) {
+        StringBuilder path = new StringBuilder(PATH_CAPACITY).append("/statistics/submit?playerId=");
+        appendUuid(path, playerId).append("&gameId=");
+        return appendUuid(path, gameContext.gameId()).toString();
+    }
+
+    static String updateAchievementProgressPath(GameContext gameContext, UUID playerId, int achievementNumber) {
+        StringBuilder path = new StringBuilder(PATH_CAPACITY).append("/statistics/achievements/")
+                .append(achievementNumber)
+                .append("?playerId=");
+        appendUuid(path, playerId).append("&gameId=");
+        return appendUuid(path, gameContext.gameId()).toString();
+    }
+
+    /**
+     * Appends the canonical text of the uuid (as {@link UUID#toString()}) without creating that String first.
+     */
+    static StringBuilder appendUuid(StringBuilder text, UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        appendHex(text, most >>> 32, 8).append('-');
+        appendHex(text, most >>> 16, 4).append('-');
+        appendHex(text, most, 4).append('-');
+        appendHex(text, least >>> 48, 4).append('-');
+        return appendHex(text, least, 12);
+    }
+
+    private static StringBuilder appendHex(StringBuilder text, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            text.append(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,112 @@
+package be.kdg.int5;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * The file backed {@link TokenStore}, see {@link TokenStore#file(Path)}.
+ * <br><br>
+ * Every key has a {@code <key>.token} file, replaced through an atomic move so readers never see half of it, and a
+ * {@code <key>.lock} file. The lock file is only locked while a token is obtained: a process that finds the stored
+ * token unusable authenticates while holding it, so processes that started at the same time wait for it and reuse its
+ * token instead of all authenticating. A store that can not be read or written falls back to authenticating.
+ */
+final class FileTokenStore implements TokenStore {
+    private static final String BEARER_TOKEN = "bearerToken";
+    private static final String EXPIRES_AT = "expiresAt";
+
+    private final Path directory;
+    // File locks are held by the whole JVM, threads of this JVM take turns through these
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    FileTokenStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public StoredToken obtain(String key, Predicate<StoredToken> usable, Callable<StoredToken> authenticate) throws Exception {
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            FileChannel lockChannel;
+            try {
+                Files.createDirectories(directory);
+                lockChannel = FileChannel.open(directory.resolve(key + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                return authenticate.call();
+            }
+            try (lockChannel) {
+                try {
+                    // Released when the channel is closed
+                    lockChannel.lock();
+                } catch (IOException e) {
+                    return authenticate.call();
+                }
+                Path file = directory.resolve(key + ".token");
+                StoredToken stored = read(file);
+                if (stored != null && usable.test(stored)) return stored;
+
+                StoredToken token = authenticate.call();
+                write(file, token);
+                return token;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static StoredToken read(Path file) {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            String bearerToken = properties.getProperty(BEARER_TOKEN);
+            String expiresAt = properties.getProperty(EXPIRES_AT);
+            if (bearerToken == null || expiresAt == null) return null;
+            return new StoredToken(bearerToken, Instant.ofEpochMilli(Long.parseLong(expiresAt)));
+        } catch (IOException | IllegalArgumentException e) {
+            // Missing or damaged
+            return null;
+        }
+    }
+
+    private void write(Path file, StoredToken token) {
+        Properties properties = new Properties();
+        properties.setProperty(BEARER_TOKEN, token.bearerToken());
+        properties.setProperty(EXPIRES_AT, Long.toString(token.expiresAt().toEpochMilli()));
+        try {
+            Path temporary = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+                    ? Files.createTempFile(directory, file.getFileName().toString(), ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                    : Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temporary)) {
+                    properties.store(out, null);
+                }
+                try {
+                    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException ignored) {
+            // The token is still used by this instance, others authenticate on their own
+        }
+    }
+}
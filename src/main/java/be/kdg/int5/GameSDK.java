@@ -1,52 +1,152 @@
 package be.kdg.int5;
 
 import be.kdg.int5.domain.*;
+import be.kdg.int5.transport.HttpClientTransport;
+import be.kdg.int5.transport.LoopbackTransport;
+import be.kdg.int5.transport.Transport;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.math.BigDecimal;
 import java.net.http.HttpClient;
-import java.time.Instant;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
 
-public class GameSDK {
+public class GameSDK implements AutoCloseable {
     protected final String apiKey;
     protected final String gameRegistryBaseUrl;
     protected final String statisticsBaseUrl;
     protected final String gameplayBaseUrl;
     protected final int tokenExpirationMargin;
 
-    protected final HttpClient httpClient;
+    protected final Transport transport;
+    protected final Endpoints endpoints;
+    protected final StreamLimiter.PerHost streamLimiters;
+    protected final Resilience resilience;
+    protected final int bulkParallelism;
+    protected final Map<PlatformService, AdaptiveLimiter> concurrencyLimiters;
     protected final ObjectMapper objectMapper;
 
-    protected String bearerToken;
-    protected Instant tokenExpiresAt;
-
-    private GameSDK(Builder builder, String apiKey) {
+    protected final SdkMetrics metrics;
+    protected final ScheduledExecutorService scheduler;
+    protected final TokenManager tokenManager;
+    protected final LobbyLanes lobbyLanes;
+    protected final LobbyEventStream lobbyEvents;
+    protected final Outbox outbox;
+    protected final RegistrationCache registrationCache;
+    private final CompletableFuture<GameSDK> ready;
+    // A pool closes the transport it shares when the pool is closed
+    private final boolean closesTransport;
+    protected final Map<UUID, Map<Integer, Achievement>> registeredAchievements = new ConcurrentHashMap<>();
+
+    private GameSDK(Builder builder, Resources resources, String apiKey, boolean lazy, boolean shared) {
         this.gameRegistryBaseUrl = builder.gameRegistryBaseUrl;
         this.statisticsBaseUrl = builder.statisticsBaseUrl;
         this.gameplayBaseUrl = builder.gameplayBaseUrl;
         this.tokenExpirationMargin = builder.tokenExpirationMargin;
-        this.httpClient = builder.httpClient;
-        this.objectMapper = builder.objectMapper;
+        this.transport = resources.transport;
+        this.closesTransport = !shared && resources.ownsTransport;
+        this.endpoints = resources.endpoints;
+        this.streamLimiters = resources.streamLimiters;
+        this.resilience = resources.resilience;
+        this.bulkParallelism = builder.bulkParallelism;
+        this.concurrencyLimiters = resources.concurrencyLimiters;
+        this.objectMapper = resources.objectMapper;
         this.apiKey = Objects.requireNonNull(apiKey);
-        authenticate();
+        this.metrics = resources.metrics;
+        this.scheduler = resources.scheduler;
+        this.tokenManager = new TokenManager(this, scheduler, builder.tokenRefreshAhead, builder.tokenStore);
+        this.lobbyLanes = new LobbyLanes(this);
+        this.lobbyEvents = new LobbyEventStream(this);
+        this.registrationCache = builder.registrationCacheFile != null ? new RegistrationCache(builder.registrationCacheFile) : null;
+
+        // Authentication and warm-up run side by side, a lazy SDK does not wait for either
+        CompletableFuture<TokenManager.Token> authenticated = tokenManager.refresh();
+        CompletableFuture<Void> warmedUp = builder.warmUp ? WarmUp.run(this) : CompletableFuture.completedFuture(null);
+        this.ready = authenticated.thenCombine(warmedUp, (token, ignored) -> this);
+        if (!lazy) {
+            try {
+                TokenManager.await(authenticated);
+                warmedUp.join();
+            } catch (RuntimeException e) {
+                tokenManager.cancelScheduledRefresh();
+                if (closesTransport) transport.close();
+                throw e;
+            }
+        }
+        this.outbox = builder.outboxDirectory != null ? new Outbox(this, builder.outboxDirectory, Outbox.DEFAULT_SEGMENT_SIZE) : null;
+    }
+
+    /**
+     * Completes once this SDK instance obtained its first bearer token and, when enabled, finished its warm-up.
+     * <br><br>
+     * Fails with an {@link AuthenticationFailedException} when that first authentication failed. The SDK can still be used
+     * after that: every call tries to authenticate again until it succeeds.
+     * @return a future that completes with this SDK instance
+     * @see Builder#initLazily(String)
+     */
+    public CompletableFuture<GameSDK> ready() {
+        return ready.copy();
+    }
+
+    /**
+     * Stops the background work of this SDK instance (token refreshes, the outbox sender, the lobby event stream) and
+     * closes the transport when the SDK created it. Lobby subscriptions complete once their subscribers received the events that had arrived.
+     * <br><br>
+     * <i>Note: Writes that are still in the outbox are kept on disk and sent by the next SDK using the same outbox directory.</i>
+     */
+    @Override
+    public void close() {
+        tokenManager.cancelScheduledRefresh();
+        if (outbox != null) outbox.close();
+        lobbyEvents.close();
+        if (closesTransport) transport.close();
     }
 
 
+    /**
+     * @return the latency, outcome and status code statistics of the platform calls made by this SDK instance (by all
+     * tenants together for an instance of a {@link GameSDKPool}), empty unless enabled through {@link Builder#metrics(boolean)}
+     */
+    public SdkMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the current adaptive concurrency limit per platform service,
+     * empty unless enabled through {@link Builder#concurrencyLimit(ConcurrencyLimitPolicy)}
+     */
+    public Map<PlatformService, ConcurrencyLimit> concurrencyLimits() {
+        Map<PlatformService, ConcurrencyLimit> limits = new EnumMap<>(PlatformService.class);
+        concurrencyLimiters.forEach((service, limiter) -> limits.put(service, limiter.snapshot()));
+        return limits;
+    }
+
     protected boolean isTokenExpired() {
-        return Instant.now().isAfter(tokenExpiresAt);
+        return tokenManager.isExpired();
     }
 
     protected void authenticate() {
-        AuthenticationModule.authenticate(this);
+        tokenManager.authenticate();
     }
 
+    /**
+     * The token is refreshed in the background before it expires, so this normally returns immediately.
+     * It only blocks when no valid token is available, in which case all concurrent callers share a single authentication request.
+     * @return a valid bearer token
+     */
     public String bearerToken() {
-        if (bearerToken == null || isTokenExpired()) authenticate();
-        return bearerToken;
+        return tokenManager.token().value();
     }
 
     public GameContext registerGame(
@@ -74,22 +174,92 @@ public class GameSDK {
         );
     }
 
+    /**
+     * Non-blocking variant of {@link #registerGame}.
+     * <br><br>
+     * The returned future completes exceptionally with an {@link AuthenticationFailedException} or {@link GeneralMethodFailedException}
+     * as cause in the same situations where the blocking variant would throw them.
+     */
+    public CompletableFuture<GameContext> registerGameAsync(
+            String title,
+            String hostUrl,
+            String description,
+            BigDecimal price,
+            String iconUrl,
+            String backgroundUrl,
+            List<Rule> rules,
+            List<String> screenshots,
+            List<Achievement> achievements
+    ) {
+        return RegisterGameModule.registerGameAsync(
+                this,
+                title,
+                hostUrl,
+                description,
+                price,
+                iconUrl,
+                backgroundUrl,
+                rules,
+                screenshots,
+                achievements
+        );
+    }
+
+    protected void rememberAchievements(GameContext ctx, List<Achievement> achievements) {
+        Map<Integer, Achievement> byNumber = new HashMap<>();
+        for (Achievement achievement : achievements) byNumber.put(achievement.uniqueNumber(), achievement);
+        registeredAchievements.put(ctx.gameId(), Map.copyOf(byNumber));
+    }
+
+    protected Achievement registeredAchievement(GameContext ctx, int achievementNumber) {
+        Map<Integer, Achievement> achievements = registeredAchievements.get(ctx.gameId());
+        return achievements == null ? null : achievements.get(achievementNumber);
+    }
+
     public LobbyContext createLobby(GameContext ctx, UUID ownerId, int maxPlayers) {
         return LobbyModule.createLobby(this, ctx, ownerId, maxPlayers);
     }
 
+    public CompletableFuture<LobbyContext> createLobbyAsync(GameContext ctx, UUID ownerId, int maxPlayers) {
+        return LobbyModule.createLobbyAsync(this, ctx, ownerId, maxPlayers);
+    }
+
+    /**
+     * Patches of the same lobby are sent one at a time in the order they were made, patches made while another one is
+     * in flight are merged into one request. A patch that would not change the last state the platform acknowledged is not sent.
+     * <br><br>
+     * <i>Note: The acknowledged state is only updated by the events of a lobby that is subscribed to through
+     * {@link #subscribeLobby(LobbyContext)}. Without a subscription this assumes that this instance is the only writer
+     * of the lobby, a patch back to the last value it sent is dropped after the lobby changed elsewhere.</i>
+     * @param lobby the lobby context that identifies the lobby being patched
+     * @param ownerId the new owner, or null to leave it unchanged
+     * @param playerCount the new player count, or null to leave it unchanged
+     * @param closed whether the lobby is closed, or null to leave it unchanged
+     */
     public void patchLobby(LobbyContext lobby, UUID ownerId, Integer playerCount, Boolean closed) {
-        LobbyModule.patchLobby(this, lobby, ownerId, playerCount, closed);
+        ModuleSupport.await(lobbyLanes.patch(lobby, ownerId, playerCount, closed));
+    }
+
+    public CompletableFuture<Void> patchLobbyAsync(LobbyContext lobby, UUID ownerId, Integer playerCount, Boolean closed) {
+        return lobbyLanes.patch(lobby, ownerId, playerCount, closed);
     }
 
     public void changeLobbyOwner(LobbyContext lobby, UUID newOwnerId) {
         patchLobby(lobby, newOwnerId, null, null);
     }
 
+    public CompletableFuture<Void> changeLobbyOwnerAsync(LobbyContext lobby, UUID newOwnerId) {
+        return patchLobbyAsync(lobby, newOwnerId, null, null);
+    }
+
     public void updateLobbyPlayerCount(LobbyContext lobby, Integer playerCount) {
         patchLobby(lobby, null, playerCount, null);
     }
 
+    public CompletableFuture<Void> updateLobbyPlayerCountAsync(LobbyContext lobby, Integer playerCount) {
+        return patchLobbyAsync(lobby, null, playerCount, null);
+    }
+
     /**
      * Closes the specified lobby, this is <b>meant to be called when the game is being started</b> (i.e. the lobby finished queueing).
      * <br><br>
@@ -100,6 +270,15 @@ public class GameSDK {
         patchLobby(lobby, null, null, true);
     }
 
+    /**
+     * Non-blocking variant of {@link #closeLobby(LobbyContext)}.
+     * @param lobby the lobby context that identifies the lobby being closed
+     * @return a future that completes once the lobby is closed
+     */
+    public CompletableFuture<Void> closeLobbyAsync(LobbyContext lobby) {
+        return patchLobbyAsync(lobby, null, null, true);
+    }
+
     /**
      * Opens the specified lobby, you can call this method to reopen a lobby for queueing (e.g. after a match has concluded).
      * <br><br>
@@ -110,6 +289,34 @@ public class GameSDK {
         patchLobby(lobby, null, null, false);
     }
 
+    /**
+     * Non-blocking variant of {@link #openLobby(LobbyContext)}.
+     * @param lobby the lobby context that identifies the lobby being reopened
+     * @return a future that completes once the lobby is open
+     */
+    public CompletableFuture<Void> openLobbyAsync(LobbyContext lobby) {
+        return patchLobbyAsync(lobby, null, null, false);
+    }
+
+    /**
+     * Subscribes to what happens to the specified lobby (invites, players joining and leaving, owner changes, closing and reopening),
+     * as the gameplay service pushes it. Nothing is sent until a subscriber requests events.
+     * <br><br>
+     * All lobbies subscribed to through this SDK instance share one connection, which is reopened when it drops and then
+     * resumes after the last event received, so no event is lost or delivered twice. Events are delivered as they are
+     * requested: a subscriber that falls behind has its events buffered up to a bound, after which the connection pauses
+     * until it catches up.
+     * <br><br>
+     * <i>Note: A subscriber that stops requesting eventually pauses the events of every lobby of this SDK instance, cancel
+     * subscriptions that are no longer needed. Events are delivered on the threads of the transport, do not block in {@code onNext}.</i>
+     * @param lobby the lobby context that identifies the lobby to follow
+     * @return a publisher of the events of the lobby, subscribers fail with a {@link GeneralMethodFailedException}
+     * when the gameplay service or the transport does not offer the event stream
+     */
+    public Flow.Publisher<LobbyEvent> subscribeLobby(LobbyContext lobby) {
+        return lobbyEvents.publisher(lobby);
+    }
+
     public boolean submitCompletedSession(
             GameContext ctx,
             UUID playerId,
@@ -141,6 +348,62 @@ public class GameSDK {
         );
     }
 
+    public CompletableFuture<Boolean> submitCompletedSessionAsync(
+            GameContext ctx,
+            UUID playerId,
+            LocalDateTime startTime,
+            LocalDateTime endTime,
+            EndState endState,
+            Integer turnsTaken,
+            Double avgSecondsPerTurn,
+            Integer playerScore,
+            Integer opponentScore,
+            Integer clicks,
+            String character,
+            Boolean wasFirstToGo
+    ) {
+        return SubmitCompletedSessionModule.submitCompletedSessionAsync(
+                this,
+                ctx,
+                playerId,
+                startTime,
+                endTime,
+                endState,
+                turnsTaken,
+                avgSecondsPerTurn,
+                playerScore,
+                opponentScore,
+                clicks,
+                character,
+                wasFirstToGo
+        );
+    }
+
+    /**
+     * Submits the completed sessions of many players at once, e.g. of every player of a match that ended.
+     * <br><br>
+     * The sessions are submitted concurrently on virtual threads, at most {@link Builder#bulkParallelism(int)} at a time, instead of
+     * one round trip after another. A session that fails does not stop the others.
+     * @param sessions the sessions to submit
+     * @return the outcome per session, in the order of the collection
+     */
+    public BulkResult<SessionRecord> submitCompletedSessions(Collection<SessionRecord> sessions) {
+        return BulkModule.fanOut(this, sessions, session -> submitCompletedSession(
+                session.gameContext(),
+                session.playerId(),
+                session.startTime(),
+                session.endTime(),
+                session.endState(),
+                session.turnsTaken(),
+                session.avgSecondsPerTurn(),
+                session.playerScore(),
+                session.opponentScore(),
+                session.clicks(),
+                session.character(),
+                session.wasFirstToGo()
+        ));
+    }
+
     public boolean updateAchievementProgress(
             GameContext ctx,
             UUID playerId,
@@ -156,18 +419,116 @@ public class GameSDK {
         );
     }
 
+    public CompletableFuture<Boolean> updateAchievementProgressAsync(
+            GameContext ctx,
+            UUID playerId,
+            int achievementNumber,
+            Integer newProgressAmount
+    ) {
+        return UpdateAchievementProgressModule.updateAchievementProgressAsync(
+                this,
+                ctx,
+                playerId,
+                achievementNumber,
+                newProgressAmount
+        );
+    }
+
+    /**
+     * Updates the progress of many achievements at once, e.g. of every player of a match that ended.
+     * <br><br>
+     * The updates are sent concurrently on virtual threads, at most {@link Builder#bulkParallelism(int)} at a time, instead of
+     * one round trip after another. An update that fails does not stop the others.
+     * @param updates the progress updates to send
+     * @return the outcome per update, in the order of the collection
+     */
+    public BulkResult<AchievementProgress> updateAchievementProgress(Collection<AchievementProgress> updates) {
+        return BulkModule.fanOut(this, updates, update -> updateAchievementProgress(
+                update.gameContext(),
+                update.playerId(),
+                update.achievementNumber(),
+                update.newProgressAmount()
+        ));
+    }
+
+
+    /**
+     * Opt-in batching mode for {@link #submitCompletedSession}, sessions are queued in memory and submitted in batches by a background thread.
+     * <br><br>
+     * <i>Note: Close the returned batcher on shutdown, this sends the sessions that are still queued.</i>
+     * @return a builder for a new {@link SessionBatcher} that submits through this SDK
+     */
+    public SessionBatcher.Builder sessionBatcher() {
+        return new SessionBatcher.Builder(this);
+    }
+
+    /**
+     * Opt-in aggregation for {@link #updateAchievementProgress}, progress is reported as increments and only the latest total per achievement is sent.
+     * <br><br>
+     * <i>Note: Close the returned aggregator on shutdown, this sends the progress that is still pending.</i>
+     * @return a builder for a new {@link AchievementAggregator} that reports through this SDK
+     */
+    public AchievementAggregator.Builder achievementAggregator() {
+        return new AchievementAggregator.Builder(this);
+    }
+
+    /**
+     * The parts of an SDK instance that do not depend on its api key: the transport with its connections, the endpoint
+     * templates, the limits and circuit breakers that protect the platform, the codec, the metrics and the scheduler. Every instance built
+     * through {@link Builder#init(String)} has its own, the instances of a {@link GameSDKPool} share one.
+     */
+    static final class Resources {
+        final Transport transport;
+        final boolean ownsTransport;
+        final Endpoints endpoints;
+        final StreamLimiter.PerHost streamLimiters;
+        final Resilience resilience;
+        final Map<PlatformService, AdaptiveLimiter> concurrencyLimiters;
+        final ObjectMapper objectMapper;
+        final SdkMetrics metrics;
+        final ScheduledExecutorService scheduler;
+
+        private Resources(Builder builder) {
+            this.transport = builder.buildTransport();
+            this.ownsTransport = builder.transport == null && builder.httpClient == null;
+            Compression compression = builder.compressionPolicy != null ? new Compression(builder.compressionPolicy) : null;
+            this.endpoints = new Endpoints(builder.gameRegistryBaseUrl, builder.statisticsBaseUrl, builder.gameplayBaseUrl, compression);
+            this.streamLimiters = new StreamLimiter.PerHost(builder.maxConcurrentStreams);
+            this.resilience = new Resilience(builder.resiliencePolicy);
+            this.concurrencyLimiters = new EnumMap<>(PlatformService.class);
+            if (builder.concurrencyLimitPolicy != null) {
+                for (PlatformService service : PlatformService.values()) {
+                    concurrencyLimiters.put(service, new AdaptiveLimiter(builder.concurrencyLimitPolicy));
+                }
+            }
+            this.objectMapper = builder.objectMapper;
+            this.metrics = SdkMetrics.create(builder.metricsEnabled);
+            this.scheduler = builder.scheduler != null ? builder.scheduler : SdkExecutors.sharedScheduler();
+        }
+    }
 
     public static class Builder {
         private String gameRegistryBaseUrl = "https://game-registry-prod-container.blackwave-a5cb5824.northeurope.azurecontainerapps.io/game-registry";
         private String statisticsBaseUrl = "https://statistics-prod-container.blackwave-a5cb5824.northeurope.azurecontainerapps.io/statistics";
         private String gameplayBaseUrl = "https://gameplay-prod-container.blackwave-a5cb5824.northeurope.azurecontainerapps.io/gameplay";
         private int tokenExpirationMargin = 10;
-
-        private HttpClient httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .followRedirects(HttpClient.Redirect.NORMAL)
-                .build()
-        ;
+        private int tokenRefreshAhead = 30;
+        private ScheduledExecutorService scheduler;
+        private TokenStore tokenStore;
+        private Path outboxDirectory;
+        private Path registrationCacheFile;
+        private HttpClient.Version httpVersion = HttpClient.Version.HTTP_1_1;
+        private int maxConcurrentStreams;
+        private boolean metricsEnabled;
+        private ResiliencePolicy resiliencePolicy = ResiliencePolicy.defaults();
+        private ConcurrencyLimitPolicy concurrencyLimitPolicy;
+        private CompressionPolicy compressionPolicy;
+        private int bulkParallelism = 16;
+        private boolean virtualThreads = true;
+        private boolean warmUp;
+
+        private HttpClient httpClient;
+        private Transport transport;
         private ObjectMapper objectMapper = new ObjectMapper();
 
         /**
@@ -211,18 +572,268 @@ public class GameSDK {
             return this;
         }
 
+        /**
+         * @param secondsBeforeExpiry how long before the bearer token expires a replacement should be requested in the background
+         * @return the builder
+         */
+        public Builder tokenRefreshAhead(int secondsBeforeExpiry) {
+            this.tokenRefreshAhead = secondsBeforeExpiry;
+            return this;
+        }
+
+        /**
+         * By default all SDK instances share a single daemon thread for background work (e.g. refreshing tokens).
+         * @param scheduler the scheduler to run background work on instead
+         * @return the builder
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Shares bearer tokens with other SDK instances using the same api key, see {@link TokenStore#shared()} and
+         * {@link TokenStore#file(Path)}. A new instance then starts with a token another instance obtained, as long as
+         * it is still valid, and of the instances that share a token only one renews it.
+         * @param tokenStore the store to share tokens through, null (the default) to not share them
+         * @return the builder
+         */
+        public Builder tokenStore(TokenStore tokenStore) {
+            this.tokenStore = tokenStore;
+            return this;
+        }
+
+        /**
+         * Enables the durable outbox for {@code submitCompletedSession} and {@code updateAchievementProgress}.
+         * <br><br>
+         * These calls then only append the request to a memory-mapped log in the given directory and return {@code true} right away.
+         * A background thread sends the logged requests and retries them until the statistics service accepts them, also after a restart.
+         * <br><br>
+         * <i>Note: A directory can only be used by one SDK instance at a time.</i>
+         * @param directory the directory the outbox log is kept in
+         * @return the builder
+         */
+        public Builder outbox(Path directory) {
+            this.outboxDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Enables the registration cache for {@code registerGame}.
+         * <br><br>
+         * A registration that is identical to the last one the registry accepted is not sent again, the game context is
+         * returned from the cache file right away. A changed registration only sends the fields that changed, so a rolling
+         * restart of many replicas costs the registry at most one request per change.
+         * <br><br>
+         * <i>Note: Changes made to the game outside of the SDK are not noticed, delete the file to register the full game again.</i>
+         * @param file the file the last registration is kept in, it may be shared between replicas on the same host
+         * @return the builder
+         */
+        public Builder registrationCache(Path file) {
+            this.registrationCacheFile = file;
+            return this;
+        }
+
+        /**
+         * Selects the HTTP version of the default http client, {@link HttpClient.Version#HTTP_1_1} unless set.
+         * <br><br>
+         * With {@link HttpClient.Version#HTTP_2} concurrent calls to the same host are multiplexed as streams over a single connection
+         * instead of each needing a connection of their own. Over https the version is negotiated through ALPN, plain http base urls
+         * (h2c) are upgraded with an {@code Upgrade: h2c} request. Hosts that do not speak HTTP/2 are still talked to over HTTP/1.1.
+         * <br><br>
+         * How long idle connections are kept open for reuse is set for the whole JVM through the {@code jdk.httpclient.keepalive.timeout}
+         * (HTTP/1.1, 20 minutes by default) and {@code jdk.httpclient.keepalive.timeout.h2} (HTTP/2, 30 seconds by default) system properties,
+         * in seconds. The JDK reads them once, so they must be set (e.g. with {@code -D} on the command line) before the first {@link HttpClient} is created.
+         * <br><br>
+         * <i>Note: Ignored when a http client or transport is set through {@link #httpClient(HttpClient)} or {@link #transport(Transport)}.</i>
+         * @param version the HTTP version to prefer
+         * @return the builder
+         */
+        public Builder httpVersion(HttpClient.Version version) {
+            this.httpVersion = Objects.requireNonNull(version);
+            return this;
+        }
+
+        /**
+         * Limits how many requests this SDK instance has in flight to a single host at the same time, further requests wait for one to finish.
+         * Over HTTP/2 this is the maximum number of concurrent streams per connection, over HTTP/1.1 the maximum number of connections per host.
+         * <br><br>
+         * <i>Note: Requests sent by a {@link SessionBatcher} or {@link AchievementAggregator} count towards the limit as well.</i>
+         * @param maxConcurrentStreams the limit per host, 0 for no limit (the default)
+         * @return the builder
+         */
+        public Builder maxConcurrentStreams(int maxConcurrentStreams) {
+            if (maxConcurrentStreams < 0) throw new IllegalArgumentException("maxConcurrentStreams must not be negative");
+            this.maxConcurrentStreams = maxConcurrentStreams;
+            return this;
+        }
+
+        /**
+         * Records latency histograms, outcomes and status codes of every platform call, see {@link GameSDK#metrics()}.
+         * <br><br>
+         * <i>Note: Disabled by default, disabled metrics cost nothing beyond a branch per call.</i>
+         * @param enabled whether to record metrics
+         * @return the builder
+         */
+        public Builder metrics(boolean enabled) {
+            this.metricsEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Sets how failing calls are retried, replayed after re-authentication, hedged and cut off by circuit breakers.
+         * <br><br>
+         * <i>Note: {@link ResiliencePolicy#defaults()} unless set, use {@link ResiliencePolicy#disabled()} to send every call exactly once.</i>
+         * @param policy the policy for all calls of this SDK instance
+         * @return the builder
+         */
+        public Builder resilience(ResiliencePolicy policy) {
+            this.resiliencePolicy = Objects.requireNonNull(policy);
+            return this;
+        }
+
+        /**
+         * Limits the calls in flight to each platform service to what the service can handle, learned from its latency.
+         * <br><br>
+         * <i>Note: Disabled by default, {@link #maxConcurrentStreams(int)} still applies on top of it.</i>
+         * @param policy the limit policy, null to not limit (the default)
+         * @return the builder
+         */
+        public Builder concurrencyLimit(ConcurrencyLimitPolicy policy) {
+            this.concurrencyLimitPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Compresses large request bodies to the registry and statistics services and asks for compressed responses,
+         * which saves egress for games with many achievements and rules or many submitted sessions.
+         * <br><br>
+         * <i>Note: Disabled by default, see {@link CompressionPolicy} for what is compressed.</i>
+         * @param policy the compression policy, null to not compress (the default)
+         * @return the builder
+         */
+        public Builder compression(CompressionPolicy policy) {
+            this.compressionPolicy = policy;
+            return this;
+        }
+
+        /**
+         * @param bulkParallelism how many requests of a bulk call such as {@link GameSDK#submitCompletedSessions} are in flight at once
+         * @return the builder
+         */
+        public Builder bulkParallelism(int bulkParallelism) {
+            if (bulkParallelism < 1) throw new IllegalArgumentException("bulkParallelism must be at least 1");
+            this.bulkParallelism = bulkParallelism;
+            return this;
+        }
+
+        /**
+         * Runs the work of the default http client (sending requests, handling responses) on virtual threads instead of
+         * the cached platform thread pool the JDK uses by default.
+         * <br><br>
+         * <i>Note: Enabled by default. Ignored when a http client or transport is set through {@link #httpClient(HttpClient)} or {@link #transport(Transport)}.</i>
+         * @param virtualThreads whether to use virtual threads
+         * @return the builder
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
         public Builder httpClient(HttpClient httpClient) {
             this.httpClient = httpClient;
             return this;
         }
 
+        /**
+         * Replaces the {@link HttpClientTransport} all requests are sent through by default, e.g. with a {@link LoopbackTransport}
+         * to run the SDK without a network.
+         * <br><br>
+         * <i>Note: The http client options of this builder only apply to the default transport. A transport or http client set
+         * on the builder is not closed by {@link GameSDK#close()}, the caller that created it closes it.</i>
+         * @param transport the transport to send requests with
+         * @return the builder
+         */
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
         public Builder objectMapper(ObjectMapper objectMapper) {
             this.objectMapper = objectMapper;
             return this;
         }
 
+        /**
+         * Opens a connection to every base url and primes the JSON codecs while the SDK authenticates, so the first calls
+         * do not pay for the TCP and TLS handshakes. {@link #init(String)} then also waits for the warm-up, failures of
+         * the warm-up are ignored.
+         * @param warmUp whether to warm up, false unless set
+         * @return the builder
+         */
+        public Builder warmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        /**
+         * Creates the SDK instance and waits until it is authenticated (and warmed up).
+         * @throws AuthenticationFailedException when the api key was rejected or the registry could not be reached
+         */
         public GameSDK init(String apiKey) {
-            return new GameSDK(this, apiKey);
+            return new GameSDK(this, new Resources(this), apiKey, false, false);
+        }
+
+        /**
+         * Creates the SDK instance without waiting for the network, it authenticates (and warms up) in the background.
+         * <br><br>
+         * The SDK can be used right away, calls made before the authentication finished wait for it.
+         * Use {@link GameSDK#ready()} to find out when it finished or whether it failed.
+         */
+        public GameSDK initLazily(String apiKey) {
+            return new GameSDK(this, new Resources(this), apiKey, true, false);
+        }
+
+        /**
+         * Non-blocking variant of {@link #init(String)}.
+         * @return a future that completes with the SDK instance once it is ready, see {@link GameSDK#ready()}.
+         * When the authentication fails the instance is closed and the future fails with an {@link AuthenticationFailedException}.
+         */
+        public CompletableFuture<GameSDK> initAsync(String apiKey) {
+            GameSDK sdk = initLazily(apiKey);
+            return sdk.ready().whenComplete((ready, failure) -> {
+                if (failure != null) sdk.close();
+            });
+        }
+
+        /**
+         * Creates a pool for SDK instances of many api keys (tenants) that share one transport, codec, scheduler and
+         * set of limits, all configured by this builder. See {@link GameSDKPool}.
+         * <br><br>
+         * <i>Note: The outbox and the registration cache belong to a single api key, they can not be used with a pool.</i>
+         * @return the pool
+         */
+        public GameSDKPool buildPool() {
+            if (outboxDirectory != null) throw new IllegalStateException("The outbox can not be shared by the SDK instances of a pool");
+            if (registrationCacheFile != null) throw new IllegalStateException("The registration cache can not be shared by the SDK instances of a pool");
+            return new GameSDKPool(this, new Resources(this));
+        }
+
+        GameSDK initShared(String apiKey, Resources resources) {
+            return new GameSDK(this, resources, apiKey, true, true);
+        }
+
+        private Transport buildTransport() {
+            if (transport != null) return transport;
+            return new HttpClientTransport(httpClient != null ? httpClient : buildHttpClient());
+        }
+
+        private HttpClient buildHttpClient() {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(httpVersion)
+                    .followRedirects(HttpClient.Redirect.NORMAL);
+            if (virtualThreads) builder.executor(SdkExecutors.virtualThreads());
+            return builder.build();
         }
     }
 
@@ -0,0 +1,73 @@
+package be.kdg.int5;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SDK instances for many api keys (tenants) in one JVM, created through {@link GameSDK.Builder#buildPool()}.
+ * <br><br>
+ * The instances of a pool share the transport (so there is one connection pool per host), the JSON codec, the
+ * background scheduler, the metrics, the concurrency limits and the circuit breakers. What is left per tenant is its
+ * bearer token and lobby state, so a tenant costs a few small objects and no threads. Tenants are created lazily
+ * (see {@link GameSDK.Builder#initLazily(String)}): {@link #tenant(String)} returns right away and the tenant
+ * authenticates in the background.
+ * <br><br>
+ * <i>Note: Tenants are configured by the builder the pool was created with, changing it afterwards affects new tenants.</i>
+ */
+public final class GameSDKPool implements AutoCloseable {
+    private final GameSDK.Builder builder;
+    private final GameSDK.Resources resources;
+    private final Map<String, GameSDK> tenants = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    GameSDKPool(GameSDK.Builder builder, GameSDK.Resources resources) {
+        this.builder = builder;
+        this.resources = resources;
+    }
+
+    /**
+     * @param apiKey the api key of the tenant
+     * @return the SDK instance of the tenant, created on first use
+     */
+    public GameSDK tenant(String apiKey) {
+        if (closed) throw new IllegalStateException("The pool is closed");
+        return tenants.computeIfAbsent(apiKey, key -> builder.initShared(key, resources));
+    }
+
+    /**
+     * Removes the tenant from the pool and closes its SDK instance.
+     * @param apiKey the api key of the tenant
+     * @return whether the pool had the tenant
+     */
+    public boolean evict(String apiKey) {
+        GameSDK sdk = tenants.remove(apiKey);
+        if (sdk == null) return false;
+        sdk.close();
+        return true;
+    }
+
+    /**
+     * @return the api keys of the current tenants
+     */
+    public Set<String> tenants() {
+        return Set.copyOf(tenants.keySet());
+    }
+
+    /**
+     * @return the statistics of the calls made by all tenants together, see {@link GameSDK#metrics()}
+     */
+    public SdkMetrics metrics() {
+        return resources.metrics;
+    }
+
+    /**
+     * Closes every tenant, and the transport when the pool created it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (String apiKey : tenants.keySet()) evict(apiKey);
+        if (resources.ownsTransport) resources.transport.close();
+    }
+}
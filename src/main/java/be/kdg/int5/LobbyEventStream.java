@@ -0,0 +1,482 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.LobbyContext;
+import be.kdg.int5.domain.LobbyEvent;
+import be.kdg.int5.transport.Transport;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The lobby subscriptions of a {@link GameSDK}, see {@link GameSDK#subscribeLobby(LobbyContext)}.
+ * <br><br>
+ * All subscribed lobbies share one server-sent events connection to the gameplay service ({@code POST /lobby/events}
+ * with the lobby ids in the body). Subscribing to a lobby the connection does not cover yet reopens it for the new set
+ * of lobbies, a cancelled subscription leaves the connection as it is and the events of its lobby are dropped. Every
+ * reopened connection sends the id of the last event that was handed over as {@code Last-Event-ID}, so the service
+ * resumes right after it, whether the connection dropped or a lobby was added.
+ * <br><br>
+ * Backpressure is driven by demand all the way: a subscription buffers up to {@link #BUFFER_SIZE} events that its
+ * subscriber did not request yet, and the next chunk of the connection is only read while every buffer has room. A
+ * subscriber that stops requesting pauses the connection, which the transport passes on to the service through TCP or
+ * HTTP/2 flow control, instead of buffering without bound.
+ */
+final class LobbyEventStream {
+    static final int BUFFER_SIZE = 256;
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 500;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30_000;
+
+    private static final Flow.Subscriber<List<ByteBuffer>> CANCELLING = new Flow.Subscriber<>() {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    };
+
+    private final GameSDK sdk;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock, except that the connection is also read without it to resume it
+    private final Map<UUID, List<LobbySubscription>> subscriptions = new HashMap<>();
+    private Set<UUID> connectedLobbies = Set.of();
+    private volatile Connection connection;
+    private boolean connectScheduled;
+    private long reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+    private long serverRetryMillis = -1;
+    private String lastEventId;
+    private boolean closed;
+
+    LobbyEventStream(GameSDK sdk) {
+        this.sdk = sdk;
+    }
+
+    Flow.Publisher<LobbyEvent> publisher(LobbyContext lobby) {
+        Objects.requireNonNull(lobby);
+        return subscriber -> subscribe(lobby, Objects.requireNonNull(subscriber));
+    }
+
+    /**
+     * Completes every subscription once its subscriber received the events it still had buffered, and closes the connection.
+     */
+    void close() {
+        List<LobbySubscription> finished = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            disconnect();
+            subscriptions.values().forEach(finished::addAll);
+            subscriptions.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (LobbySubscription subscription : finished) subscription.finish(null);
+    }
+
+    private void subscribe(LobbyContext lobby, Flow.Subscriber<? super LobbyEvent> subscriber) {
+        LobbySubscription subscription = new LobbySubscription(lobby, subscriber);
+        subscriber.onSubscribe(subscription);
+        boolean registered = false;
+        lock.lock();
+        try {
+            if (!closed && !subscription.cancelled) {
+                subscriptions.computeIfAbsent(lobby.lobbyId(), id -> new ArrayList<>()).add(subscription);
+                if (!connectedLobbies.contains(lobby.lobbyId())) scheduleConnect(0);
+                registered = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!registered) subscription.finish(null);
+    }
+
+    private void remove(LobbySubscription subscription) {
+        lock.lock();
+        try {
+            UUID lobbyId = subscription.lobby.lobbyId();
+            List<LobbySubscription> lobbySubscriptions = subscriptions.get(lobbyId);
+            if (lobbySubscriptions == null || !lobbySubscriptions.remove(subscription) || !lobbySubscriptions.isEmpty()) return;
+            subscriptions.remove(lobbyId);
+            // The lobby stays on the connection until it is reopened anyway, unless nothing is left to listen to
+            if (subscriptions.isEmpty()) disconnect();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private void disconnect() {
+        if (connection != null) connection.cancel();
+        connection = null;
+        connectedLobbies = Set.of();
+    }
+
+    // Called with the lock held
+    private void scheduleConnect(long delayMillis) {
+        if (connectScheduled || closed) return;
+        connectScheduled = true;
+        try {
+            sdk.scheduler.schedule(this::connect, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler was shut down, so is the application
+            connectScheduled = false;
+        }
+    }
+
+    private void connect() {
+        Connection opening;
+        List<UUID> lobbies;
+        String resumeFrom;
+        lock.lock();
+        try {
+            connectScheduled = false;
+            if (closed || subscriptions.isEmpty()) return;
+            disconnect();
+            lobbies = List.copyOf(subscriptions.keySet());
+            connectedLobbies = Set.copyOf(lobbies);
+            opening = new Connection();
+            connection = opening;
+            resumeFrom = lastEventId;
+        } finally {
+            lock.unlock();
+        }
+
+        byte[] body = RequestBodies.lobbyEvents(sdk, lobbies);
+        sdk.tokenManager.tokenAsync()
+                .thenCompose(token -> {
+                    opening.token = token;
+                    return sdk.transport.stream(request(token, body, resumeFrom));
+                })
+                .whenComplete(opening::opened);
+    }
+
+    private Transport.Request request(TokenManager.Token token, byte[] body, String resumeFrom) {
+        Transport.Request request = sdk.endpoints.lobbyEvents.request(token, body);
+        if (resumeFrom == null) return request;
+        Map<String, String> headers = new LinkedHashMap<>(request.headers());
+        headers.put("Last-Event-ID", resumeFrom);
+        return new Transport.Request(request.method(), request.uri(), headers, request.body());
+    }
+
+    /**
+     * Reopens the connection after a delay that doubles with every failure in a row, or after the delay the service asked for.
+     * @param retryAfterMillis the delay of a {@code Retry-After} header, -1 for none
+     */
+    private void lost(Connection lostConnection, long retryAfterMillis) {
+        lock.lock();
+        try {
+            if (lostConnection != connection || closed) return;
+            connection = null;
+            connectedLobbies = Set.of();
+            long delay = Math.max(reconnectDelayMillis, Math.max(retryAfterMillis, serverRetryMillis));
+            reconnectDelayMillis = Math.min(MAX_RECONNECT_DELAY_MILLIS, reconnectDelayMillis * 2);
+            scheduleConnect(delay);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends every subscription with the failure, for answers that reconnecting does not change.
+     */
+    private void fail(Connection failedConnection, RuntimeException failure) {
+        List<LobbySubscription> failed = new ArrayList<>();
+        lock.lock();
+        try {
+            if (failedConnection != connection || closed) return;
+            disconnect();
+            subscriptions.values().forEach(failed::addAll);
+            subscriptions.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (LobbySubscription subscription : failed) subscription.finish(failure);
+    }
+
+    /**
+     * Hands an event of the connection to the subscriptions of its lobby.
+     * @param touched collects the subscriptions that received the event, to deliver to them once the chunk is parsed
+     */
+    private void dispatch(Connection from, String eventId, String type, String data, Set<LobbySubscription> touched) {
+        LobbyEvent.Type eventType;
+        UUID lobbyId;
+        UUID playerId;
+        try {
+            eventType = LobbyEvent.Type.valueOf(type);
+            JsonNode json = sdk.objectMapper.readTree(data);
+            lobbyId = UUID.fromString(json.path("lobbyId").asText());
+            String player = json.path("playerId").asText(null);
+            playerId = player != null ? UUID.fromString(player) : null;
+        } catch (IOException | IllegalArgumentException e) {
+            // An event this SDK version does not know, it still counts as received
+            eventType = null;
+            lobbyId = null;
+            playerId = null;
+        }
+
+        if (eventType != null) sdk.lobbyLanes.changedElsewhere(lobbyId, eventType);
+        lock.lock();
+        try {
+            if (from != connection) return;
+            if (eventId != null) lastEventId = eventId;
+            if (eventType == null) return;
+            List<LobbySubscription> lobbySubscriptions = subscriptions.get(lobbyId);
+            if (lobbySubscriptions == null) return;
+            LobbyEvent event = new LobbyEvent(eventId != null ? eventId : "", new LobbyContext(lobbyId), eventType, playerId);
+            for (LobbySubscription subscription : lobbySubscriptions) {
+                subscription.enqueue(event);
+                touched.add(subscription);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasRoom() {
+        lock.lock();
+        try {
+            for (List<LobbySubscription> lobbySubscriptions : subscriptions.values()) {
+                for (LobbySubscription subscription : lobbySubscriptions) {
+                    if (subscription.queued.get() >= BUFFER_SIZE) return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resumeConnection() {
+        Connection current = connection;
+        if (current != null) current.resume();
+    }
+
+    /**
+     * One opened connection, replaced by a new instance whenever the connection is reopened.
+     * Chunks are requested one at a time, the next one only when the previous was handed over.
+     */
+    private final class Connection implements Flow.Subscriber<List<ByteBuffer>>, ServerSentEvents.Listener {
+        private final ServerSentEvents parser = new ServerSentEvents(this);
+        private final AtomicBoolean paused = new AtomicBoolean();
+        // Only used by the thread the transport delivers a chunk on
+        private final Set<LobbySubscription> touched = new LinkedHashSet<>();
+        private volatile Flow.Subscription upstream;
+        private volatile boolean cancelled;
+        private volatile TokenManager.Token token;
+
+        private void opened(Transport.Response<Flow.Publisher<List<ByteBuffer>>> response, Throwable failure) {
+            if (failure != null) {
+                lost(this, -1);
+                return;
+            }
+
+            int status = response.statusCode();
+            if (status != 200) {
+                response.body().subscribe(CANCELLING);
+                if (status == 403) {
+                    sdk.tokenManager.rejected(token.value());
+                    lost(this, -1);
+                } else if (status == 408 || status == 429 || status >= 500) {
+                    long retryAfter = Resilience.retryAfterSeconds(response.firstHeader("Retry-After"));
+                    lost(this, retryAfter >= 0 ? TimeUnit.SECONDS.toMillis(retryAfter) : -1);
+                } else {
+                    fail(this, new GameSDK.GeneralMethodFailedException("Non-OK response status code: " + status));
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                if (this == connection) reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+            } finally {
+                lock.unlock();
+            }
+            response.body().subscribe(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> chunks) {
+            if (cancelled) return;
+            try {
+                for (ByteBuffer chunk : chunks) parser.accept(chunk);
+            } catch (IOException e) {
+                cancel();
+                lost(this, -1);
+            } finally {
+                for (LobbySubscription subscription : touched) subscription.drain();
+                touched.clear();
+            }
+            requestMore();
+        }
+
+        @Override
+        public void event(String lastEventId, String type, String data) {
+            dispatch(this, lastEventId, type, data, touched);
+        }
+
+        @Override
+        public void retry(long millis) {
+            lock.lock();
+            try {
+                serverRetryMillis = Math.min(MAX_RECONNECT_DELAY_MILLIS, millis);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            lost(this, -1);
+        }
+
+        @Override
+        public void onComplete() {
+            lost(this, -1);
+        }
+
+        private void requestMore() {
+            if (cancelled) return;
+            if (!hasRoom()) {
+                paused.set(true);
+                // A subscriber may have made room between the check and the pause, without seeing the pause
+                if (!hasRoom() || !paused.compareAndSet(true, false)) return;
+            }
+            upstream.request(1);
+        }
+
+        private void resume() {
+            if (paused.get() && !cancelled && hasRoom() && paused.compareAndSet(true, false)) upstream.request(1);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            Flow.Subscription subscription = upstream;
+            if (subscription != null) subscription.cancel();
+        }
+    }
+
+    private final class LobbySubscription implements Flow.Subscription {
+        private final LobbyContext lobby;
+        private final Flow.Subscriber<? super LobbyEvent> subscriber;
+        private final Queue<LobbyEvent> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        // Serializes the signals to the subscriber, whichever thread asks for a delivery
+        private final AtomicInteger deliveries = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private Throwable failure;
+
+        private LobbySubscription(LobbyContext lobby, Flow.Subscriber<? super LobbyEvent> subscriber) {
+            this.lobby = lobby;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                remove(this);
+                finish(new IllegalArgumentException("A subscriber must request a positive number of events, got " + n));
+                return;
+            }
+            requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            remove(this);
+            queue.clear();
+            resumeConnection();
+        }
+
+        private void enqueue(LobbyEvent event) {
+            queue.offer(event);
+            queued.incrementAndGet();
+        }
+
+        /**
+         * @param failure the failure to end with, null to complete
+         */
+        private void finish(Throwable failure) {
+            this.failure = failure;
+            done = true;
+            drain();
+        }
+
+        private void drain() {
+            if (deliveries.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                long wanted = requested.get();
+                long emitted = 0;
+                while (emitted != wanted && !cancelled) {
+                    LobbyEvent event = queue.poll();
+                    if (event == null) break;
+                    queued.decrementAndGet();
+                    try {
+                        subscriber.onNext(event);
+                    } catch (RuntimeException e) {
+                        cancel();
+                    }
+                    emitted++;
+                }
+                if (emitted > 0) {
+                    if (wanted != Long.MAX_VALUE) requested.addAndGet(-emitted);
+                    resumeConnection();
+                }
+                if (cancelled) return;
+                if (done && queue.isEmpty()) {
+                    cancelled = true;
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                missed = deliveries.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.LobbyContext;
+import be.kdg.int5.domain.LobbyEvent;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serialises the patches of every lobby into its own lane, so updates to one lobby reach the gameplay service in the
+ * order they were made while different lobbies are patched in parallel.
+ * <br><br>
+ * While a patch of a lobby is in flight, newer patches of that lobby are merged into a single pending patch (latest
+ * owner, latest player count, latest closed flag), all callers that were merged share its outcome. Each lane mirrors
+ * the last state the gameplay service acknowledged, fields that would not change anything are left out of the
+ * request and a patch that would not change anything at all is not sent.
+ * <br><br>
+ * A lobby also changes without this SDK instance, players join and leave and the service may change the owner or the
+ * closed flag. The events of a lobby that is subscribed to through {@link GameSDK#subscribeLobby} make the lane forget
+ * the fields they touch, so the next patch of those fields is sent again.
+ * <br><br>
+ * <i>Note: The mirror of a lobby whose events are not subscribed to assumes that this instance is its only writer.</i>
+ */
+final class LobbyLanes {
+    private static final int MAX_TRACKED_LOBBIES = 10_000;
+    // While every lane is busy each new lobby would scan all of them, at most one scan runs per interval
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final class Lane {
+        private final LobbyContext lobby;
+
+        // Merged patch waiting to be sent, guarded by the lane
+        private UUID pendingOwnerId;
+        private Integer pendingPlayerCount;
+        private Boolean pendingClosed;
+        private CompletableFuture<Void> pendingResult;
+        private boolean sending;
+
+        // Last state acknowledged by the gameplay service, null when unknown
+        private UUID ownerId;
+        private Integer playerCount;
+        private Boolean closed;
+
+        // Counts the changes made by others, an acknowledgement only updates the mirror when none came in meanwhile
+        private int externalChanges;
+
+        // Set under the lane when it was removed from the map, a caller that still holds it must look up the new lane
+        private boolean evicted;
+
+        private Lane(LobbyContext lobby) {
+            this.lobby = lobby;
+        }
+
+        private boolean isIdle() {
+            return !sending && pendingResult == null;
+        }
+    }
+
+    private final GameSDK sdk;
+    private final ConcurrentHashMap<UUID, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong lastEviction = new AtomicLong(System.nanoTime() - EVICTION_INTERVAL_NANOS);
+
+    LobbyLanes(GameSDK sdk) {
+        this.sdk = sdk;
+    }
+
+    /**
+     * Records the state of a freshly created lobby, new lobbies are open and owned by their creator.
+     */
+    void created(LobbyContext lobby, UUID ownerId) {
+        while (true) {
+            Lane lane = lane(lobby);
+            synchronized (lane) {
+                if (lane.evicted) continue;
+                lane.ownerId = ownerId;
+                lane.closed = false;
+                return;
+            }
+        }
+    }
+
+    CompletableFuture<Void> patch(LobbyContext lobby, UUID ownerId, Integer playerCount, Boolean closed) {
+        while (true) {
+            Lane lane = lane(lobby);
+            CompletableFuture<Void> result;
+            boolean startSending = false;
+            synchronized (lane) {
+                // Once the patch is pending the lane is no longer idle and can not be evicted
+                if (lane.evicted) continue;
+                if (lane.pendingResult == null) lane.pendingResult = new CompletableFuture<>();
+                if (ownerId != null) lane.pendingOwnerId = ownerId;
+                if (playerCount != null) lane.pendingPlayerCount = playerCount;
+                if (closed != null) lane.pendingClosed = closed;
+                result = lane.pendingResult;
+                if (!lane.sending) {
+                    lane.sending = true;
+                    startSending = true;
+                }
+            }
+            if (startSending) sendNext(lane);
+            return result;
+        }
+    }
+
+    /**
+     * Forgets the mirrored fields the event of a lobby touched, the lobby changed without this instance.
+     */
+    void changedElsewhere(UUID lobbyId, LobbyEvent.Type type) {
+        Lane lane = lanes.get(lobbyId);
+        if (lane == null) return;
+        synchronized (lane) {
+            switch (type) {
+                case PLAYER_JOINED, PLAYER_LEFT -> lane.playerCount = null;
+                case OWNER_CHANGED -> lane.ownerId = null;
+                case CLOSED, OPENED -> lane.closed = null;
+                default -> {
+                    return;
+                }
+            }
+            lane.externalChanges++;
+        }
+    }
+
+    private void sendNext(Lane lane) {
+        while (true) {
+            UUID ownerId;
+            Integer playerCount;
+            Boolean closed;
+            CompletableFuture<Void> result;
+            int externalChanges;
+            synchronized (lane) {
+                if (lane.pendingResult == null) {
+                    lane.sending = false;
+                    return;
+                }
+                ownerId = Objects.equals(lane.pendingOwnerId, lane.ownerId) ? null : lane.pendingOwnerId;
+                playerCount = Objects.equals(lane.pendingPlayerCount, lane.playerCount) ? null : lane.pendingPlayerCount;
+                closed = Objects.equals(lane.pendingClosed, lane.closed) ? null : lane.pendingClosed;
+                result = lane.pendingResult;
+                externalChanges = lane.externalChanges;
+                lane.pendingOwnerId = null;
+                lane.pendingPlayerCount = null;
+                lane.pendingClosed = null;
+                lane.pendingResult = null;
+            }
+
+            if (ownerId == null && playerCount == null && closed == null) {
+                result.complete(null);
+                continue;
+            }
+
+            CompletableFuture<Void> request;
+            // A hedged patch can be answered while its other copy is still in flight, the next patch must not overtake that copy
+            CompletableFuture<Void> settled = new CompletableFuture<>();
+            try {
+                request = LobbyModule.patchLobbyAsync(sdk, lane.lobby, ownerId, playerCount, closed, settled);
+            } catch (RuntimeException e) {
+                request = CompletableFuture.failedFuture(e);
+                settled.complete(null);
+            }
+            CompletableFuture<Void> acknowledged = request.whenComplete((ignored, failure) -> {
+                synchronized (lane) {
+                    // After a failure, or a change by others that may have come after the patch, the state of the sent
+                    // fields is unknown, so they are never suppressed next time
+                    boolean known = failure == null && lane.externalChanges == externalChanges;
+                    if (ownerId != null) lane.ownerId = known ? ownerId : null;
+                    if (playerCount != null) lane.playerCount = known ? playerCount : null;
+                    if (closed != null) lane.closed = known ? closed : null;
+                }
+                if (failure == null) result.complete(null);
+                else result.completeExceptionally(ModuleSupport.mapFailure(failure));
+            });
+            CompletableFuture.allOf(acknowledged, settled).whenComplete((ignored, failure) -> sendNext(lane));
+            return;
+        }
+    }
+
+    private Lane lane(LobbyContext lobby) {
+        Lane lane = lanes.get(lobby.lobbyId());
+        if (lane != null) return lane;
+        if (lanes.size() >= MAX_TRACKED_LOBBIES) evictIdleLanes();
+        return lanes.computeIfAbsent(lobby.lobbyId(), id -> new Lane(lobby));
+    }
+
+    /**
+     * Forgetting a lane only costs the suppression of one redundant patch for that lobby. When no lane is idle the map
+     * grows past the limit until the next scan.
+     */
+    private void evictIdleLanes() {
+        long last = lastEviction.get();
+        long now = System.nanoTime();
+        if (now - last < EVICTION_INTERVAL_NANOS || !lastEviction.compareAndSet(last, now)) return;
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                if (lane.isIdle() && lanes.remove(lane.lobby.lobbyId(), lane)) lane.evicted = true;
+            }
+        }
+    }
+}
@@ -2,73 +2,52 @@ package be.kdg.int5;
 
 import be.kdg.int5.domain.GameContext;
 import be.kdg.int5.domain.LobbyContext;
+import be.kdg.int5.transport.Transport;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 class LobbyModule {
     protected static LobbyContext createLobby(GameSDK sdk, GameContext ctx, UUID ownerId, int maxPlayers) {
-        String json = "{";
-        json += "\"gameId\": \""+ctx.gameId().toString()+"\", ";
-        json += "\"ownerId\": \""+ownerId.toString()+"\", ";
-        json += "\"maxPlayers\": "+maxPlayers;
-        json += "}";
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .method("POST", HttpRequest.BodyPublishers.ofString(json))
-                .setHeader("Authorization", "Bearer "+sdk.bearerToken())
-                .setHeader("Content-Type", "application/json")
-                .setHeader("Accept", "application/json")
-                .uri(URI.create(sdk.gameplayBaseUrl+"/lobby"))
-                .build();
-        try {
-            HttpResponse<String> response = sdk.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if(response.statusCode() != 201) {
-                if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
-                throw new GameSDK.GeneralMethodFailedException("Non-OK response status code: "+response.statusCode());
-            }
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> jsonMap = sdk.objectMapper.readValue(response.body(), Map.class);
-            if(!jsonMap.containsKey("uuid")) {
-                throw new GameSDK.GeneralMethodFailedException("Got malformed response");
-            }
+        byte[] json = RequestBodies.createLobby(sdk, ctx, ownerId, maxPlayers);
+        return ModuleSupport.send(sdk, Operation.CREATE_LOBBY, sdk.endpoints.createLobby.prepare(json), ResponseBodies.fields(sdk, 201, "uuid"), response -> createLobbyResponse(sdk, response, ownerId));
+    }
 
-            return new LobbyContext(UUID.fromString((String) jsonMap.get("uuid")));
-        }catch (IOException | InterruptedException e) {
-            throw new GameSDK.GeneralMethodFailedException(e.getMessage());
-        }
+    protected static CompletableFuture<LobbyContext> createLobbyAsync(GameSDK sdk, GameContext ctx, UUID ownerId, int maxPlayers) {
+        byte[] json = RequestBodies.createLobby(sdk, ctx, ownerId, maxPlayers);
+        return ModuleSupport.sendAsync(sdk, Operation.CREATE_LOBBY, sdk.endpoints.createLobby.prepare(json), ResponseBodies.fields(sdk, 201, "uuid"), response -> createLobbyResponse(sdk, response, ownerId));
     }
 
-    protected static void patchLobby(GameSDK sdk, LobbyContext lobby, UUID ownerId, Integer playerCount, Boolean closed) {
-        String json = "{\"lobbyId\": \""+lobby.lobbyId()+"\"";
+    /**
+     * Sends the patch right away, callers go through {@link LobbyLanes} to keep the patches of a lobby ordered.
+     * @param settled completed once no copy of the patch (see {@link ResiliencePolicy.Builder#hedgeLobbyPatches}) is in flight anymore
+     */
+    protected static CompletableFuture<Void> patchLobbyAsync(GameSDK sdk, LobbyContext lobby, UUID ownerId, Integer playerCount, Boolean closed, CompletableFuture<Void> settled) {
+        byte[] json = RequestBodies.patchLobby(sdk, lobby, ownerId, playerCount, closed);
+        return ModuleSupport.sendAsync(sdk, Operation.PATCH_LOBBY, sdk.endpoints.patchLobby.prepare(json), Transport.BodyReader.discarding(), LobbyModule::patchLobbyResponse, settled);
+    }
 
-        if (ownerId != null) json += ", \"ownerId\": \""+ownerId+"\"";
-        if (playerCount != null) json += ", \"currentPlayerCount\": "+playerCount;
-        if (closed != null) json += ", \"closed\": "+closed;
+    private static LobbyContext createLobbyResponse(GameSDK sdk, Transport.Response<String[]> response, UUID ownerId) {
+        if(response.statusCode() != 201) {
+            if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
+            throw new GameSDK.GeneralMethodFailedException("Non-OK response status code: "+response.statusCode());
+        }
 
-        json += "}";
+        String uuid = response.body()[0];
+        if(uuid == null) {
+            throw new GameSDK.GeneralMethodFailedException("Got malformed response");
+        }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .method("PATCH", HttpRequest.BodyPublishers.ofString(json))
-                .setHeader("Authorization", "Bearer "+sdk.bearerToken())
-                .setHeader("Content-Type", "application/json")
-                .setHeader("Accept", "application/json")
-                .uri(URI.create(sdk.gameplayBaseUrl+"/lobby"))
-                .build();
-        try {
-            HttpResponse<String> response = sdk.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        LobbyContext lobby = new LobbyContext(UUID.fromString(uuid));
+        sdk.lobbyLanes.created(lobby, ownerId);
+        return lobby;
+    }
 
-            if(response.statusCode() != 200) {
-                if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
-                throw new GameSDK.GeneralMethodFailedException("Non-OK response status code: "+response.statusCode());
-            }
-        }catch (IOException | InterruptedException e) {
-            throw new GameSDK.GeneralMethodFailedException(e.getMessage());
+    private static Void patchLobbyResponse(Transport.Response<Void> response) {
+        if(response.statusCode() != 200) {
+            if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
+            throw new GameSDK.GeneralMethodFailedException("Non-OK response status code: "+response.statusCode());
         }
+        return null;
     }
 }
@@ -0,0 +1,19 @@
+package be.kdg.int5;
+
+/**
+ * Receives every completed platform call, e.g. to forward it to a monitoring system.
+ * <br><br>
+ * <i>Note: Listeners are called on the thread that completed the call, which can be an HTTP client thread.
+ * Keep them fast and non-blocking, an exception thrown by a listener is ignored.</i>
+ * @see SdkMetrics#addListener(MetricsListener)
+ */
+@FunctionalInterface
+public interface MetricsListener {
+    /**
+     * @param operation the call that completed
+     * @param outcome how it completed
+     * @param statusCode the response status code, 0 when no response was received
+     * @param durationNanos how long the call took, including waiting for a bearer token
+     */
+    void onCall(Operation operation, SdkMetrics.Outcome outcome, int statusCode, long durationNanos);
+}
@@ -0,0 +1,49 @@
+package be.kdg.int5;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the {@link SdkMetrics} of a {@link GameSDK}, all counts are totals since the SDK was created.
+ * @param operations the statistics of every operation
+ */
+public record MetricsSnapshot(Map<Operation, OperationStats> operations) {
+    /**
+     * @param calls the number of completed calls
+     * @param successes the calls that succeeded
+     * @param authenticationFailures the calls that failed with an {@link GameSDK.AuthenticationFailedException}
+     * @param failures the calls that failed otherwise (typically a {@link GameSDK.GeneralMethodFailedException})
+     * @param inFlight the calls that were started but did not complete yet
+     * @param statusCodes the number of responses per status code
+     * @param mean the average duration of a call
+     * @param p50 the median duration
+     * @param p99 the 99th percentile duration
+     * @param p999 the 99.9th percentile duration
+     * @param max the longest duration
+     */
+    public record OperationStats(
+            long calls,
+            long successes,
+            long authenticationFailures,
+            long failures,
+            long inFlight,
+            Map<Integer, Long> statusCodes,
+            Duration mean,
+            Duration p50,
+            Duration p99,
+            Duration p999,
+            Duration max
+    ) {
+    }
+
+    public OperationStats operation(Operation operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * @return how many times a bearer token was requested, including the one on init
+     */
+    public long tokenRefreshes() {
+        return operations.get(Operation.AUTHENTICATE).calls();
+    }
+}
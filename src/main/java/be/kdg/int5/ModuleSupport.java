@@ -0,0 +1,376 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.Transport;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Shared send logic for the modules, so the blocking and the non-blocking variant of every call
+ * build the same request and interpret the response in the same way.
+ */
+final class ModuleSupport {
+    private ModuleSupport() {
+    }
+
+    @FunctionalInterface
+    interface ResponseHandler<B, T> {
+        T handle(Transport.Response<B> response) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface RequestFactory {
+        Transport.Request create(TokenManager.Token token);
+    }
+
+    /**
+     * @param operation the operation the call is recorded as in the {@link SdkMetrics} and {@link SdkCallEvent}
+     * @param bodyReader how much of the body the endpoint needs, see {@link ResponseBodies}
+     */
+    static <B, T> T send(GameSDK sdk, Operation operation, RequestFactory requestFactory, Transport.BodyReader<B> bodyReader, ResponseHandler<B, T> handler) {
+        SdkCallEvent event = new SdkCallEvent(operation);
+        long start = sdk.metrics.start(operation);
+        int statusCode = 0;
+        try {
+            Transport.Response<B> response = exchange(sdk, operation, requestFactory, event.countResponse(Compression.decoding(bodyReader)), event);
+            statusCode = response.statusCode();
+            T result = handler.handle(response);
+            finish(sdk, operation, start, event, statusCode, null);
+            return result;
+        } catch (IOException | InterruptedException e) {
+            GameSDK.GeneralMethodFailedException failure = new GameSDK.GeneralMethodFailedException(e.getMessage());
+            finish(sdk, operation, start, event, statusCode, failure);
+            throw failure;
+        } catch (RuntimeException e) {
+            finish(sdk, operation, start, event, statusCode, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the call until the {@link Resilience} of the SDK is done with it.
+     * @return the response to hand to the caller
+     */
+    private static <B> Transport.Response<B> exchange(GameSDK sdk, Operation operation, RequestFactory requestFactory, Transport.BodyReader<B> reader, SdkCallEvent event) throws IOException, InterruptedException {
+        Resilience resilience = sdk.resilience;
+        CircuitBreaker breaker = resilience.breaker(operation);
+        resilience.callStarted();
+        int attempt = 1;
+        boolean replayed = false;
+        while (true) {
+            TokenManager.Token token = sdk.tokenManager.token();
+            Transport.Request request = requestFactory.create(token);
+            event.request(request);
+            if (!breaker.tryAcquire()) throw Resilience.circuitOpen(operation);
+
+            Transport.Response<B> response;
+            try {
+                response = sendLimited(sdk, operation, request, reader, event);
+            } catch (IOException e) {
+                if (resilience.afterAttempt(operation, attempt, replayed, 0, -1) != Resilience.Verdict.RETRY) throw e;
+                event.retry();
+                TimeUnit.NANOSECONDS.sleep(resilience.backoffNanos(attempt++, -1));
+                continue;
+            } catch (InterruptedException | RuntimeException e) {
+                breaker.release();
+                throw e;
+            }
+
+            long retryAfter = Resilience.retryAfterSeconds(response.firstHeader("Retry-After"));
+            switch (resilience.afterAttempt(operation, attempt, replayed, response.statusCode(), retryAfter)) {
+                case DONE -> {
+                    return response;
+                }
+                case REAUTHENTICATE -> {
+                    sdk.tokenManager.rejected(token.value());
+                    replayed = true;
+                }
+                case RETRY -> TimeUnit.NANOSECONDS.sleep(resilience.backoffNanos(attempt++, retryAfter));
+            }
+            event.retry();
+        }
+    }
+
+    private static <B> Transport.Response<B> sendLimited(GameSDK sdk, Operation operation, Transport.Request request, Transport.BodyReader<B> reader, SdkCallEvent event) throws IOException, InterruptedException {
+        AdaptiveLimiter limiter = sdk.concurrencyLimiters.get(operation.service());
+        if (limiter == null) return sendStreamLimited(sdk, request, reader, event);
+
+        long queued = System.nanoTime();
+        if (!limiter.acquireBlocking()) throw shed(operation);
+        event.queueWait(queued);
+        int inFlight = limiter.inFlight();
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            Transport.Response<B> response = sendStreamLimited(sdk, request, reader, event);
+            overloaded = isOverloaded(response.statusCode());
+            return response;
+        } catch (IOException e) {
+            overloaded = true;
+            throw e;
+        } finally {
+            limiter.release(System.nanoTime() - start, inFlight, overloaded);
+        }
+    }
+
+    private static <B> Transport.Response<B> sendStreamLimited(GameSDK sdk, Transport.Request request, Transport.BodyReader<B> reader, SdkCallEvent event) throws IOException, InterruptedException {
+        StreamLimiter limiter = sdk.streamLimiters.forUri(request.uri());
+        if (limiter == null) return sdk.transport.sendBlocking(request, reader);
+        long queued = System.nanoTime();
+        limiter.acquire();
+        event.queueWait(queued);
+        try {
+            return sdk.transport.sendBlocking(request, reader);
+        } finally {
+            limiter.release();
+        }
+    }
+
+    static <B, T> CompletableFuture<T> sendAsync(GameSDK sdk, Operation operation, RequestFactory requestFactory, Transport.BodyReader<B> bodyReader, ResponseHandler<B, T> handler) {
+        return sendAsync(sdk, operation, requestFactory, bodyReader, handler, null);
+    }
+
+    /**
+     * The returned future completes exceptionally with an {@link GameSDK.AuthenticationFailedException} or
+     * {@link GameSDK.GeneralMethodFailedException} as cause, exactly like the blocking variant would throw.
+     * <br><br>
+     * The calling thread never waits for authentication, if the token needs refreshing the request is sent once it is.
+     * Retries are scheduled on the scheduler of the SDK instead of parking a thread.
+     * @param settled completed once every request sent for the call was answered, including a hedge that lost the race
+     *                and therefore possibly after the returned future, null when not needed
+     */
+    static <B, T> CompletableFuture<T> sendAsync(GameSDK sdk, Operation operation, RequestFactory requestFactory, Transport.BodyReader<B> bodyReader, ResponseHandler<B, T> handler, CompletableFuture<Void> settled) {
+        SdkCallEvent event = new SdkCallEvent(operation);
+        long start = sdk.metrics.start(operation);
+        Settlement settlement = new Settlement(settled);
+        sdk.resilience.callStarted();
+        return exchangeAsync(sdk, operation, requestFactory, event.countResponse(Compression.decoding(bodyReader)), event, settlement, 1, false)
+                .handle((response, failure) -> {
+                    settlement.decided();
+                    if (failure != null) {
+                        RuntimeException mapped = mapFailure(failure);
+                        finish(sdk, operation, start, event, 0, mapped);
+                        throw mapped;
+                    }
+                    try {
+                        T result = handler.handle(response);
+                        finish(sdk, operation, start, event, response.statusCode(), null);
+                        return result;
+                    } catch (IOException e) {
+                        GameSDK.GeneralMethodFailedException mapped = new GameSDK.GeneralMethodFailedException(e.getMessage());
+                        finish(sdk, operation, start, event, response.statusCode(), mapped);
+                        throw mapped;
+                    } catch (RuntimeException e) {
+                        finish(sdk, operation, start, event, response.statusCode(), e);
+                        throw e;
+                    }
+                });
+    }
+
+    private static <B> CompletableFuture<Transport.Response<B>> exchangeAsync(GameSDK sdk, Operation operation, RequestFactory requestFactory, Transport.BodyReader<B> reader, SdkCallEvent event, Settlement settlement, int attempt, boolean replayed) {
+        Resilience resilience = sdk.resilience;
+        CircuitBreaker breaker = resilience.breaker(operation);
+        return sdk.tokenManager.tokenAsync()
+                .thenCompose(token -> {
+                    Transport.Request request = requestFactory.create(token);
+                    event.request(request);
+                    if (!breaker.tryAcquire()) throw Resilience.circuitOpen(operation);
+
+                    return sendHedged(sdk, operation, request, reader, event, settlement).handle((response, failure) -> {
+                        int statusCode = 0;
+                        long retryAfter = -1;
+                        if (failure != null) {
+                            Throwable cause = unwrap(failure);
+                            if (!(cause instanceof IOException)) {
+                                breaker.release();
+                                return CompletableFuture.<Transport.Response<B>>failedFuture(cause);
+                            }
+                        } else {
+                            statusCode = response.statusCode();
+                            retryAfter = Resilience.retryAfterSeconds(response.firstHeader("Retry-After"));
+                        }
+
+                        switch (resilience.afterAttempt(operation, attempt, replayed, statusCode, retryAfter)) {
+                            case REAUTHENTICATE -> {
+                                sdk.tokenManager.rejected(token.value());
+                                event.retry();
+                                return exchangeAsync(sdk, operation, requestFactory, reader, event, settlement, attempt, true);
+                            }
+                            case RETRY -> {
+                                event.retry();
+                                return delay(sdk, resilience.backoffNanos(attempt, retryAfter))
+                                        .thenCompose(ignored -> exchangeAsync(sdk, operation, requestFactory, reader, event, settlement, attempt + 1, replayed));
+                            }
+                            default -> {
+                                return failure == null ? CompletableFuture.completedFuture(response) : CompletableFuture.<Transport.Response<B>>failedFuture(unwrap(failure));
+                            }
+                        }
+                    }).thenCompose(Function.identity());
+                })
+                .toCompletableFuture();
+    }
+
+    /**
+     * Sends the request, and for hedged operations a second time when the first copy was not answered within the
+     * hedge delay. The first response wins, a failure only counts once no copy is left that could still answer.
+     */
+    private static <B> CompletableFuture<Transport.Response<B>> sendHedged(GameSDK sdk, Operation operation, Transport.Request request, Transport.BodyReader<B> reader, SdkCallEvent event, Settlement settlement) {
+        CompletableFuture<Transport.Response<B>> primary = settlement.sent(sendLimitedAsync(sdk, operation, request, reader, event));
+        Duration hedgeDelay = sdk.resilience.policy().hedgeDelay();
+        if (hedgeDelay == null || operation != Operation.PATCH_LOBBY) return primary;
+
+        CompletableFuture<Transport.Response<B>> first = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(2);
+        AtomicReference<Throwable> lastFailure = new AtomicReference<>();
+        BiConsumer<Transport.Response<B>, Throwable> onCopy = (response, failure) -> {
+            if (failure == null) {
+                first.complete(response);
+                return;
+            }
+            lastFailure.set(failure);
+            if (outstanding.decrementAndGet() == 0) first.completeExceptionally(failure);
+        };
+        Runnable skipHedge = () -> {
+            if (outstanding.decrementAndGet() == 0 && !first.isDone()) first.completeExceptionally(lastFailure.get());
+        };
+
+        primary.whenComplete(onCopy);
+        try {
+            sdk.scheduler.schedule(() -> {
+                if (first.isDone() || !sdk.resilience.tryWithdraw()) {
+                    skipHedge.run();
+                    return;
+                }
+                event.retry();
+                settlement.sent(sendLimitedAsync(sdk, operation, request, reader, event)).whenComplete(onCopy);
+            }, hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            skipHedge.run();
+        }
+        return first;
+    }
+
+    private static <B> CompletableFuture<Transport.Response<B>> sendLimitedAsync(GameSDK sdk, Operation operation, Transport.Request request, Transport.BodyReader<B> reader, SdkCallEvent event) {
+        AdaptiveLimiter limiter = sdk.concurrencyLimiters.get(operation.service());
+        if (limiter == null) return sendStreamLimitedAsync(sdk, request, reader, event);
+
+        long queued = System.nanoTime();
+        CompletableFuture<Void> grant = limiter.acquire();
+        if (grant == null) return CompletableFuture.failedFuture(shed(operation));
+        return grant.thenCompose(ignored -> {
+            event.queueWait(queued);
+            int inFlight = limiter.inFlight();
+            long start = System.nanoTime();
+            CompletableFuture<Transport.Response<B>> sent;
+            try {
+                sent = sendStreamLimitedAsync(sdk, request, reader, event);
+            } catch (RuntimeException e) {
+                limiter.release(0, inFlight, false);
+                throw e;
+            }
+            return sent.whenComplete((response, failure) -> limiter.release(System.nanoTime() - start, inFlight,
+                    failure == null ? isOverloaded(response.statusCode()) : unwrap(failure) instanceof IOException));
+        });
+    }
+
+    private static <B> CompletableFuture<Transport.Response<B>> sendStreamLimitedAsync(GameSDK sdk, Transport.Request request, Transport.BodyReader<B> reader, SdkCallEvent event) {
+        StreamLimiter limiter = sdk.streamLimiters.forUri(request.uri());
+        if (limiter == null) return sdk.transport.send(request, reader);
+        long queued = System.nanoTime();
+        return limiter.submit(() -> {
+            event.queueWait(queued);
+            return sdk.transport.send(request, reader);
+        });
+    }
+
+    private static boolean isOverloaded(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    private static GameSDK.GeneralMethodFailedException shed(Operation operation) {
+        return new GameSDK.GeneralMethodFailedException("Too many calls waiting for the " + operation.service() + " service, call was shed");
+    }
+
+    private static CompletableFuture<Void> delay(GameSDK sdk, long nanos) {
+        CompletableFuture<Void> delay = new CompletableFuture<>();
+        try {
+            sdk.scheduler.schedule(() -> delay.complete(null), nanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            delay.completeExceptionally(new GameSDK.GeneralMethodFailedException("Could not schedule a retry: " + e.getMessage()));
+        }
+        return delay;
+    }
+
+    /**
+     * Counts the requests of a call that were not answered yet, for callers that must not send anything that could
+     * overtake them (see {@link LobbyLanes}).
+     */
+    private static final class Settlement {
+        private final CompletableFuture<Void> settled;
+        // The call itself counts as one until its outcome is decided
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+
+        private Settlement(CompletableFuture<Void> settled) {
+            this.settled = settled;
+        }
+
+        private <R> CompletableFuture<R> sent(CompletableFuture<R> request) {
+            if (settled == null) return request;
+            outstanding.incrementAndGet();
+            request.whenComplete((response, failure) -> release());
+            return request;
+        }
+
+        private void decided() {
+            if (settled != null) release();
+        }
+
+        private void release() {
+            if (outstanding.decrementAndGet() == 0) settled.complete(null);
+        }
+    }
+
+    /**
+     * Records a completed call in the metrics and, when enabled, as Flight Recorder event.
+     * @param failure what the call failed with, null when it succeeded
+     */
+    static void finish(GameSDK sdk, Operation operation, long start, SdkCallEvent event, int statusCode, Throwable failure) {
+        SdkMetrics.Outcome outcome = SdkMetrics.outcome(failure);
+        sdk.metrics.finish(operation, start, statusCode, outcome);
+        event.end(statusCode, outcome);
+    }
+
+    static RuntimeException mapFailure(Throwable failure) {
+        Throwable cause = unwrap(failure);
+        if (cause instanceof RuntimeException e) return e;
+        return new GameSDK.GeneralMethodFailedException(cause.getMessage());
+    }
+
+    static Throwable unwrap(Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Waits for an SDK future and rethrows its failure the way the blocking methods do.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw mapFailure(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package be.kdg.int5;
+
+/**
+ * The platform calls the SDK makes, used to label metrics and events.
+ */
+public enum Operation {
+    AUTHENTICATE(PlatformService.GAME_REGISTRY, true),
+    REGISTER_GAME(PlatformService.GAME_REGISTRY, true),
+    CREATE_LOBBY(PlatformService.GAMEPLAY, false),
+    PATCH_LOBBY(PlatformService.GAMEPLAY, true),
+    SUBMIT_COMPLETED_SESSION(PlatformService.STATISTICS, false),
+    UPDATE_ACHIEVEMENT_PROGRESS(PlatformService.STATISTICS, true);
+
+    private final PlatformService service;
+    private final boolean idempotent;
+
+    Operation(PlatformService service, boolean idempotent) {
+        this.service = service;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * @return the service the call goes to
+     */
+    public PlatformService service() {
+        return service;
+    }
+
+    /**
+     * @return whether sending the request twice has the same effect as sending it once, only those are retried after
+     * a failure the service may already have acted upon
+     */
+    boolean idempotent() {
+        return idempotent;
+    }
+}
@@ -0,0 +1,363 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.Transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log for the statistics writes ({@code submitCompletedSession} and {@code updateAchievementProgress}).
+ * <br><br>
+ * A write is appended to a memory-mapped segment file and the caller returns immediately, the append is the only work
+ * done on the calling thread. A background thread sends the records in order and retries failed ones with a backoff
+ * until the statistics service accepts them (at-least-once delivery), requests the service rejects as invalid
+ * (4xx other than 403, 408 and 429) are dropped. The position of the first unsent record is kept in a small
+ * memory-mapped ack file, so records that were not sent yet are picked up again after a restart. Segments are deleted
+ * once every record in them was sent.
+ * <br><br>
+ * Record layout: {@code int length, int crc32c, byte kind, short pathLength, path, int bodyLength, body}.
+ * The length is written last, a record whose length or checksum does not match marks the end of a segment.
+ * <br><br>
+ * <i>Note: Records are sent one at a time and in order by a single thread, which waits for the token and the response
+ * of each. A record that keeps failing holds back every record after it, and the throughput of the outbox is bounded
+ * by the latency of one statistics call.</i>
+ */
+final class Outbox implements AutoCloseable {
+    static final byte SUBMIT_COMPLETED_SESSION = 1;
+    static final byte UPDATE_ACHIEVEMENT_PROGRESS = 2;
+
+    static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MIN_RETRY_DELAY_MILLIS = 500;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private record Record(byte kind, String path, byte[] body) {
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private volatile int published;
+        private volatile boolean sealed;
+
+        private Segment(long id, Path path, int size) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private final GameSDK sdk;
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final FileChannel ackChannel;
+    private final MappedByteBuffer ackBuffer;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object appendLock = new Object();
+    private final Thread sender;
+
+    private Segment head;
+    private volatile boolean closed;
+
+    Outbox(GameSDK sdk, Path directory, int segmentSize) {
+        this.sdk = sdk;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            this.lockChannel = FileChannel.open(directory.resolve("outbox.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = lockChannel.tryLock();
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Outbox directory is already in use by another SDK instance: " + directory);
+            }
+            this.ackChannel = FileChannel.open(directory.resolve("outbox.ack"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.ackBuffer = ackChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            recover();
+        } catch (IOException e) {
+            throw new GameSDK.GeneralMethodFailedException("Could not open outbox: " + e.getMessage());
+        }
+
+        this.sender = new Thread(this::runSender, "bandit-sdk-outbox");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    boolean append(byte kind, String path, byte[] bodyBytes) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Short.BYTES + pathBytes.length + Integer.BYTES + bodyBytes.length;
+        if (pathBytes.length > Short.MAX_VALUE || RECORD_HEADER_SIZE + length > segmentSize) {
+            throw new GameSDK.GeneralMethodFailedException("Request is too large for the outbox");
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length)
+                .put(kind)
+                .putShort((short) pathBytes.length)
+                .put(pathBytes)
+                .putInt(bodyBytes.length)
+                .put(bodyBytes);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.array());
+
+        synchronized (appendLock) {
+            if (closed) throw new GameSDK.GeneralMethodFailedException("Outbox is closed");
+            if (head.published + RECORD_HEADER_SIZE + length > segmentSize) roll();
+
+            int position = head.published;
+            head.buffer.put(position + RECORD_HEADER_SIZE, payload.array());
+            head.buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+            head.buffer.putInt(position, length);
+            head.published = position + RECORD_HEADER_SIZE + length;
+        }
+        LockSupport.unpark(sender);
+        return true;
+    }
+
+    CompletableFuture<Boolean> appendAsync(byte kind, String path, byte[] body) {
+        try {
+            return CompletableFuture.completedFuture(append(kind, path, body));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Stops the sender, records that were not sent yet stay in the log and are sent after the next start.
+     */
+    @Override
+    public void close() {
+        synchronized (appendLock) {
+            if (closed) return;
+            closed = true;
+        }
+        sender.interrupt();
+        try {
+            sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            ackBuffer.force();
+            ackChannel.close();
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            // Everything that matters is already in the page cache of the mapped files
+        }
+    }
+
+    private void recover() throws IOException {
+        long ack = ackBuffer.getLong(0);
+        long ackSegment = ack >>> 32;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) continue;
+                long id = Long.parseLong(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(), 10);
+                if (id < ackSegment) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                Segment segment = new Segment(id, file, segmentSize);
+                segment.published = scan(segment);
+                segment.sealed = true;
+                segments.put(id, segment);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            head = openSegment(ackSegment);
+            writeAck(ackSegment, 0);
+        } else {
+            head = segments.lastEntry().getValue();
+            head.sealed = false;
+            if (segments.firstKey() != ackSegment) writeAck(segments.firstKey(), 0);
+        }
+    }
+
+    /**
+     * @return the end of the last intact record in the segment
+     */
+    private int scan(Segment segment) {
+        int position = 0;
+        CRC32C crc = new CRC32C();
+        while (position + RECORD_HEADER_SIZE <= segmentSize) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > segmentSize) break;
+            crc.reset();
+            crc.update(segment.buffer.slice(position + RECORD_HEADER_SIZE, length));
+            if ((int) crc.getValue() != segment.buffer.getInt(position + Integer.BYTES)) break;
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Segment segment = new Segment(id, directory.resolve(SEGMENT_PREFIX + String.format("%020d", id) + SEGMENT_SUFFIX), segmentSize);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void roll() {
+        try {
+            Segment next = openSegment(head.id + 1);
+            head.sealed = true;
+            head = next;
+        } catch (IOException e) {
+            throw new GameSDK.GeneralMethodFailedException("Could not create outbox segment: " + e.getMessage());
+        }
+    }
+
+    private void writeAck(long segmentId, int offset) {
+        ackBuffer.putLong(0, (segmentId << 32) | offset);
+    }
+
+    /**
+     * Keeps the sender alive whatever goes wrong, after a failure it starts over from the ack position once the
+     * longest retry delay passed, so the records that were not acknowledged yet are sent again.
+     */
+    private void runSender() {
+        while (!closed) {
+            try {
+                sendFromAck();
+                return;
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                try {
+                    Thread.sleep(MAX_RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sendFromAck() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        Segment current = first.getValue();
+        long ack = ackBuffer.getLong(0);
+        int offset = (ack >>> 32) == current.id ? (int) ack : 0;
+
+        while (!closed) {
+            boolean sealed = current.sealed;
+            int published = current.published;
+
+            if (offset < published) {
+                int length = current.buffer.getInt(offset);
+                Record record = read(current, offset + RECORD_HEADER_SIZE, length);
+                if (!deliver(record)) return;
+                offset += RECORD_HEADER_SIZE + length;
+                writeAck(current.id, offset);
+            } else if (sealed) {
+                Segment next = segments.higherEntry(current.id).getValue();
+                writeAck(next.id, 0);
+                delete(current);
+                current = next;
+                offset = 0;
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static Record read(Segment segment, int position, int length) {
+        ByteBuffer payload = segment.buffer.slice(position, length);
+        byte kind = payload.get();
+        byte[] path = new byte[payload.getShort()];
+        payload.get(path);
+        byte[] body = new byte[payload.getInt()];
+        payload.get(body);
+        return new Record(kind, new String(path, StandardCharsets.UTF_8), body);
+    }
+
+    /**
+     * @return false when the sender was stopped before the record could be delivered
+     */
+    private boolean deliver(Record record) {
+        long retryDelay = MIN_RETRY_DELAY_MILLIS;
+        Operation operation = record.kind() == SUBMIT_COMPLETED_SESSION ? Operation.SUBMIT_COMPLETED_SESSION : Operation.UPDATE_ACHIEVEMENT_PROGRESS;
+        SdkCallEvent event = new SdkCallEvent(operation);
+        RequestTemplate template = record.kind() == SUBMIT_COMPLETED_SESSION ? sdk.endpoints.submitCompletedSession : sdk.endpoints.updateAchievementProgress;
+        ModuleSupport.RequestFactory requests = null;
+        while (!closed) {
+            int status;
+            TokenManager.Token token = null;
+            long start = sdk.metrics.start(operation);
+            try {
+                if (requests == null) requests = template.prepare(template.uri(record.path()), record.body());
+                token = sdk.tokenManager.token();
+                Transport.Request request = requests.create(token);
+                event.request(request);
+                status = sdk.transport.sendBlocking(request, event.countResponse(Transport.BodyReader.discarding())).statusCode();
+            } catch (IOException | RuntimeException e) {
+                // Whatever the transport throws, the record stays in the log and is tried again
+                status = -1;
+            } catch (InterruptedException e) {
+                sdk.metrics.finish(operation, start, 0, SdkMetrics.Outcome.FAILED);
+                event.end(0, SdkMetrics.Outcome.FAILED);
+                return false;
+            }
+            SdkMetrics.Outcome outcome = status >= 200 && status < 300 ? SdkMetrics.Outcome.SUCCESS
+                    : status == 403 ? SdkMetrics.Outcome.AUTHENTICATION_FAILED
+                    : SdkMetrics.Outcome.FAILED;
+            sdk.metrics.finish(operation, start, Math.max(0, status), outcome);
+
+            boolean delivered = status >= 200 && status < 300
+                    || status >= 400 && status < 500 && status != 403 && status != 408 && status != 429;
+            if (delivered) {
+                event.end(Math.max(0, status), outcome);
+                return true;
+            }
+            event.retry();
+            // Also keeps a token store from handing the rejected token out again
+            if (status == 403 && token != null) sdk.tokenManager.rejected(token.value());
+
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            retryDelay = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelay * 2);
+        }
+        return false;
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.id);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // Left over segments below the ack position are removed on the next start
+        }
+    }
+}
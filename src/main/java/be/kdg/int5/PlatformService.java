@@ -0,0 +1,21 @@
+package be.kdg.int5;
+
+/**
+ * The platform services the SDK talks to, each with its own base url, circuit breaker and concurrency limit.
+ */
+public enum PlatformService {
+    GAME_REGISTRY("game registry"),
+    STATISTICS("statistics"),
+    GAMEPLAY("gameplay");
+
+    private final String displayName;
+
+    PlatformService(String displayName) {
+        this.displayName = displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -3,16 +3,12 @@ package be.kdg.int5;
 import be.kdg.int5.domain.Achievement;
 import be.kdg.int5.domain.GameContext;
 import be.kdg.int5.domain.Rule;
+import be.kdg.int5.transport.Transport;
 
-import java.io.IOException;
 import java.math.BigDecimal;
-import java.net.URI;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 class RegisterGameModule {
     protected static GameContext registerGame(
@@ -27,72 +23,81 @@ class RegisterGameModule {
             List<String> screenshots,
             List<Achievement> achievements
     ) {
-        String json = "{";
-        json += "\"title\": \""+Objects.requireNonNull(title)+"\"";
-        json += ", \"currentHost\": \""+Objects.requireNonNull(hostUrl)+"\"";
+        byte[] json = RequestBodies.registerGame(
+                sdk,
+                title,
+                hostUrl,
+                description,
+                price,
+                iconUrl,
+                backgroundUrl,
+                rules,
+                screenshots,
+                achievements
+        );
+        RegistrationCache.Delta delta = sdk.registrationCache != null ? sdk.registrationCache.delta(sdk, json) : null;
+        if (delta != null && delta.cached() != null) return cachedResponse(sdk, delta.cached(), achievements);
 
-        if(description != null) json += ", \"description\": \""+description+"\"";
-        if(price != null) json += ", \"currentPrice\": "+price.doubleValue();
-        if(iconUrl != null) json += ", \"iconUrl\": \""+iconUrl+"\"";
-        if(backgroundUrl != null) json += ", \"backgroundUrl\": \""+backgroundUrl+"\"";
+        byte[] body = delta != null ? delta.body() : json;
+        GameContext ctx = ModuleSupport.send(sdk, Operation.REGISTER_GAME, sdk.endpoints.registerGame.prepare(body), ResponseBodies.fields(sdk, 200, "uuid"), response -> registerGameResponse(sdk, response, achievements));
+        if (delta != null) sdk.registrationCache.store(delta, ctx);
+        return ctx;
+    }
 
-        boolean firstElement;
+    protected static CompletableFuture<GameContext> registerGameAsync(
+            GameSDK sdk,
+            String title,
+            String hostUrl,
+            String description,
+            BigDecimal price,
+            String iconUrl,
+            String backgroundUrl,
+            List<Rule> rules,
+            List<String> screenshots,
+            List<Achievement> achievements
+    ) {
+        byte[] json = RequestBodies.registerGame(
+                sdk,
+                title,
+                hostUrl,
+                description,
+                price,
+                iconUrl,
+                backgroundUrl,
+                rules,
+                screenshots,
+                achievements
+        );
+        RegistrationCache.Delta delta = sdk.registrationCache != null ? sdk.registrationCache.delta(sdk, json) : null;
+        if (delta != null && delta.cached() != null) return CompletableFuture.completedFuture(cachedResponse(sdk, delta.cached(), achievements));
 
-        if (rules != null) {
-            json += ", \"rules\": [";
-            firstElement = true;
-            for (Rule r : rules) {
-                if (firstElement) firstElement = false; else json += ",";
-                json += r.toJson();
-            }
-            json += "]";
-        }
+        byte[] body = delta != null ? delta.body() : json;
+        CompletableFuture<GameContext> registered = ModuleSupport.sendAsync(sdk, Operation.REGISTER_GAME, sdk.endpoints.registerGame.prepare(body), ResponseBodies.fields(sdk, 200, "uuid"), response -> registerGameResponse(sdk, response, achievements));
+        if (delta == null) return registered;
+        return registered.thenApply(ctx -> {
+            sdk.registrationCache.store(delta, ctx);
+            return ctx;
+        });
+    }
 
-        if (screenshots != null) {
-            json += ", \"screenshots\": [";
-            firstElement = true;
-            for (String screenshotUrl : screenshots) {
-                if (firstElement) firstElement = false; else json += ",";
-                json += "\""+screenshotUrl+"\"";
-            }
-            json += "]";
+    private static GameContext registerGameResponse(GameSDK sdk, Transport.Response<String[]> response, List<Achievement> achievements) {
+        if(response.statusCode() != 200) {
+            if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
+            throw new GameSDK.GeneralMethodFailedException("Non-OK response status code: "+response.statusCode());
         }
 
-        if (achievements != null) {
-            json += ", \"achievements\": [";
-            firstElement = true;
-            for (Achievement a : achievements) {
-                if (firstElement) firstElement = false; else json += ",";
-                json += a.toJson();
-            }
-            json += "]";
+        String uuid = response.body()[0];
+        if(uuid == null) {
+            throw new GameSDK.GeneralMethodFailedException("Got malformed response");
         }
 
-        json += "}";
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .method("PATCH", HttpRequest.BodyPublishers.ofString(json))
-                .setHeader("Authorization", "Bearer "+sdk.bearerToken())
-                .setHeader("Content-Type", "application/json")
-                .setHeader("Accept", "application/json")
-                .uri(URI.create(sdk.gameRegistryBaseUrl+"/registry/games"))
-                .build();
-        try {
-            HttpResponse<String> response = sdk.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if(response.statusCode() != 200) {
-                if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
-                throw new GameSDK.GeneralMethodFailedException("Non-OK response status code: "+response.statusCode());
-            }
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> jsonMap = sdk.objectMapper.readValue(response.body(), Map.class);
-            if(!jsonMap.containsKey("uuid")) {
-                throw new GameSDK.GeneralMethodFailedException("Got malformed response");
-            }
+        GameContext ctx = new GameContext(UUID.fromString(uuid));
+        if (achievements != null) sdk.rememberAchievements(ctx, achievements);
+        return ctx;
+    }
 
-            return new GameContext(UUID.fromString((String) jsonMap.get("uuid")));
-        }catch (IOException | InterruptedException e) {
-            throw new GameSDK.GeneralMethodFailedException(e.getMessage());
-        }
+    private static GameContext cachedResponse(GameSDK sdk, GameContext ctx, List<Achievement> achievements) {
+        if (achievements != null) sdk.rememberAchievements(ctx, achievements);
+        return ctx;
     }
 }
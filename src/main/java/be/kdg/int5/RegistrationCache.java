@@ -0,0 +1,140 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.GameContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * File backed cache of the last game registration, see {@link GameSDK.Builder#registrationCache(Path)}.
+ * <br><br>
+ * The file holds the SHA-256 of the registration body, of every top level field in it and the game id the registry
+ * answered with. A registration with the same body hash is not sent again, a changed one only sends the fields whose
+ * hash changed (plus the title and host, which the registry always needs). The registry replaces lists as a whole, so a
+ * changed rule or achievement sends the complete rules or achievements list.
+ * <br><br>
+ * The cache is only an optimization: a file that can not be read counts as empty and failing to write it is ignored.
+ * It is replaced through an atomic move, so replicas sharing the file never see half of it.
+ */
+final class RegistrationCache {
+    private static final String OWNER = "owner";
+    private static final String GAME_ID = "gameId";
+    private static final String CONTENT = "content";
+    private static final String FIELD_PREFIX = "field.";
+
+    /**
+     * A registration checked against the cache.
+     * @param cached the context to answer with right away, null when the registration must be sent
+     * @param body what to send, null when nothing changed
+     */
+    record Delta(String owner, String contentHash, Map<String, String> fieldHashes, GameContext cached, byte[] body) {
+    }
+
+    private final Path file;
+
+    RegistrationCache(Path file) {
+        this.file = file;
+    }
+
+    Delta delta(GameSDK sdk, byte[] json) {
+        // The registration belongs to the api key and registry it was made with
+        String owner = Digests.credentials(sdk);
+        String contentHash = Digests.sha256(json);
+
+        ObjectNode registration;
+        try {
+            registration = (ObjectNode) sdk.objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        Map<String, String> fieldHashes = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = registration.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            fieldHashes.put(field.getKey(), Digests.sha256(field.getValue().toString().getBytes(StandardCharsets.UTF_8)));
+        }
+
+        Properties previous = read();
+        if (previous == null || !owner.equals(previous.getProperty(OWNER))) {
+            return new Delta(owner, contentHash, fieldHashes, null, json);
+        }
+        if (contentHash.equals(previous.getProperty(CONTENT))) {
+            GameContext cached = new GameContext(UUID.fromString(previous.getProperty(GAME_ID)));
+            return new Delta(owner, contentHash, fieldHashes, cached, null);
+        }
+
+        ObjectNode changed = sdk.objectMapper.createObjectNode();
+        for (Map.Entry<String, String> field : fieldHashes.entrySet()) {
+            String name = field.getKey();
+            boolean required = name.equals("title") || name.equals("currentHost");
+            if (required || !field.getValue().equals(previous.getProperty(FIELD_PREFIX + name))) {
+                changed.set(name, registration.get(name));
+            }
+        }
+        try {
+            return new Delta(owner, contentHash, fieldHashes, null, sdk.objectMapper.writeValueAsBytes(changed));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Remembers a registration the registry accepted.
+     */
+    void store(Delta delta, GameContext ctx) {
+        Properties entry = new Properties();
+        entry.setProperty(OWNER, delta.owner());
+        entry.setProperty(GAME_ID, ctx.gameId().toString());
+        entry.setProperty(CONTENT, delta.contentHash());
+        delta.fieldHashes().forEach((name, hash) -> entry.setProperty(FIELD_PREFIX + name, hash));
+
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temporary)) {
+                    entry.store(out, "Game registration cache, delete to register the full game again");
+                }
+                try {
+                    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException ignored) {
+            // The next registration is sent in full again
+        }
+    }
+
+    private Properties read() {
+        Properties entry = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            entry.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            // Missing or damaged
+            return null;
+        }
+        if (entry.getProperty(GAME_ID) == null || entry.getProperty(CONTENT) == null) return null;
+        try {
+            UUID.fromString(entry.getProperty(GAME_ID));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,233 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.Achievement;
+import be.kdg.int5.domain.EndState;
+import be.kdg.int5.domain.GameContext;
+import be.kdg.int5.domain.LobbyContext;
+import be.kdg.int5.domain.Rule;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Request body encoders, one per endpoint.
+ * <br><br>
+ * Bodies are streamed through a Jackson {@link JsonGenerator} (which takes care of escaping) straight into a
+ * per-thread byte buffer that is reused between calls. The only allocation that scales with the size of the body
+ * is the final, exactly sized {@code byte[]} that is handed to the request's body publisher.
+ */
+final class RequestBodies {
+    private static final int RETAINED_BUFFER_LIMIT = 64 * 1024;
+
+    private static final ThreadLocal<ReusableOutput> BUFFER = ThreadLocal.withInitial(ReusableOutput::new);
+
+    private RequestBodies() {
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+    static byte[] authenticate(GameSDK sdk, String apiKey) {
+        return encode(sdk, json -> {
+            json.writeStartObject();
+            json.writeStringField("apiKey", apiKey);
+            json.writeEndObject();
+        });
+    }
+
+    static byte[] registerGame(
+            GameSDK sdk,
+            String title,
+            String hostUrl,
+            String description,
+            BigDecimal price,
+            String iconUrl,
+            String backgroundUrl,
+            List<Rule> rules,
+            List<String> screenshots,
+            List<Achievement> achievements
+    ) {
+        Objects.requireNonNull(title);
+        Objects.requireNonNull(hostUrl);
+        return encode(sdk, json -> {
+            json.writeStartObject();
+            json.writeStringField("title", title);
+            json.writeStringField("currentHost", hostUrl);
+
+            if (description != null) json.writeStringField("description", description);
+            if (price != null) json.writeNumberField("currentPrice", price.doubleValue());
+            if (iconUrl != null) json.writeStringField("iconUrl", iconUrl);
+            if (backgroundUrl != null) json.writeStringField("backgroundUrl", backgroundUrl);
+
+            if (rules != null) {
+                json.writeArrayFieldStart("rules");
+                for (Rule rule : rules) writeRule(json, rule);
+                json.writeEndArray();
+            }
+
+            if (screenshots != null) {
+                json.writeArrayFieldStart("screenshots");
+                for (String screenshotUrl : screenshots) json.writeString(screenshotUrl);
+                json.writeEndArray();
+            }
+
+            if (achievements != null) {
+                json.writeArrayFieldStart("achievements");
+                for (Achievement achievement : achievements) writeAchievement(json, achievement);
+                json.writeEndArray();
+            }
+            json.writeEndObject();
+        });
+    }
+
+    private static void writeRule(JsonGenerator json, Rule rule) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("stepNumber", rule.stepNumber());
+        json.writeStringField("rule", rule.rule());
+        json.writeEndObject();
+    }
+
+    private static void writeAchievement(JsonGenerator json, Achievement achievement) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("uniqueNumber", achievement.uniqueNumber());
+        json.writeStringField("title", achievement.title());
+        json.writeStringField("description", achievement.description());
+        json.writeNumberField("counterTotal", achievement.counterTotal());
+        json.writeEndObject();
+    }
+
+    static byte[] createLobby(GameSDK sdk, GameContext ctx, UUID ownerId, int maxPlayers) {
+        return encode(sdk, json -> {
+            json.writeStartObject();
+            json.writeStringField("gameId", ctx.gameId().toString());
+            json.writeStringField("ownerId", ownerId.toString());
+            json.writeNumberField("maxPlayers", maxPlayers);
+            json.writeEndObject();
+        });
+    }
+
+    static byte[] patchLobby(GameSDK sdk, LobbyContext lobby, UUID ownerId, Integer playerCount, Boolean closed) {
+        return encode(sdk, json -> {
+            json.writeStartObject();
+            json.writeStringField("lobbyId", lobby.lobbyId().toString());
+            if (ownerId != null) json.writeStringField("ownerId", ownerId.toString());
+            if (playerCount != null) json.writeNumberField("currentPlayerCount", playerCount);
+            if (closed != null) json.writeBooleanField("closed", closed);
+            json.writeEndObject();
+        });
+    }
+
+    static byte[] lobbyEvents(GameSDK sdk, Collection<UUID> lobbyIds) {
+        return encode(sdk, json -> {
+            json.writeStartObject();
+            json.writeArrayFieldStart("lobbyIds");
+            for (UUID lobbyId : lobbyIds) json.writeString(lobbyId.toString());
+            json.writeEndArray();
+            json.writeEndObject();
+        });
+    }
+
+    static byte[] submitCompletedSession(
+            GameSDK sdk,
+            LocalDateTime startTime,
+            LocalDateTime endTime,
+            EndState endState,
+            Integer turnsTaken,
+            Double avgSecondsPerTurn,
+            Integer playerScore,
+            Integer opponentScore,
+            Integer clicks,
+            String character,
+            Boolean wasFirstToGo
+    ) {
+        Objects.requireNonNull(startTime);
+        Objects.requireNonNull(endTime);
+        Objects.requireNonNull(endState);
+        return encode(sdk, json -> {
+            json.writeStartObject();
+            json.writeStringField("startTime", startTime.toString());
+            json.writeStringField("endTime", endTime.toString());
+            json.writeStringField("endState", endState.name());
+            writeNullableNumber(json, "turnsTaken", turnsTaken);
+            json.writeFieldName("avgSecondsPerTurn");
+            if (avgSecondsPerTurn == null) json.writeNull(); else json.writeNumber(avgSecondsPerTurn);
+            writeNullableNumber(json, "playerScore", playerScore);
+            writeNullableNumber(json, "opponentScore", opponentScore);
+            writeNullableNumber(json, "clicks", clicks);
+            json.writeFieldName("character");
+            if (character == null) json.writeNull(); else json.writeString(character);
+            json.writeFieldName("wasFirstToGo");
+            if (wasFirstToGo == null) json.writeNull(); else json.writeBoolean(wasFirstToGo);
+            json.writeEndObject();
+        });
+    }
+
+    static byte[] updateAchievementProgress(GameSDK sdk, Integer newProgressAmount) {
+        return encode(sdk, json -> {
+            json.writeStartObject();
+            writeNullableNumber(json, "newProgressAmount", newProgressAmount);
+            json.writeEndObject();
+        });
+    }
+
+    private static void writeNullableNumber(JsonGenerator json, String field, Integer value) throws IOException {
+        json.writeFieldName(field);
+        if (value == null) json.writeNull(); else json.writeNumber(value);
+    }
+
+    private static byte[] encode(GameSDK sdk, BodyWriter writer) {
+        ReusableOutput output = BUFFER.get();
+        output.reset();
+        try (JsonGenerator json = sdk.objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            throw new GameSDK.GeneralMethodFailedException(e.getMessage());
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Growable byte buffer that keeps its array between uses, unless a single huge body made it grow too large.
+     */
+    private static final class ReusableOutput extends OutputStream {
+        private byte[] buffer = new byte[1024];
+        private int count;
+
+        void reset() {
+            if (buffer.length > RETAINED_BUFFER_LIMIT) buffer = new byte[1024];
+            count = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(count + length);
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.Transport;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The parts of the requests to one endpoint that do not change between calls, resolved once per {@link GameSDK}.
+ * <br><br>
+ * The uri of an endpoint without path or query variables is parsed once, the headers are kept as an unmodifiable map
+ * that {@link Transport.Request} takes over as is. The map with the {@code Authorization} header is rebuilt only when
+ * the token changed, so a call with the current token builds nothing but the request itself.
+ * <br><br>
+ * With a {@link CompressionPolicy} the body of an endpoint that compresses its requests is compressed once, when the
+ * call is {@linkplain #prepare(URI, byte[]) prepared}. Every attempt of the call (a retry, a hedge or a redelivery by
+ * the {@link Outbox}) reuses the compressed bytes and only adds the headers of its token.
+ */
+final class RequestTemplate {
+    private record AuthorizedHeaders(TokenManager.Token token, Map<String, String> headers, Map<String, String> compressedHeaders) {
+    }
+
+    private final String method;
+    private final String baseUrl;
+    private final URI uri;
+    private final Compression compression;
+    private final Map<String, String> headers;
+    private final Map<String, String> compressedHeaders;
+    private volatile AuthorizedHeaders authorizedHeaders;
+
+    /**
+     * @param path the path of the endpoint, null when every call supplies its own through {@link #uri(String)}
+     * @param accept the media type of the response body, null when the body is not read
+     * @param compression the compression of the SDK, null for none
+     * @param compressesBody whether request bodies to the endpoint are compressed
+     */
+    RequestTemplate(String method, String baseUrl, String path, String accept, Compression compression, boolean compressesBody) {
+        this.method = method;
+        this.baseUrl = baseUrl;
+        this.uri = path != null ? URI.create(baseUrl + path) : null;
+        this.compression = compressesBody ? compression : null;
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", "application/json");
+        if (accept != null) headers.put("Accept", accept);
+        if (accept != null && compression != null && compression.compressedResponses()) {
+            headers.put("Accept-Encoding", Compression.ACCEPT_ENCODING);
+        }
+        this.headers = Collections.unmodifiableMap(headers);
+        this.compressedHeaders = this.compression != null ? withCompression(headers, this.compression) : null;
+    }
+
+    /**
+     * @param path the path and query, appended to the base url of the endpoint
+     */
+    URI uri(String path) {
+        return URI.create(baseUrl.concat(path));
+    }
+
+    /**
+     * @param token the token to authorize the request with, null for none
+     */
+    Transport.Request request(TokenManager.Token token, byte[] body) {
+        return prepare(uri, body).create(token);
+    }
+
+    ModuleSupport.RequestFactory prepare(byte[] body) {
+        return prepare(uri, body);
+    }
+
+    /**
+     * Compresses the body for all attempts of a call.
+     * @return the factory of the requests of the call, given the token of each attempt
+     */
+    ModuleSupport.RequestFactory prepare(URI uri, byte[] body) {
+        byte[] compressed = compression != null && body != null ? compression.compress(body) : null;
+        if (compressed != null) return token -> new Transport.Request(method, uri, headers(token, true), compressed);
+        return token -> new Transport.Request(method, uri, headers(token, false), body);
+    }
+
+    private Map<String, String> headers(TokenManager.Token token, boolean compressed) {
+        if (token == null) return compressed ? compressedHeaders : headers;
+        AuthorizedHeaders cached = authorizedHeaders;
+        if (cached == null || cached.token() != token) {
+            Map<String, String> authorized = authorized(token, headers);
+            cached = new AuthorizedHeaders(token, authorized, compressedHeaders != null ? withCompression(authorized, compression) : null);
+            authorizedHeaders = cached;
+        }
+        return compressed ? cached.compressedHeaders() : cached.headers();
+    }
+
+    private static Map<String, String> authorized(TokenManager.Token token, Map<String, String> headers) {
+        Map<String, String> authorized = new LinkedHashMap<>();
+        authorized.put("Authorization", token.authorization());
+        authorized.putAll(headers);
+        return Collections.unmodifiableMap(authorized);
+    }
+
+    private static Map<String, String> withCompression(Map<String, String> headers, Compression compression) {
+        Map<String, String> compressed = new LinkedHashMap<>(headers);
+        compressed.put("Content-Encoding", compression.contentEncoding());
+        return Collections.unmodifiableMap(compressed);
+    }
+}
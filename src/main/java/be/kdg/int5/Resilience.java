@@ -0,0 +1,138 @@
+package be.kdg.int5;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state behind the {@link ResiliencePolicy} of a {@link GameSDK}: the retry budget and a {@link CircuitBreaker}
+ * per service. {@link ModuleSupport} asks it after every attempt what to do next.
+ */
+final class Resilience {
+    /**
+     * What to do with the response (or failure) of an attempt.
+     */
+    enum Verdict {
+        /**
+         * Hand it to the caller.
+         */
+        DONE,
+        /**
+         * Renew the bearer token and send the call once more.
+         */
+        REAUTHENTICATE,
+        /**
+         * Wait {@link #backoffNanos} and send the call again.
+         */
+        RETRY
+    }
+
+    // The budget is kept in thousandths of a retry, capped so a long healthy period does not allow a retry storm
+    private static final long MILLIS_PER_RETRY = 1_000;
+    private static final long MAX_BUDGET = 10 * MILLIS_PER_RETRY;
+
+    private final ResiliencePolicy policy;
+    private final long depositPerCall;
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+    private final Map<PlatformService, CircuitBreaker> breakers = new EnumMap<>(PlatformService.class);
+
+    Resilience(ResiliencePolicy policy) {
+        this.policy = policy;
+        this.depositPerCall = Math.round(policy.retryBudgetRatio() * MILLIS_PER_RETRY);
+        for (PlatformService service : PlatformService.values()) {
+            breakers.put(service, new CircuitBreaker(policy.failureThreshold(), policy.openDuration().toNanos()));
+        }
+    }
+
+    ResiliencePolicy policy() {
+        return policy;
+    }
+
+    CircuitBreaker breaker(Operation operation) {
+        return breakers.get(operation.service());
+    }
+
+    /**
+     * @return the exception a call is rejected with while the breaker of its service is open
+     */
+    static GameSDK.GeneralMethodFailedException circuitOpen(Operation operation) {
+        return new GameSDK.GeneralMethodFailedException("The " + operation.service() + " service is failing, circuit breaker is open");
+    }
+
+    /**
+     * Called once per call, before its first attempt.
+     */
+    void callStarted() {
+        if (depositPerCall == 0 || policy.maxAttempts() == 1) return;
+        long current;
+        do {
+            current = budget.get();
+            if (current >= MAX_BUDGET) return;
+        } while (!budget.compareAndSet(current, Math.min(MAX_BUDGET, current + depositPerCall)));
+    }
+
+    /**
+     * @return whether the budget allows one more retry or hedge, which is then paid for
+     */
+    boolean tryWithdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < MILLIS_PER_RETRY) return false;
+        } while (!budget.compareAndSet(current, current - MILLIS_PER_RETRY));
+        return true;
+    }
+
+    /**
+     * Feeds the outcome of an attempt to the breaker and decides what happens next.
+     * @param attempt the attempt that just finished, starting at 1
+     * @param replayed whether the call was already replayed after a 403
+     * @param statusCode the response status code, 0 when the service could not be reached
+     * @param retryAfterSeconds the {@code Retry-After} of the response, -1 when there is none
+     */
+    Verdict afterAttempt(Operation operation, int attempt, boolean replayed, int statusCode, long retryAfterSeconds) {
+        CircuitBreaker breaker = breaker(operation);
+        boolean serviceFailed = statusCode == 0 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+        if (serviceFailed) breaker.onFailure();
+        else breaker.onSuccess();
+
+        if (statusCode == 403) {
+            return policy.reauthenticate() && !replayed ? Verdict.REAUTHENTICATE : Verdict.DONE;
+        }
+
+        // 429 and 503 mean the service did not act on the request, anything else may have had an effect
+        boolean retryable = statusCode == 429 || statusCode == 503 || serviceFailed && operation.idempotent();
+        if (!retryable || attempt >= policy.maxAttempts()) return Verdict.DONE;
+        if (retryAfterSeconds > 0 && Duration.ofSeconds(retryAfterSeconds).compareTo(policy.maxBackoff()) > 0) return Verdict.DONE;
+        return tryWithdraw() ? Verdict.RETRY : Verdict.DONE;
+    }
+
+    /**
+     * @param retry the retry about to be made, starting at 1
+     * @param retryAfterSeconds the {@code Retry-After} that {@link #afterAttempt} accepted, -1 when there is none
+     * @return how long to wait before it, full jitter but at least the {@code Retry-After}
+     */
+    long backoffNanos(int retry, long retryAfterSeconds) {
+        long cap = policy.maxBackoff().toNanos();
+        long ceiling = policy.initialBackoff().toNanos();
+        for (int i = 1; i < retry && ceiling < cap; i++) ceiling <<= 1;
+        ceiling = Math.min(cap, ceiling);
+        long jittered = ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.max(jittered, Math.max(0, retryAfterSeconds) * 1_000_000_000L);
+    }
+
+    /**
+     * @param value the {@code Retry-After} header, may be null
+     * @return the delay in seconds, -1 when the header is missing or not a number of seconds
+     */
+    static long retryAfterSeconds(String value) {
+        if (value == null) return -1;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
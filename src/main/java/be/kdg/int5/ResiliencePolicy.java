@@ -0,0 +1,193 @@
+package be.kdg.int5;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * How a {@link GameSDK} deals with failing platform calls, set through {@link GameSDK.Builder#resilience(ResiliencePolicy)}.
+ * <br><br>
+ * <ul>
+ *     <li><b>Retries</b>: connection failures and 500, 502 and 504 responses are retried for calls that are safe to repeat
+ *     (everything except creating a lobby and submitting a session), 429 and 503 responses for every call since the
+ *     service did not act on them. Retries back off exponentially with full jitter and honour {@code Retry-After}.
+ *     Every call adds a fraction of a retry to a shared budget and every retry spends a whole one, so a failing platform
+ *     sees at most that fraction more traffic instead of a multiple of it.</li>
+ *     <li><b>Re-authentication</b>: a 403 response renews the bearer token and replays the call once.</li>
+ *     <li><b>Hedging</b>: a lobby patch that has not been answered after the hedge delay is sent a second time and the
+ *     first response is used. The next patch of the lobby still waits for both, so patches never overtake each other.</li>
+ *     <li><b>Circuit breakers</b>: after a number of consecutive failures of the game registry, statistics or gameplay
+ *     service, calls to that service fail immediately for a while instead of tying up threads, then a single call
+ *     probes whether it recovered.</li>
+ * </ul>
+ * <i>Note: Calls that failed in the end still throw the same exceptions as before, a call that was rejected by an open
+ * circuit breaker throws a {@link GameSDK.GeneralMethodFailedException}.</i>
+ */
+public final class ResiliencePolicy {
+    private static final ResiliencePolicy DEFAULT = builder().build();
+    private static final ResiliencePolicy DISABLED = builder()
+            .maxAttempts(1)
+            .reauthenticate(false)
+            .circuitBreaker(0, Duration.ZERO)
+            .build();
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double retryBudgetRatio;
+    private final boolean reauthenticate;
+    private final Duration hedgeDelay;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private ResiliencePolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.retryBudgetRatio = builder.retryBudgetRatio;
+        this.reauthenticate = builder.reauthenticate;
+        this.hedgeDelay = builder.hedgeDelay;
+        this.failureThreshold = builder.failureThreshold;
+        this.openDuration = builder.openDuration;
+    }
+
+    /**
+     * @return the policy used unless another one is set: 3 attempts, 20% retry budget, re-authentication, no hedging
+     * and circuit breakers that open for 10 seconds after 5 consecutive failures
+     */
+    public static ResiliencePolicy defaults() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return a policy that sends every call exactly once, like the SDK did before it had one
+     */
+    public static ResiliencePolicy disabled() {
+        return DISABLED;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    Duration initialBackoff() {
+        return initialBackoff;
+    }
+
+    Duration maxBackoff() {
+        return maxBackoff;
+    }
+
+    double retryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    boolean reauthenticate() {
+        return reauthenticate;
+    }
+
+    /**
+     * @return the hedge delay, null when lobby patches are not hedged
+     */
+    Duration hedgeDelay() {
+        return hedgeDelay;
+    }
+
+    int failureThreshold() {
+        return failureThreshold;
+    }
+
+    Duration openDuration() {
+        return openDuration;
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+        private double retryBudgetRatio = 0.2;
+        private boolean reauthenticate = true;
+        private Duration hedgeDelay;
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxAttempts how many times a call is sent at most, including the first time (1 disables retries)
+         * @return the builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * The n-th retry waits a random time between 0 and {@code initialBackoff * 2^(n-1)}, but never longer than {@code maxBackoff}.
+         * A {@code Retry-After} longer than {@code maxBackoff} is not waited for, the call fails instead.
+         * @param initialBackoff the upper bound of the wait before the first retry
+         * @param maxBackoff the upper bound of the wait before any retry
+         * @return the builder
+         */
+        public Builder backoff(Duration initialBackoff, Duration maxBackoff) {
+            if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+                throw new IllegalArgumentException("backoff must satisfy 0 <= initialBackoff <= maxBackoff");
+            }
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @param ratio how many retries (and hedges) are allowed per call on average, e.g. 0.2 for at most 20% extra requests
+         * @return the builder
+         */
+        public Builder retryBudget(double ratio) {
+            if (!(ratio >= 0)) throw new IllegalArgumentException("ratio must not be negative");
+            this.retryBudgetRatio = ratio;
+            return this;
+        }
+
+        /**
+         * @param reauthenticate whether a 403 response renews the bearer token and replays the call once
+         * @return the builder
+         */
+        public Builder reauthenticate(boolean reauthenticate) {
+            this.reauthenticate = reauthenticate;
+            return this;
+        }
+
+        /**
+         * Sends a lobby patch a second time when it was not answered within the delay, pick a delay around the p95
+         * latency of the gameplay service (see {@link SdkMetrics}). Hedges are paid from the retry budget.
+         * @param delay how long to wait for the first response, null to not hedge (the default)
+         * @return the builder
+         */
+        public Builder hedgeLobbyPatches(Duration delay) {
+            if (delay != null && delay.isNegative()) throw new IllegalArgumentException("delay must not be negative");
+            this.hedgeDelay = delay;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold consecutive failures of a service after which its breaker opens, 0 disables the breakers
+         * @param openDuration how long an open breaker rejects calls before it lets a probe through
+         * @return the builder
+         */
+        public Builder circuitBreaker(int failureThreshold, Duration openDuration) {
+            if (failureThreshold < 0) throw new IllegalArgumentException("failureThreshold must not be negative");
+            this.failureThreshold = failureThreshold;
+            this.openDuration = Objects.requireNonNull(openDuration);
+            return this;
+        }
+
+        public ResiliencePolicy build() {
+            return new ResiliencePolicy(this);
+        }
+    }
+}
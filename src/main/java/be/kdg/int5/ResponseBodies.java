@@ -0,0 +1,118 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.Transport;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Response body handlers, the counterpart of {@link RequestBodies}.
+ * <br><br>
+ * Endpoints that only report success through their status code use {@link Transport.BodyReader#discarding()}.
+ * Endpoints that return a few fields of interest use {@link #fields}, which feeds the body to a non-blocking Jackson
+ * {@link JsonParser} chunk by chunk as it arrives and stops parsing once all requested top-level fields were seen.
+ * No String of the body and no Map of its content is ever built.
+ */
+final class ResponseBodies {
+    private ResponseBodies() {
+    }
+
+    /**
+     * @param expectedStatus the status code of a successful response, the body of any other response is discarded unread (the body is then {@code null})
+     * @param names the top-level fields to extract
+     * @return a reader whose body holds the text of every requested field in the same order, {@code null} for fields that were missing
+     */
+    static Transport.BodyReader<String[]> fields(GameSDK sdk, int expectedStatus, String... names) {
+        JsonFactory factory = sdk.objectMapper.getFactory();
+        Transport.BodyReader<String[]> discarding = Transport.BodyReader.discarding();
+        return (statusCode, headers) -> statusCode == expectedStatus
+                ? new FieldsConsumer(factory, names)
+                : discarding.open(statusCode, headers);
+    }
+
+    private static final class FieldsConsumer implements Transport.BodyConsumer<String[]> {
+        private final JsonFactory factory;
+        private final String[] names;
+        private final String[] values;
+
+        private JsonParser parser;
+        private int depth;
+        private int currentField = -1;
+        private int remaining;
+        private boolean done;
+
+        private FieldsConsumer(JsonFactory factory, String[] names) {
+            this.factory = factory;
+            this.names = names;
+            this.values = new String[names.length];
+            this.remaining = names.length;
+        }
+
+        @Override
+        public void accept(ByteBuffer chunk) throws IOException {
+            if (done) return;
+            if (parser == null) parser = factory.createNonBlockingByteBufferParser();
+            try {
+                ((ByteBufferFeeder) parser.getNonBlockingInputFeeder()).feedInput(chunk);
+                parse();
+            } catch (IOException e) {
+                // Malformed JSON, the caller sees the fields that were missing
+                done = true;
+            }
+        }
+
+        @Override
+        public String[] finish() {
+            if (done || parser == null) return values;
+            try {
+                parser.getNonBlockingInputFeeder().endOfInput();
+                parse();
+            } catch (IOException e) {
+                // Malformed JSON, the caller sees the fields that were missing
+            }
+            done = true;
+            return values;
+        }
+
+        /**
+         * Once everything was found the rest of the body is not parsed anymore.
+         */
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        private void parse() throws IOException {
+            JsonToken token;
+            while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                switch (token) {
+                    case START_OBJECT, START_ARRAY -> {
+                        depth++;
+                        currentField = -1;
+                    }
+                    case END_OBJECT, END_ARRAY -> depth--;
+                    case FIELD_NAME -> currentField = depth == 1 ? indexOf(parser.currentName()) : -1;
+                    default -> {
+                        if (depth == 1 && currentField >= 0) {
+                            if (values[currentField] == null) remaining--;
+                            values[currentField] = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                            currentField = -1;
+                            if (remaining == 0) done = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        private int indexOf(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package be.kdg.int5;
+
+import be.kdg.int5.transport.Transport;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flight Recorder event for every call the SDK makes to the platform, so SDK latency in a recording can be tied to
+ * GC pauses and thread activity.
+ * <br><br>
+ * Disabled by default, enable it for a recording with
+ * {@code -XX:StartFlightRecording:+be.kdg.int5.SdkCall#enabled=true} or through a .jfc settings file.
+ * While disabled every method returns without measuring anything.
+ */
+@Name(SdkCallEvent.NAME)
+@Label("SDK Call")
+@Category({"Game SDK"})
+@Description("A call from the game SDK to the platform")
+@Enabled(false)
+@StackTrace(false)
+final class SdkCallEvent extends Event {
+    static final String NAME = "be.kdg.int5.SdkCall";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Endpoint")
+    @Description("Method and path of the request")
+    String endpoint;
+
+    @Label("Status Code")
+    @Description("0 when no response was received")
+    int statusCode;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Queue Wait")
+    @Description("Time spent waiting for a free stream to the platform")
+    @Timespan
+    long queueWait;
+
+    @Label("Retries")
+    int retries;
+
+    SdkCallEvent(Operation operation) {
+        if (isEnabled()) this.operation = operation.name();
+        begin();
+    }
+
+    void request(Transport.Request request) {
+        if (!isEnabled()) return;
+        endpoint = request.method() + " " + request.uri().getRawPath();
+        requestBytes = request.body() == null ? 0 : request.body().length;
+    }
+
+    void queueWait(long startNanos) {
+        if (isEnabled()) queueWait += System.nanoTime() - startNanos;
+    }
+
+    void retry() {
+        retries++;
+    }
+
+    /**
+     * @return a reader that records the size of the response body, the reader itself when the event is disabled
+     */
+    <T> Transport.BodyReader<T> countResponse(Transport.BodyReader<T> reader) {
+        if (!isEnabled()) return reader;
+        return (status, headers) -> new CountingConsumer<>(reader.open(status, headers), contentLength(headers));
+    }
+
+    void end(int statusCode, SdkMetrics.Outcome outcome) {
+        end();
+        if (!shouldCommit()) return;
+        this.statusCode = statusCode;
+        this.outcome = outcome.name();
+        commit();
+    }
+
+    private static long contentLength(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Content-Length") || header.getValue().isEmpty()) continue;
+            try {
+                return Long.parseLong(header.getValue().get(0).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Falls back to counting the chunks when there is no Content-Length,
+     * which undercounts bodies the delegate stops reading early.
+     */
+    private final class CountingConsumer<T> implements Transport.BodyConsumer<T> {
+        private final Transport.BodyConsumer<T> delegate;
+        private final boolean countChunks;
+
+        private CountingConsumer(Transport.BodyConsumer<T> delegate, long contentLength) {
+            this.delegate = delegate;
+            this.countChunks = contentLength < 0;
+            responseBytes = Math.max(0, contentLength);
+        }
+
+        @Override
+        public void accept(ByteBuffer chunk) throws IOException {
+            if (countChunks) responseBytes += chunk.remaining();
+            delegate.accept(chunk);
+        }
+
+        @Override
+        public T finish() throws IOException {
+            return delegate.finish();
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+    }
+}
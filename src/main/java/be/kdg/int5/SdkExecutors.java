@@ -0,0 +1,51 @@
+package be.kdg.int5;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Background threads used by the SDK when the user does not supply their own.
+ * <br><br>
+ * All threads are daemon threads (virtual threads always are), so an SDK that is never closed does not keep the JVM alive.
+ */
+final class SdkExecutors {
+    private SdkExecutors() {
+    }
+
+    private static final class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+        private static ScheduledExecutorService createScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("bandit-sdk-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    private static final class VirtualThreadsHolder {
+        private static final ExecutorService VIRTUAL_THREADS = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("bandit-sdk-", 0).factory()
+        );
+    }
+
+    /**
+     * @return an executor that runs every task on a new virtual thread, shared by every SDK instance
+     */
+    static ExecutorService virtualThreads() {
+        return VirtualThreadsHolder.VIRTUAL_THREADS;
+    }
+
+    /**
+     * @return the scheduler shared by every SDK instance that was not given its own, created on first use
+     */
+    static ScheduledExecutorService sharedScheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+}
@@ -0,0 +1,153 @@
+package be.kdg.int5;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, outcome and status code statistics of the platform calls of a {@link GameSDK}, enabled through
+ * {@link GameSDK.Builder#metrics(boolean)} and read through {@link GameSDK#metrics()}.
+ * <br><br>
+ * Recording takes a few uncontended atomic increments and no locks, latencies go into a {@link LatencyHistogram} per
+ * operation. When metrics are disabled the SDK does not even read the clock.
+ */
+public final class SdkMetrics {
+    public enum Outcome {
+        SUCCESS,
+        AUTHENTICATION_FAILED,
+        FAILED
+    }
+
+    private static final SdkMetrics DISABLED = new SdkMetrics(false);
+
+    private static final class OperationMetrics {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder authenticationFailures = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    }
+
+    private final boolean enabled;
+    private final Map<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    private SdkMetrics(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            for (Operation operation : Operation.values()) operations.put(operation, new OperationMetrics());
+        }
+    }
+
+    static SdkMetrics create(boolean enabled) {
+        return enabled ? new SdkMetrics(true) : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param listener called for every completed call from now on, ignored when metrics are disabled
+     */
+    public void addListener(MetricsListener listener) {
+        if (enabled) listeners.add(listener);
+    }
+
+    public void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the statistics so far, empty when metrics are disabled
+     */
+    public MetricsSnapshot snapshot() {
+        Map<Operation, MetricsSnapshot.OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, enabled ? stats(operations.get(operation)) : emptyStats());
+        }
+        return new MetricsSnapshot(Collections.unmodifiableMap(stats));
+    }
+
+    /**
+     * @return the start time to pass to {@link #finish}, 0 when metrics are disabled
+     */
+    long start(Operation operation) {
+        if (!enabled) return 0;
+        operations.get(operation).inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param failure what a call failed with, null when it succeeded
+     */
+    static Outcome outcome(Throwable failure) {
+        if (failure == null) return Outcome.SUCCESS;
+        return failure instanceof GameSDK.AuthenticationFailedException ? Outcome.AUTHENTICATION_FAILED : Outcome.FAILED;
+    }
+
+    /**
+     * @param statusCode the response status code, 0 when there was no response
+     */
+    void finish(Operation operation, long startNanos, int statusCode, Outcome outcome) {
+        if (!enabled) return;
+        long duration = System.nanoTime() - startNanos;
+        OperationMetrics metrics = operations.get(operation);
+        metrics.inFlight.decrement();
+        metrics.latencies.record(duration);
+        metrics.totalNanos.add(duration);
+        metrics.maxNanos.accumulate(duration);
+        switch (outcome) {
+            case SUCCESS -> metrics.successes.increment();
+            case AUTHENTICATION_FAILED -> metrics.authenticationFailures.increment();
+            case FAILED -> metrics.failures.increment();
+        }
+        if (statusCode != 0) metrics.statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.onCall(operation, outcome, statusCode, duration);
+            } catch (RuntimeException e) {
+                // A broken listener must not break the call it is told about
+            }
+        }
+    }
+
+    private static MetricsSnapshot.OperationStats stats(OperationMetrics metrics) {
+        long successes = metrics.successes.sum();
+        long authenticationFailures = metrics.authenticationFailures.sum();
+        long failures = metrics.failures.sum();
+        long calls = successes + authenticationFailures + failures;
+
+        Map<Integer, Long> statusCodes = new TreeMap<>();
+        metrics.statusCodes.forEach((code, count) -> statusCodes.put(code, count.sum()));
+
+        return new MetricsSnapshot.OperationStats(
+                calls,
+                successes,
+                authenticationFailures,
+                failures,
+                Math.max(0, metrics.inFlight.sum()),
+                Collections.unmodifiableMap(statusCodes),
+                Duration.ofNanos(calls == 0 ? 0 : metrics.totalNanos.sum() / calls),
+                Duration.ofNanos(metrics.latencies.valueAt(0.5)),
+                Duration.ofNanos(metrics.latencies.valueAt(0.99)),
+                Duration.ofNanos(metrics.latencies.valueAt(0.999)),
+                Duration.ofNanos(metrics.maxNanos.get())
+        );
+    }
+
+    private static MetricsSnapshot.OperationStats emptyStats() {
+        return new MetricsSnapshot.OperationStats(0, 0, 0, 0, 0, Map.of(), Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+    }
+}
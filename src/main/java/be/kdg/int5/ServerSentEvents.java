@@ -0,0 +1,123 @@
+package be.kdg.int5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental parser of a {@code text/event-stream} body, fed with the chunks of the body as they arrive.
+ * <br><br>
+ * Follows the parsing rules of the HTML server-sent events specification: lines end in CR, LF or CRLF (also when the
+ * CR and LF arrive in different chunks), lines starting with a colon are comments (used as heartbeats), an event is
+ * dispatched on an empty line and the last event id carries over to the events after it. Lines are collected as bytes
+ * and decoded once complete, so a character split over two chunks is decoded correctly.
+ */
+final class ServerSentEvents {
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * @param lastEventId the id of the event, or of the last event before it that had one, null when there was none
+         * @param type the event type, {@code message} unless the event named one
+         */
+        void event(String lastEventId, String type, String data) throws IOException;
+
+        /**
+         * The server asked for the given reconnection delay.
+         */
+        default void retry(long millis) {
+        }
+    }
+
+    // A line this long is not an event of the platform, stop before it takes all memory
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+
+    private final Listener listener;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean afterCarriageReturn;
+    private boolean firstLine = true;
+
+    private String lastEventId;
+    private String type;
+    private final StringBuilder data = new StringBuilder();
+    private boolean hasData;
+
+    ServerSentEvents(Listener listener) {
+        this.listener = listener;
+    }
+
+    void accept(ByteBuffer chunk) throws IOException {
+        while (chunk.hasRemaining()) {
+            byte b = chunk.get();
+            if (afterCarriageReturn) {
+                afterCarriageReturn = false;
+                if (b == '\n') continue;
+            }
+            if (b == '\n' || b == '\r') {
+                afterCarriageReturn = b == '\r';
+                line();
+                lineLength = 0;
+            } else {
+                if (lineLength == line.length) {
+                    if (lineLength == MAX_LINE_LENGTH) throw new IOException("Event stream line exceeds " + MAX_LINE_LENGTH + " bytes");
+                    line = Arrays.copyOf(line, Math.min(MAX_LINE_LENGTH, line.length * 2));
+                }
+                line[lineLength++] = b;
+            }
+        }
+    }
+
+    private void line() throws IOException {
+        if (lineLength == 0) {
+            dispatch();
+            return;
+        }
+        String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+        if (firstLine) {
+            firstLine = false;
+            if (text.charAt(0) == '\uFEFF') text = text.substring(1);
+            if (text.isEmpty()) return;
+        }
+        if (text.charAt(0) == ':') return;
+
+        int colon = text.indexOf(':');
+        String field = colon < 0 ? text : text.substring(0, colon);
+        int valueStart = colon < 0 ? text.length() : colon + 1;
+        if (valueStart < text.length() && text.charAt(valueStart) == ' ') valueStart++;
+        String value = text.substring(valueStart);
+        switch (field) {
+            case "event" -> type = value;
+            case "data" -> {
+                if (hasData) data.append('\n');
+                data.append(value);
+                hasData = true;
+            }
+            case "id" -> {
+                if (value.indexOf('\0') < 0) lastEventId = value;
+            }
+            case "retry" -> {
+                if (!value.isEmpty() && value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                    try {
+                        listener.retry(Long.parseLong(value));
+                    } catch (NumberFormatException ignored) {
+                        // Too long to be meant seriously
+                    }
+                }
+            }
+            default -> {
+                // Unknown fields are ignored
+            }
+        }
+    }
+
+    private void dispatch() throws IOException {
+        String eventType = type != null && !type.isEmpty() ? type : "message";
+        type = null;
+        if (!hasData) return;
+        String eventData = data.toString();
+        data.setLength(0);
+        hasData = false;
+        listener.event(lastEventId, eventType, eventData);
+    }
+}
@@ -0,0 +1,364 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.SessionRecord;
+
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues completed sessions in memory and submits them from a background thread in batches, instead of one blocking
+ * request per session on the caller's thread.
+ * <br><br>
+ * Queued sessions are kept in a compact binary form outside of the heap (see {@link SessionRing}), about a hundred bytes
+ * each, so even a full queue at a tournament peak does not add to the work of the garbage collector.
+ * <br><br>
+ * A batch is sent once {@code maxBatchSize} sessions are queued or {@code maxDelay} has passed since the first one,
+ * whichever comes first. The sessions of a batch are sent concurrently and the next batch only starts once the
+ * previous one finished, so at most {@code maxBatchSize} requests are outstanding towards the statistics service.
+ * <br><br>
+ * Create one through {@link GameSDK#sessionBatcher()} and {@link #close()} it on shutdown so the queue is drained.
+ */
+public class SessionBatcher implements AutoCloseable {
+    /**
+     * What {@link #submit(SessionRecord)} does when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until there is room in the queue.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest queued session (its future fails) to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Fail the new session immediately.
+         */
+        FAIL_FAST
+    }
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final GameSDK sdk;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final SessionRing queue;
+    private final Thread flusher;
+    private volatile boolean flusherParked;
+
+    // Producers that wait for room (OverflowPolicy.BLOCK) wait here, without pinning virtual threads
+    private final ReentrantLock spaceLock = new ReentrantLock();
+    private final Condition spaceAvailable = spaceLock.newCondition();
+    private volatile int waitingForSpace;
+
+    // Guards accepted and finished, and closed against sessions being accepted while the batcher closes
+    private final Object progressLock = new Object();
+    private long accepted;
+    private long finished;
+    private volatile boolean flushRequested;
+    private volatile boolean closed;
+
+    private SessionBatcher(Builder builder) {
+        this.sdk = builder.sdk;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.overflowPolicy = builder.overflowPolicy;
+        this.queue = new SessionRing(builder.capacity);
+        this.flusher = new Thread(this::runFlusher, "bandit-sdk-session-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a session for submission.
+     * @param session the completed session
+     * @return a future that completes with {@code true} once the session was submitted, or exceptionally with a
+     * {@link GameSDK.GeneralMethodFailedException} (or {@link GameSDK.AuthenticationFailedException}) as cause when it
+     * failed, was dropped or rejected
+     * @throws IllegalStateException when the batcher was closed
+     */
+    public CompletableFuture<Boolean> submit(SessionRecord session) {
+        Objects.requireNonNull(session);
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        synchronized (progressLock) {
+            // Every session accepted here is counted before close() waits for the accepted sessions to finish
+            if (closed) throw new IllegalStateException("SessionBatcher is closed");
+            accepted++;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                if (!queue.offer(session, result)) {
+                    try {
+                        awaitSpace(session, result);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        reject(result, "Interrupted while waiting for room in the session queue");
+                    }
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(session, result)) {
+                    SessionRing.Entry dropped = queue.poll();
+                    if (dropped != null) reject(dropped.result(), "Session dropped, the session queue is full");
+                }
+            }
+            case FAIL_FAST -> {
+                if (!queue.offer(session, result)) reject(result, "Session rejected, the session queue is full");
+            }
+        }
+        // Pairs with the fence in poll(long): either the flusher sees the session or this thread sees it parking
+        VarHandle.fullFence();
+        if (flusherParked) LockSupport.unpark(flusher);
+        return result;
+    }
+
+    private void awaitSpace(SessionRecord session, CompletableFuture<Boolean> result) throws InterruptedException {
+        spaceLock.lock();
+        try {
+            waitingForSpace++;
+            // The timeout covers a flusher that freed a slot just before this thread was counted
+            while (!queue.offer(session, result)) spaceAvailable.await(10, TimeUnit.MILLISECONDS);
+        } finally {
+            waitingForSpace--;
+            spaceLock.unlock();
+        }
+    }
+
+    private void signalSpace() {
+        if (waitingForSpace == 0) return;
+        spaceLock.lock();
+        try {
+            spaceAvailable.signalAll();
+        } finally {
+            spaceLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of sessions waiting to be sent
+     */
+    public int queuedSessions() {
+        return queue.size();
+    }
+
+    /**
+     * Sends everything that is queued right away and waits until all sessions submitted before this call finished.
+     */
+    public void flush() {
+        long target;
+        synchronized (progressLock) {
+            target = accepted;
+        }
+        flushRequested = true;
+        // The flusher may be waiting for its batch to fill up
+        LockSupport.unpark(flusher);
+        boolean interrupted = false;
+        synchronized (progressLock) {
+            while (finished < target && flusher.isAlive()) {
+                try {
+                    progressLock.wait(100);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Stops accepting sessions, sends everything still queued and stops the background thread.
+     */
+    @Override
+    public void close() {
+        synchronized (progressLock) {
+            if (closed) return;
+            closed = true;
+        }
+        flush();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectQueued("SessionBatcher is closed");
+    }
+
+    private void runFlusher() {
+        List<SessionRing.Entry> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (true) {
+                SessionRing.Entry first = poll(TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS), false);
+                if (first == null) {
+                    if (closed && allFinished()) return;
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize && !flushRequested) {
+                    drainTo(batch);
+                    if (batch.size() >= maxBatchSize) break;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    SessionRing.Entry next = poll(remaining, true);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                drainTo(batch);
+                if (queue.size() == 0) flushRequested = false;
+
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (SessionRing.Entry entry : batch) reject(entry.result(), "Session batcher was interrupted");
+            rejectQueued("Session batcher was interrupted");
+        }
+    }
+
+    /**
+     * A closed batcher accepts no more sessions, once these finished there is nothing left that could still be queued.
+     */
+    private boolean allFinished() {
+        synchronized (progressLock) {
+            return finished >= accepted;
+        }
+    }
+
+    /**
+     * Waits for a session on the flusher thread, producers unpark it after queueing one.
+     * @param untilFlush whether to stop waiting when a flush is requested
+     */
+    private SessionRing.Entry poll(long timeoutNanos, boolean untilFlush) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            SessionRing.Entry entry = queue.poll();
+            if (entry != null) {
+                signalSpace();
+                return entry;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || (untilFlush && flushRequested)) return null;
+
+            flusherParked = true;
+            VarHandle.fullFence();
+            // Look once more after announcing the park, a producer that queued in between did not see the flag
+            entry = queue.poll();
+            if (entry == null) LockSupport.parkNanos(this, remaining);
+            flusherParked = false;
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (entry != null) {
+                signalSpace();
+                return entry;
+            }
+        }
+    }
+
+    private void drainTo(List<SessionRing.Entry> batch) {
+        SessionRing.Entry entry;
+        while (batch.size() < maxBatchSize && (entry = queue.poll()) != null) batch.add(entry);
+        signalSpace();
+    }
+
+    private void rejectQueued(String reason) {
+        SessionRing.Entry entry;
+        while ((entry = queue.poll()) != null) reject(entry.result(), reason);
+        signalSpace();
+    }
+
+    private void send(List<SessionRing.Entry> batch) {
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            SessionRing.Entry pending = batch.get(i);
+            CompletableFuture<Boolean> request;
+            try {
+                request = SubmitCompletedSessionModule.submitCompletedSessionAsync(sdk, pending.session());
+            } catch (RuntimeException e) {
+                request = CompletableFuture.failedFuture(e);
+            }
+            requests[i] = request.whenComplete((submitted, failure) -> {
+                if (failure != null) pending.result().completeExceptionally(ModuleSupport.mapFailure(failure));
+                else pending.result().complete(submitted);
+                markFinished();
+            });
+        }
+        // Waits for the whole batch, this is what bounds the number of outstanding requests
+        CompletableFuture.allOf(requests).exceptionally(failure -> null).join();
+    }
+
+    private void reject(CompletableFuture<Boolean> result, String reason) {
+        result.completeExceptionally(new GameSDK.GeneralMethodFailedException(reason));
+        markFinished();
+    }
+
+    private void markFinished() {
+        synchronized (progressLock) {
+            finished++;
+            progressLock.notifyAll();
+        }
+    }
+
+
+    public static class Builder {
+        private final GameSDK sdk;
+        private int maxBatchSize = 50;
+        private Duration maxDelay = Duration.ofMillis(200);
+        private int capacity = 10_000;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        Builder(GameSDK sdk) {
+            this.sdk = sdk;
+        }
+
+        /**
+         * @param maxBatchSize the most sessions sent together (and therefore the most concurrent submit requests)
+         * @return the builder
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be at least 1");
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param maxDelay how long a queued session may wait for its batch to fill up
+         * @return the builder
+         */
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = Objects.requireNonNull(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param capacity how many sessions can be queued before the {@link OverflowPolicy} applies,
+         * each takes 96 bytes of direct memory that is reserved up front
+         * @return the builder
+         */
+        public Builder capacity(int capacity) {
+            if (capacity < 1 || capacity > SessionRing.MAX_CAPACITY) {
+                throw new IllegalArgumentException("capacity must be between 1 and " + SessionRing.MAX_CAPACITY);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+            return this;
+        }
+
+        public SessionBatcher build() {
+            return new SessionBatcher(this);
+        }
+    }
+}
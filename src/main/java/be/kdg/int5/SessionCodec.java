@@ -0,0 +1,158 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.EndState;
+import be.kdg.int5.domain.GameContext;
+import be.kdg.int5.domain.SessionRecord;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed size binary encoding of a {@link SessionRecord}, used by the {@link SessionRing} of a {@link SessionBatcher}.
+ * <br><br>
+ * Every optional value is stored as a primitive with a bit in a presence bitmap, timestamps as epoch seconds and nanos
+ * (the {@link LocalDateTime} read as UTC, which round-trips exactly), the end state as its ordinal and the character as
+ * a code into a table of the character names seen so far. A game has only a handful of characters, so the table stays small.
+ * It is bounded all the same: once it is full, further names are not stored in the slot but kept on the heap by the
+ * caller, see {@link #encode}.
+ */
+final class SessionCodec {
+    static final int SIZE = 88;
+
+    private static final int GAME_ID = 0;
+    private static final int PLAYER_ID = 16;
+    private static final int START_SECONDS = 32;
+    private static final int END_SECONDS = 40;
+    private static final int START_NANOS = 48;
+    private static final int END_NANOS = 52;
+    private static final int AVG_SECONDS_PER_TURN = 56;
+    private static final int TURNS_TAKEN = 64;
+    private static final int PLAYER_SCORE = 68;
+    private static final int OPPONENT_SCORE = 72;
+    private static final int CLICKS = 76;
+    private static final int CHARACTER = 80;
+    private static final int END_STATE = 84;
+    private static final int PRESENT = 85;
+    private static final int WAS_FIRST_TO_GO = 86;
+
+    private static final int HAS_TURNS_TAKEN = 1;
+    private static final int HAS_AVG_SECONDS_PER_TURN = 1 << 1;
+    private static final int HAS_PLAYER_SCORE = 1 << 2;
+    private static final int HAS_OPPONENT_SCORE = 1 << 3;
+    private static final int HAS_CLICKS = 1 << 4;
+    private static final int HAS_CHARACTER = 1 << 5;
+    private static final int HAS_WAS_FIRST_TO_GO = 1 << 6;
+
+    private static final EndState[] END_STATES = EndState.values();
+    static final int MAX_CHARACTERS = 256;
+    // The code of a character that did not fit in the table
+    private static final int OUT_OF_LINE = -1;
+
+    private final Map<String, Integer> characterCodes = new ConcurrentHashMap<>();
+    // Guarded by this for writes, replaced as a whole so readers need no lock
+    private volatile String[] characters = new String[0];
+
+    /**
+     * @return whether the character of the session is not in the encoding, the caller then passes it to {@link #decode} itself
+     */
+    boolean encode(SessionRecord session, ByteBuffer buffer, int offset) {
+        putUuid(buffer, offset + GAME_ID, session.gameContext().gameId());
+        putUuid(buffer, offset + PLAYER_ID, session.playerId());
+        buffer.putLong(offset + START_SECONDS, session.startTime().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(offset + START_NANOS, session.startTime().getNano());
+        buffer.putLong(offset + END_SECONDS, session.endTime().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(offset + END_NANOS, session.endTime().getNano());
+        buffer.put(offset + END_STATE, (byte) session.endState().ordinal());
+
+        int present = 0;
+        if (session.turnsTaken() != null) {
+            present |= HAS_TURNS_TAKEN;
+            buffer.putInt(offset + TURNS_TAKEN, session.turnsTaken());
+        }
+        if (session.avgSecondsPerTurn() != null) {
+            present |= HAS_AVG_SECONDS_PER_TURN;
+            buffer.putDouble(offset + AVG_SECONDS_PER_TURN, session.avgSecondsPerTurn());
+        }
+        if (session.playerScore() != null) {
+            present |= HAS_PLAYER_SCORE;
+            buffer.putInt(offset + PLAYER_SCORE, session.playerScore());
+        }
+        if (session.opponentScore() != null) {
+            present |= HAS_OPPONENT_SCORE;
+            buffer.putInt(offset + OPPONENT_SCORE, session.opponentScore());
+        }
+        if (session.clicks() != null) {
+            present |= HAS_CLICKS;
+            buffer.putInt(offset + CLICKS, session.clicks());
+        }
+        int characterCode = 0;
+        if (session.character() != null) {
+            present |= HAS_CHARACTER;
+            characterCode = characterCode(session.character());
+            buffer.putInt(offset + CHARACTER, characterCode);
+        }
+        if (session.wasFirstToGo() != null) {
+            present |= HAS_WAS_FIRST_TO_GO;
+            buffer.put(offset + WAS_FIRST_TO_GO, (byte) (session.wasFirstToGo() ? 1 : 0));
+        }
+        buffer.put(offset + PRESENT, (byte) present);
+        return characterCode == OUT_OF_LINE;
+    }
+
+    /**
+     * @param outOfLineCharacter the character when {@link #encode} reported it is not in the encoding, otherwise ignored
+     */
+    SessionRecord decode(ByteBuffer buffer, int offset, String outOfLineCharacter) {
+        int present = buffer.get(offset + PRESENT);
+        String character = null;
+        if ((present & HAS_CHARACTER) != 0) {
+            int code = buffer.getInt(offset + CHARACTER);
+            character = code == OUT_OF_LINE ? outOfLineCharacter : characters[code];
+        }
+        return new SessionRecord(
+                new GameContext(getUuid(buffer, offset + GAME_ID)),
+                getUuid(buffer, offset + PLAYER_ID),
+                LocalDateTime.ofEpochSecond(buffer.getLong(offset + START_SECONDS), buffer.getInt(offset + START_NANOS), ZoneOffset.UTC),
+                LocalDateTime.ofEpochSecond(buffer.getLong(offset + END_SECONDS), buffer.getInt(offset + END_NANOS), ZoneOffset.UTC),
+                END_STATES[buffer.get(offset + END_STATE)],
+                (present & HAS_TURNS_TAKEN) != 0 ? buffer.getInt(offset + TURNS_TAKEN) : null,
+                (present & HAS_AVG_SECONDS_PER_TURN) != 0 ? buffer.getDouble(offset + AVG_SECONDS_PER_TURN) : null,
+                (present & HAS_PLAYER_SCORE) != 0 ? buffer.getInt(offset + PLAYER_SCORE) : null,
+                (present & HAS_OPPONENT_SCORE) != 0 ? buffer.getInt(offset + OPPONENT_SCORE) : null,
+                (present & HAS_CLICKS) != 0 ? buffer.getInt(offset + CLICKS) : null,
+                character,
+                (present & HAS_WAS_FIRST_TO_GO) != 0 ? buffer.get(offset + WAS_FIRST_TO_GO) != 0 : null
+        );
+    }
+
+    private int characterCode(String character) {
+        Integer code = characterCodes.get(character);
+        if (code != null) return code;
+        if (characters.length == MAX_CHARACTERS) return OUT_OF_LINE;
+        synchronized (this) {
+            code = characterCodes.get(character);
+            if (code != null) return code;
+            if (characters.length == MAX_CHARACTERS) return OUT_OF_LINE;
+            String[] grown = Arrays.copyOf(characters, characters.length + 1);
+            grown[characters.length] = character;
+            // Publish the name before its code, a decoder can only see codes of names it can look up
+            characters = grown;
+            characterCodes.put(character, grown.length - 1);
+            return grown.length - 1;
+        }
+    }
+
+    private static void putUuid(ByteBuffer buffer, int offset, UUID uuid) {
+        buffer.putLong(offset, uuid.getMostSignificantBits());
+        buffer.putLong(offset + Long.BYTES, uuid.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer buffer, int offset) {
+        return new UUID(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES));
+    }
+}
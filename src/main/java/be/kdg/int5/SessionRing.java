@@ -0,0 +1,110 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.SessionRecord;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded multi-producer, multi-consumer queue of sessions in off-heap memory, the queue of a {@link SessionBatcher}.
+ * <br><br>
+ * Sessions are stored {@link SessionCodec encoded} in fixed size slots of a direct buffer, so a full queue costs the
+ * garbage collector nothing but the futures of the callers. Every slot starts with a sequence number (the algorithm of
+ * Dmitry Vyukov's bounded queue): a producer claims the slot at the tail with a CAS, writes the session and then
+ * publishes it by advancing the sequence, a consumer claims the slot at the head the same way and hands the slot back
+ * by advancing the sequence a lap further. Neither side ever takes a lock.
+ * <br><br>
+ * <i>Note: A character name that does not fit in the table of the codec is kept next to the future of its slot.</i>
+ */
+final class SessionRing {
+    record Entry(SessionRecord session, CompletableFuture<Boolean> result) {
+    }
+
+    private static final VarHandle SEQUENCE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int SLOT_SIZE = Long.BYTES + ((SessionCodec.SIZE + Long.BYTES - 1) & -Long.BYTES);
+    static final int MAX_CAPACITY = (Integer.MAX_VALUE - Long.BYTES) / SLOT_SIZE;
+
+    private final int capacity;
+    private final ByteBuffer slots;
+    private final SessionCodec codec = new SessionCodec();
+    // The futures of the sessions, indexed like the slots and published by the same sequence
+    private final CompletableFuture<?>[] results;
+    private final String[] outOfLineCharacters;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    SessionRing(int capacity) {
+        this.capacity = capacity;
+        // The sequences are read and written atomically, which needs them aligned in native memory
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE + Long.BYTES - 1).alignedSlice(Long.BYTES).order(ByteOrder.nativeOrder());
+        this.results = new CompletableFuture<?>[capacity];
+        this.outOfLineCharacters = new String[capacity];
+        for (int i = 0; i < capacity; i++) SEQUENCE.setRelease(slots, i * SLOT_SIZE, (long) i);
+    }
+
+    /**
+     * @return false when the ring is full
+     */
+    boolean offer(SessionRecord session, CompletableFuture<Boolean> result) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position % capacity) * SLOT_SIZE;
+            long difference = (long) SEQUENCE.getAcquire(slots, slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    int index = slot / SLOT_SIZE;
+                    if (codec.encode(session, slots, slot + Long.BYTES)) outOfLineCharacters[index] = session.character();
+                    results[index] = result;
+                    SEQUENCE.setRelease(slots, slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds the session of the previous lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return the oldest session, null when the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    Entry poll() {
+        long position = head.get();
+        while (true) {
+            int slot = (int) (position % capacity) * SLOT_SIZE;
+            long difference = (long) SEQUENCE.getAcquire(slots, slot) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    int index = slot / SLOT_SIZE;
+                    SessionRecord session = codec.decode(slots, slot + Long.BYTES, outOfLineCharacters[index]);
+                    outOfLineCharacters[index] = null;
+                    CompletableFuture<Boolean> result = (CompletableFuture<Boolean>) results[index];
+                    results[index] = null;
+                    SEQUENCE.setRelease(slots, slot, position + capacity);
+                    return new Entry(session, result);
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                // Empty, or the producer of the slot has not finished writing it yet
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * @return the number of queued sessions, including the ones that are still being written
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+}
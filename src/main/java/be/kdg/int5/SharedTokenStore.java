@@ -0,0 +1,40 @@
+package be.kdg.int5;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * The in-JVM {@link TokenStore}, see {@link TokenStore#shared()}.
+ */
+final class SharedTokenStore implements TokenStore {
+    static final SharedTokenStore INSTANCE = new SharedTokenStore();
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    private static final class Slot {
+        // A lock instead of synchronized, which would pin the virtual thread to its carrier while authenticating
+        private final ReentrantLock lock = new ReentrantLock();
+        // Guarded by lock
+        private StoredToken token;
+    }
+
+    private SharedTokenStore() {
+    }
+
+    @Override
+    public StoredToken obtain(String key, Predicate<StoredToken> usable, Callable<StoredToken> authenticate) throws Exception {
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        // Callers of the same key wait for the one that is authenticating and then take its token
+        slot.lock.lock();
+        try {
+            if (slot.token != null && usable.test(slot.token)) return slot.token;
+            slot.token = authenticate.call();
+            return slot.token;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+}
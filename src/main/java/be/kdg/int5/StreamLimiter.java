@@ -0,0 +1,91 @@
+package be.kdg.int5;
+
+import java.net.URI;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of requests that are in flight to a single host at the same time.
+ * <br><br>
+ * Over HTTP/2 every in-flight request is a stream on a shared connection, so this is the SDK side limit on concurrent
+ * streams. Blocking callers wait for a permit, asynchronous requests are queued and sent once a permit frees up so
+ * no thread is ever parked for them.
+ */
+final class StreamLimiter {
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    private StreamLimiter(int maxConcurrentStreams) {
+        this.permits = new Semaphore(maxConcurrentStreams);
+    }
+
+    /**
+     * One limiter per scheme and authority, so the registry, statistics and gameplay hosts are limited independently.
+     */
+    static final class PerHost {
+        private final int maxConcurrentStreams;
+        private final ConcurrentHashMap<String, StreamLimiter> limiters = new ConcurrentHashMap<>();
+
+        /**
+         * @param maxConcurrentStreams the limit per host, 0 or less for no limit
+         */
+        PerHost(int maxConcurrentStreams) {
+            this.maxConcurrentStreams = maxConcurrentStreams;
+        }
+
+        /**
+         * @return the limiter for the host of the uri, or null when requests are not limited
+         */
+        StreamLimiter forUri(URI uri) {
+            if (maxConcurrentStreams <= 0) return null;
+            return limiters.computeIfAbsent(uri.getScheme() + "://" + uri.getRawAuthority(), host -> new StreamLimiter(maxConcurrentStreams));
+        }
+    }
+
+    void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    void release() {
+        permits.release();
+        drain();
+    }
+
+    /**
+     * Starts the request as soon as a permit is available, the permit is released when the returned future completes.
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        waiting.add(() -> {
+            CompletableFuture<T> sent;
+            try {
+                sent = request.get();
+            } catch (RuntimeException e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+            sent.whenComplete((value, failure) -> {
+                release();
+                if (failure == null) result.complete(value);
+                else result.completeExceptionally(failure);
+            });
+        });
+        drain();
+        return result;
+    }
+
+    private void drain() {
+        // Whoever adds a request or frees a permit drains, so a request can never be left waiting next to a free permit
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+            } else {
+                next.run();
+            }
+        }
+    }
+}
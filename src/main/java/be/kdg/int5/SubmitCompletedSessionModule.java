@@ -2,14 +2,13 @@ package be.kdg.int5;
 
 import be.kdg.int5.domain.EndState;
 import be.kdg.int5.domain.GameContext;
+import be.kdg.int5.domain.SessionRecord;
+import be.kdg.int5.transport.Transport;
 
-import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.LocalDateTime;
-import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 class SubmitCompletedSessionModule {
     protected static boolean submitCompletedSession(
@@ -27,48 +26,84 @@ class SubmitCompletedSessionModule {
             String character,
             Boolean wasFirstToGo
     ) {
-        String json = """
-            {
-                "startTime": "%s",
-                "endTime": "%s",
-                "endState": "%s",
-                "turnsTaken": "%s",
-                "avgSecondsPerTurn": "%s",
-                "playerScore": "%s",
-                "opponentScore": "%s",
-                "clicks": "%s",
-                "character": "%s",
-                "wasFirstToGo": "%s"
-            }
-            """
-            .formatted(
-                    Objects.requireNonNull(startTime.toString()),
-                    Objects.requireNonNull(endTime.toString()),
-                    Objects.requireNonNull(endState),
-                    turnsTaken,
-                    avgSecondsPerTurn,
-                    playerScore,
-                    opponentScore,
-                    clicks,
-                    character,
-                    wasFirstToGo
-            );
+        String path = Endpoints.submitCompletedSessionPath(gameContext, playerId);
+        byte[] json = RequestBodies.submitCompletedSession(
+                sdk,
+                startTime,
+                endTime,
+                endState,
+                turnsTaken,
+                avgSecondsPerTurn,
+                playerScore,
+                opponentScore,
+                clicks,
+                character,
+                wasFirstToGo
+        );
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .method("POST", HttpRequest.BodyPublishers.ofString(json))
-                .setHeader("Authorization", "Bearer "+sdk.bearerToken())
-                .setHeader("Content-Type", "application/json")
-                .uri(URI.create(sdk.statisticsBaseUrl+"/statistics/submit?playerId=" + playerId + "&gameId=" + gameContext.gameId()))
-                .build();
-        try {
-            HttpResponse<String> response = sdk.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if(response.statusCode() != 200) {
-                if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
-                throw new GameSDK.GeneralMethodFailedException("Something went wrong with the request: "+response.statusCode());
-            }
-            return true;
-        }catch (IOException | InterruptedException e) {
-            throw new GameSDK.GeneralMethodFailedException(e.getMessage());
+        if (sdk.outbox != null) return sdk.outbox.append(Outbox.SUBMIT_COMPLETED_SESSION, path, json);
+        URI uri = sdk.endpoints.submitCompletedSession.uri(path);
+        return ModuleSupport.send(sdk, Operation.SUBMIT_COMPLETED_SESSION, sdk.endpoints.submitCompletedSession.prepare(uri, json), Transport.BodyReader.discarding(), SubmitCompletedSessionModule::submitCompletedSessionResponse);
+    }
+
+    protected static CompletableFuture<Boolean> submitCompletedSessionAsync(
+            GameSDK sdk,
+            GameContext gameContext,
+            UUID playerId,
+            LocalDateTime startTime,
+            LocalDateTime endTime,
+            EndState endState,
+            Integer turnsTaken,
+            Double avgSecondsPerTurn,
+            Integer playerScore,
+            Integer opponentScore,
+            Integer clicks,
+            String character,
+            Boolean wasFirstToGo
+    ) {
+        String path = Endpoints.submitCompletedSessionPath(gameContext, playerId);
+        byte[] json = RequestBodies.submitCompletedSession(
+                sdk,
+                startTime,
+                endTime,
+                endState,
+                turnsTaken,
+                avgSecondsPerTurn,
+                playerScore,
+                opponentScore,
+                clicks,
+                character,
+                wasFirstToGo
+        );
+
+        if (sdk.outbox != null) return sdk.outbox.appendAsync(Outbox.SUBMIT_COMPLETED_SESSION, path, json);
+        URI uri = sdk.endpoints.submitCompletedSession.uri(path);
+        return ModuleSupport.sendAsync(sdk, Operation.SUBMIT_COMPLETED_SESSION, sdk.endpoints.submitCompletedSession.prepare(uri, json), Transport.BodyReader.discarding(), SubmitCompletedSessionModule::submitCompletedSessionResponse);
+    }
+
+    protected static CompletableFuture<Boolean> submitCompletedSessionAsync(GameSDK sdk, SessionRecord session) {
+        return submitCompletedSessionAsync(
+                sdk,
+                session.gameContext(),
+                session.playerId(),
+                session.startTime(),
+                session.endTime(),
+                session.endState(),
+                session.turnsTaken(),
+                session.avgSecondsPerTurn(),
+                session.playerScore(),
+                session.opponentScore(),
+                session.clicks(),
+                session.character(),
+                session.wasFirstToGo()
+        );
+    }
+
+    private static Boolean submitCompletedSessionResponse(Transport.Response<Void> response) {
+        if(response.statusCode() != 200) {
+            if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
+            throw new GameSDK.GeneralMethodFailedException("Something went wrong with the request: "+response.statusCode());
         }
+        return true;
     }
 }
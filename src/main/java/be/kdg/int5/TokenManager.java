@@ -0,0 +1,238 @@
+package be.kdg.int5;
+
+import java.lang.ref.WeakReference;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Owns the bearer token of a {@link GameSDK}.
+ * <br><br>
+ * The current token is an immutable {@link Token} published through a volatile field, so reading a valid token
+ * takes no lock and allocates nothing. At most one authentication request is in flight at any time: concurrent
+ * callers that find the token expired all wait on the same refresh. Every token schedules its own replacement
+ * {@code refreshAhead} before it expires, so under normal operation no caller ever waits for authentication.
+ */
+final class TokenManager {
+    private static final long MIN_RETRY_DELAY_MILLIS = 1_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    /**
+     * A bearer token with what every request needs of it built once: the {@code Authorization} header value and a
+     * completed stage for asynchronous callers. Replacing the token swaps both at once.
+     */
+    static final class Token {
+        private final String value;
+        private final long expiresAtMillis;
+        private final String authorization;
+        private final CompletionStage<Token> completed;
+
+        Token(String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+            this.authorization = "Bearer " + value;
+            this.completed = CompletableFuture.completedStage(this);
+        }
+
+        String value() {
+            return value;
+        }
+
+        long expiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        String authorization() {
+            return authorization;
+        }
+
+        boolean isValidAt(long nowMillis) {
+            return nowMillis < expiresAtMillis;
+        }
+    }
+
+    private final GameSDK sdk;
+    private final ScheduledExecutorService scheduler;
+    private final long refreshAheadMillis;
+    private final TokenStore store;
+    private final String storeKey;
+
+    private volatile Token current;
+    // The last token the platform rejected, the store must not hand it out again
+    private volatile String rejectedToken;
+    private final AtomicReference<CompletableFuture<Token>> inFlight = new AtomicReference<>();
+    private volatile ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * @param store the store to share tokens through, null to not share them
+     */
+    TokenManager(GameSDK sdk, ScheduledExecutorService scheduler, int refreshAheadSeconds, TokenStore store) {
+        this.sdk = sdk;
+        this.scheduler = scheduler;
+        this.refreshAheadMillis = TimeUnit.SECONDS.toMillis(refreshAheadSeconds);
+        this.store = store;
+        this.storeKey = store != null ? Digests.credentials(sdk) : null;
+    }
+
+    boolean isExpired() {
+        Token token = current;
+        return token == null || !token.isValidAt(System.currentTimeMillis());
+    }
+
+    /**
+     * @return the current bearer token, blocking only when there is no valid token (e.g. the background refresh kept failing)
+     */
+    Token token() {
+        Token token = current;
+        if (token != null && token.isValidAt(System.currentTimeMillis())) return token;
+        return await(refresh());
+    }
+
+    CompletionStage<Token> tokenAsync() {
+        Token token = current;
+        if (token != null && token.isValidAt(System.currentTimeMillis())) return token.completed;
+        return refresh();
+    }
+
+    /**
+     * Drops the token when the platform rejected it, so the next caller obtains a new one. A token that was already
+     * replaced is left alone, so callers that were rejected with the same token cause a single refresh between them.
+     */
+    void rejected(String bearerToken) {
+        // Racing with a refresh can drop its fresh token too, which only costs one more authentication
+        Token token = current;
+        if (token != null && token.value().equals(bearerToken)) current = null;
+        rejectedToken = bearerToken;
+    }
+
+    /**
+     * Forces a new token to be obtained and waits for it.
+     */
+    void authenticate() {
+        await(refresh());
+    }
+
+    /**
+     * Starts a refresh unless one is already running, in which case the running one is returned (single-flight).
+     */
+    CompletableFuture<Token> refresh() {
+        return refresh(false);
+    }
+
+    private CompletableFuture<Token> refresh(boolean background) {
+        while (true) {
+            CompletableFuture<Token> running = inFlight.get();
+            if (running != null) return running;
+
+            CompletableFuture<Token> refresh = new CompletableFuture<>();
+            if (!inFlight.compareAndSet(null, refresh)) continue;
+
+            TokenRefreshEvent event = new TokenRefreshEvent(background);
+            CompletableFuture<Token> authentication;
+            try {
+                authentication = store != null ? obtainFromStore(background) : AuthenticationModule.authenticateAsync(sdk);
+            } catch (RuntimeException e) {
+                authentication = CompletableFuture.failedFuture(e);
+            }
+
+            authentication.whenComplete((token, failure) -> {
+                if (failure == null) current = token;
+                inFlight.set(null);
+                event.end(token, failure == null ? null : ModuleSupport.unwrap(failure));
+
+                if (failure != null) {
+                    refresh.completeExceptionally(ModuleSupport.unwrap(failure));
+                    return;
+                }
+                refresh.complete(token);
+                long lifetime = token.expiresAtMillis() - System.currentTimeMillis();
+                scheduleRefresh(System.currentTimeMillis() + Math.max(lifetime - refreshAheadMillis, lifetime / 2));
+            });
+            return refresh;
+        }
+    }
+
+    /**
+     * Takes the token from the store when another instance already obtained a usable one, otherwise authenticates and
+     * stores the new token. A background refresh only takes a token that replaces the current one.
+     */
+    private CompletableFuture<Token> obtainFromStore(boolean background) {
+        long marginMillis = TimeUnit.SECONDS.toMillis(sdk.tokenExpirationMargin);
+        Token replaced = background ? current : null;
+        String rejected = rejectedToken;
+        Predicate<TokenStore.StoredToken> usable = stored ->
+                stored.expiresAt().toEpochMilli() - marginMillis > System.currentTimeMillis()
+                        && !stored.bearerToken().equals(rejected)
+                        && (replaced == null || !stored.bearerToken().equals(replaced.value()));
+        Callable<TokenStore.StoredToken> authenticate = () -> {
+            Token token = await(AuthenticationModule.authenticateAsync(sdk));
+            return new TokenStore.StoredToken(token.value(), Instant.ofEpochMilli(token.expiresAtMillis() + marginMillis));
+        };
+
+        // Stores may block (on a lock or on disk), keep that off the caller's and the scheduler's thread
+        return CompletableFuture.supplyAsync(() -> {
+            TokenStore.StoredToken stored;
+            try {
+                stored = store.obtain(storeKey, usable, authenticate);
+            } catch (GameSDK.AuthenticationFailedException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new GameSDK.AuthenticationFailedException("Token store failed: " + e.getMessage());
+            }
+            return new Token(stored.bearerToken(), stored.expiresAt().toEpochMilli() - marginMillis);
+        }, SdkExecutors.virtualThreads());
+    }
+
+    void cancelScheduledRefresh() {
+        ScheduledFuture<?> scheduled = scheduledRefresh;
+        if (scheduled != null) scheduled.cancel(false);
+    }
+
+    private void scheduleRefresh(long atMillis) {
+        cancelScheduledRefresh();
+        long delay = Math.max(0, atMillis - System.currentTimeMillis());
+        // The task only holds a weak reference, an abandoned SDK must not keep authenticating forever
+        WeakReference<TokenManager> self = new WeakReference<>(this);
+        try {
+            scheduledRefresh = scheduler.schedule(() -> {
+                TokenManager manager = self.get();
+                if (manager != null) manager.backgroundRefresh();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler was shut down, callers will refresh the token on demand from now on
+        }
+    }
+
+    private void backgroundRefresh() {
+        refresh(true).whenComplete((token, failure) -> {
+            if (failure == null) return;
+            // Keep trying while the old token is still usable, once it expired the next caller refreshes it
+            Token old = current;
+            long remaining = old == null ? 0 : old.expiresAtMillis() - System.currentTimeMillis();
+            if (remaining > MIN_RETRY_DELAY_MILLIS) {
+                long retryDelay = Math.min(MAX_RETRY_DELAY_MILLIS, Math.max(MIN_RETRY_DELAY_MILLIS, remaining / 4));
+                scheduleRefresh(System.currentTimeMillis() + retryDelay);
+            }
+        });
+    }
+
+    /**
+     * Waits for a refresh, throwing its failure as an {@link GameSDK.AuthenticationFailedException}.
+     */
+    static Token await(CompletableFuture<Token> refresh) {
+        try {
+            return refresh.join();
+        } catch (RuntimeException e) {
+            Throwable cause = ModuleSupport.unwrap(e);
+            if (cause instanceof GameSDK.AuthenticationFailedException failed) throw failed;
+            throw new GameSDK.AuthenticationFailedException(cause.getMessage());
+        }
+    }
+}
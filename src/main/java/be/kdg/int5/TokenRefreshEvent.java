@@ -0,0 +1,56 @@
+package be.kdg.int5;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for every bearer token refresh of the {@link TokenManager}, spanning from the start of the
+ * refresh until the new token is available to callers.
+ * <br><br>
+ * Disabled by default, see {@link SdkCallEvent} on how to enable it.
+ */
+@Name("be.kdg.int5.TokenRefresh")
+@Label("SDK Token Refresh")
+@Category({"Game SDK"})
+@Description("The game SDK obtaining a new bearer token")
+@Enabled(false)
+@StackTrace(false)
+final class TokenRefreshEvent extends Event {
+    @Label("Background")
+    @Description("Refreshed ahead of expiry instead of on demand by a waiting caller")
+    boolean background;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Token Lifetime")
+    @Description("How long the new token stays valid, 0 when the refresh failed")
+    @Timespan(Timespan.MILLISECONDS)
+    long tokenLifetime;
+
+    @Label("Failure")
+    String failure;
+
+    TokenRefreshEvent(boolean background) {
+        this.background = background;
+        begin();
+    }
+
+    void end(TokenManager.Token token, Throwable failure) {
+        end();
+        if (!shouldCommit()) return;
+        succeeded = failure == null;
+        if (succeeded) {
+            tokenLifetime = Math.max(0, token.expiresAtMillis() - System.currentTimeMillis());
+        } else {
+            this.failure = failure.getMessage();
+        }
+        commit();
+    }
+}
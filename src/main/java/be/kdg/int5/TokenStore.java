@@ -0,0 +1,58 @@
+package be.kdg.int5;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+/**
+ * Shares bearer tokens between SDK instances, set through {@link GameSDK.Builder#tokenStore(TokenStore)}.
+ * <br><br>
+ * Every SDK instance that needs a token first asks the store, so instances using the same api key (in the same JVM,
+ * or across restarts and processes with {@link #file(Path)}) reuse a token that is still valid instead of each
+ * authenticating on their own. Each instance applies its own {@code tokenExpirationMargin} to a stored token.
+ * <br><br>
+ * <i>Note: Implementations must let only one caller per key authenticate at a time, the others then find its token.</i>
+ */
+public interface TokenStore {
+    /**
+     * @param bearerToken the token
+     * @param expiresAt when the platform stops accepting the token, without any margin applied
+     */
+    record StoredToken(String bearerToken, Instant expiresAt) {
+        public StoredToken {
+            Objects.requireNonNull(bearerToken);
+            Objects.requireNonNull(expiresAt);
+        }
+    }
+
+    /**
+     * Returns the stored token of the key when it is usable, otherwise obtains a new one and stores it.
+     * Called on a virtual thread, so it may block.
+     * @param key identifies the api key and registry, it does not contain the api key itself
+     * @param usable whether a stored token may be handed out
+     * @param authenticate requests a new token from the platform
+     * @return the usable or new token
+     * @throws Exception what {@code authenticate} threw
+     */
+    StoredToken obtain(String key, Predicate<StoredToken> usable, Callable<StoredToken> authenticate) throws Exception;
+
+    /**
+     * @return a store shared by every SDK instance in this JVM that uses it
+     */
+    static TokenStore shared() {
+        return SharedTokenStore.INSTANCE;
+    }
+
+    /**
+     * A store that keeps one file per api key in the given directory, shared by every process that uses it. Files are
+     * replaced atomically and a lock file makes processes take turns authenticating.
+     * <br><br>
+     * <i>Note: The files hold bearer tokens, keep the directory private to the game server.</i>
+     * @param directory the directory to keep the tokens in, created when missing
+     */
+    static TokenStore file(Path directory) {
+        return new FileTokenStore(directory);
+    }
+}
@@ -1,12 +1,11 @@
 package be.kdg.int5;
 
 import be.kdg.int5.domain.GameContext;
+import be.kdg.int5.transport.Transport;
 
-import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 class UpdateAchievementProgressModule {
     protected static boolean updateAchievementProgress(
@@ -16,30 +15,34 @@ class UpdateAchievementProgressModule {
             int achievementNumber,
             Integer newProgressAmount
     ) {
-        String json = """
-            {
-                "newProgressAmount": "%s"
-            }
-            """
-                .formatted(
-                        newProgressAmount
-                );
+        String path = Endpoints.updateAchievementProgressPath(gameContext, playerId, achievementNumber);
+        byte[] json = RequestBodies.updateAchievementProgress(sdk, newProgressAmount);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .method("POST", HttpRequest.BodyPublishers.ofString(json))
-                .setHeader("Authorization", "Bearer "+sdk.bearerToken())
-                .setHeader("Content-Type", "application/json")
-                .uri(URI.create(sdk.statisticsBaseUrl+"/statistics/achievements/" + achievementNumber + "?playerId=" + playerId + "&gameId=" + gameContext.gameId()))
-                .build();
-        try {
-            HttpResponse<String> response = sdk.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if(response.statusCode() != 200) {
-                if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
-                throw new GameSDK.GeneralMethodFailedException("Request sending failed: "+response.statusCode());
-            }
-            return true;
-        }catch (IOException | InterruptedException e) {
-            throw new GameSDK.GeneralMethodFailedException(e.getMessage());
+        if (sdk.outbox != null) return sdk.outbox.append(Outbox.UPDATE_ACHIEVEMENT_PROGRESS, path, json);
+        URI uri = sdk.endpoints.updateAchievementProgress.uri(path);
+        return ModuleSupport.send(sdk, Operation.UPDATE_ACHIEVEMENT_PROGRESS, sdk.endpoints.updateAchievementProgress.prepare(uri, json), Transport.BodyReader.discarding(), UpdateAchievementProgressModule::updateAchievementProgressResponse);
+    }
+
+    protected static CompletableFuture<Boolean> updateAchievementProgressAsync(
+            GameSDK sdk,
+            GameContext gameContext,
+            UUID playerId,
+            int achievementNumber,
+            Integer newProgressAmount
+    ) {
+        String path = Endpoints.updateAchievementProgressPath(gameContext, playerId, achievementNumber);
+        byte[] json = RequestBodies.updateAchievementProgress(sdk, newProgressAmount);
+
+        if (sdk.outbox != null) return sdk.outbox.appendAsync(Outbox.UPDATE_ACHIEVEMENT_PROGRESS, path, json);
+        URI uri = sdk.endpoints.updateAchievementProgress.uri(path);
+        return ModuleSupport.sendAsync(sdk, Operation.UPDATE_ACHIEVEMENT_PROGRESS, sdk.endpoints.updateAchievementProgress.prepare(uri, json), Transport.BodyReader.discarding(), UpdateAchievementProgressModule::updateAchievementProgressResponse);
+    }
+
+    private static Boolean updateAchievementProgressResponse(Transport.Response<Void> response) {
+        if(response.statusCode() != 200) {
+            if (response.statusCode() == 403) throw new GameSDK.AuthenticationFailedException();
+            throw new GameSDK.GeneralMethodFailedException("Request sending failed: "+response.statusCode());
         }
+        return true;
     }
 }
@@ -0,0 +1,67 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.GameContext;
+import be.kdg.int5.transport.Transport;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The warm-up phase of a {@link GameSDK}, see {@link GameSDK.Builder#warmUp(boolean)}.
+ * <br><br>
+ * Sends a {@code HEAD} request to every distinct base url, which makes the transport open a connection and do the TLS
+ * handshake (and HTTP/2 negotiation) ahead of the first real call, and runs the request and response codecs once so
+ * their classes are loaded. The responses do not matter: any answer, even a 404, leaves a warm connection behind.
+ */
+final class WarmUp {
+    private WarmUp() {
+    }
+
+    /**
+     * @return a future that completes once every host answered or failed to, it never completes exceptionally
+     */
+    static CompletableFuture<Void> run(GameSDK sdk) {
+        Set<String> baseUrls = new LinkedHashSet<>();
+        baseUrls.add(sdk.gameRegistryBaseUrl);
+        baseUrls.add(sdk.statisticsBaseUrl);
+        baseUrls.add(sdk.gameplayBaseUrl);
+
+        CompletableFuture<?>[] connections = new CompletableFuture<?>[baseUrls.size()];
+        int i = 0;
+        for (String baseUrl : baseUrls) {
+            connections[i++] = connect(sdk, baseUrl);
+        }
+        primeCodecs(sdk);
+        return CompletableFuture.allOf(connections).handle((ignored, failure) -> null);
+    }
+
+    private static CompletableFuture<?> connect(GameSDK sdk, String baseUrl) {
+        try {
+            Transport.Request request = Transport.Request.newBuilder()
+                    .method("HEAD", null)
+                    .uri(URI.create(baseUrl + "/"))
+                    .build();
+            return sdk.transport.send(request, Transport.BodyReader.discarding());
+        } catch (RuntimeException e) {
+            // A transport may reject the request right away (e.g. a loopback transport without a handler for it)
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static void primeCodecs(GameSDK sdk) {
+        try {
+            RequestBodies.createLobby(sdk, new GameContext(UUID.randomUUID()), UUID.randomUUID(), 2);
+            Transport.BodyConsumer<String[]> consumer = ResponseBodies.fields(sdk, 200, "uuid").open(200, Map.of());
+            consumer.accept(ByteBuffer.wrap(("{\"uuid\":\"" + UUID.randomUUID() + "\"}").getBytes(StandardCharsets.UTF_8)));
+            consumer.finish();
+        } catch (Exception e) {
+            // Only a warm-up, the first real call does the same work
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package be.kdg.int5.domain;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
 import java.util.Objects;
 
 public record Achievement(int uniqueNumber, String title, String description, int counterTotal) {
@@ -14,10 +16,12 @@ public record Achievement(int uniqueNumber, String title, String description, in
     }
 
     public String toJson() {
-        String json = "{\"uniqueNumber\": "+uniqueNumber()+", ";
-        json += "\"title\": \""+title()+"\", ";
-        json += "\"description\": \""+description()+"\", ";
-        json +=  "\"counterTotal\": \""+counterTotal()+"\"}";
-        return json;
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        return new StringBuilder(64 + title().length() + description().length())
+                .append("{\"uniqueNumber\": ").append(uniqueNumber())
+                .append(", \"title\": \"").append(encoder.quoteAsString(title()))
+                .append("\", \"description\": \"").append(encoder.quoteAsString(description()))
+                .append("\", \"counterTotal\": ").append(counterTotal()).append('}')
+                .toString();
     }
 }
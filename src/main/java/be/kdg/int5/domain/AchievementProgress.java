@@ -0,0 +1,19 @@
+package be.kdg.int5.domain;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A progress update of a single achievement of a player, holds the same values as the parameters of {@code GameSDK.updateAchievementProgress}.
+ */
+public record AchievementProgress(
+        GameContext gameContext,
+        UUID playerId,
+        int achievementNumber,
+        Integer newProgressAmount
+) {
+    public AchievementProgress {
+        Objects.requireNonNull(gameContext);
+        Objects.requireNonNull(playerId);
+    }
+}
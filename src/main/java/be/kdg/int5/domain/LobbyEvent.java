@@ -0,0 +1,26 @@
+package be.kdg.int5.domain;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Something that happened to a lobby, received through {@code GameSDK.subscribeLobby}.
+ * @param eventId the id the gameplay service gave the event, events of a lobby arrive in the order of their ids
+ * @param playerId the player the event is about (the new owner for {@link Type#OWNER_CHANGED}), or null
+ */
+public record LobbyEvent(
+        String eventId,
+        LobbyContext lobby,
+        Type type,
+        UUID playerId
+) {
+    public enum Type {
+        PLAYER_INVITED, PLAYER_JOINED, PLAYER_LEFT, OWNER_CHANGED, CLOSED, OPENED
+    }
+
+    public LobbyEvent {
+        Objects.requireNonNull(eventId);
+        Objects.requireNonNull(lobby);
+        Objects.requireNonNull(type);
+    }
+}
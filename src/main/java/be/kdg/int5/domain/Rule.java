@@ -1,5 +1,7 @@
 package be.kdg.int5.domain;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
 import java.util.Objects;
 
 public record Rule(int stepNumber, String rule) {
@@ -8,6 +10,6 @@ public record Rule(int stepNumber, String rule) {
     }
 
     public String toJson() {
-        return "{\"stepNumber\": "+stepNumber()+", \"rule\": \""+rule()+"\"}";
+        return "{\"stepNumber\": "+stepNumber()+", \"rule\": \""+new String(JsonStringEncoder.getInstance().quoteAsString(rule()))+"\"}";
     }
 }
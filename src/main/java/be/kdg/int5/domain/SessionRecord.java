@@ -0,0 +1,31 @@
+package be.kdg.int5.domain;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A completed session of a single player, holds the same values as the parameters of {@code GameSDK.submitCompletedSession}.
+ */
+public record SessionRecord(
+        GameContext gameContext,
+        UUID playerId,
+        LocalDateTime startTime,
+        LocalDateTime endTime,
+        EndState endState,
+        Integer turnsTaken,
+        Double avgSecondsPerTurn,
+        Integer playerScore,
+        Integer opponentScore,
+        Integer clicks,
+        String character,
+        Boolean wasFirstToGo
+) {
+    public SessionRecord {
+        Objects.requireNonNull(gameContext);
+        Objects.requireNonNull(playerId);
+        Objects.requireNonNull(startTime);
+        Objects.requireNonNull(endTime);
+        Objects.requireNonNull(endState);
+    }
+}
@@ -0,0 +1,125 @@
+package be.kdg.int5.transport;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * The default {@link Transport}, sends requests with a {@link HttpClient}.
+ * <br><br>
+ * Response bodies are handed to the {@link Transport.BodyReader} as the client receives them, once the reader is
+ * done the remaining chunks are drained without being looked at so the connection can be reused.
+ */
+public class HttpClientTransport implements Transport {
+    private final HttpClient httpClient;
+
+    public HttpClientTransport(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public <T> CompletableFuture<Response<T>> send(Request request, BodyReader<T> reader) {
+        return httpClient.sendAsync(toHttpRequest(request), bodyHandler(reader)).thenApply(HttpClientTransport::toResponse);
+    }
+
+    @Override
+    public <T> Response<T> sendBlocking(Request request, BodyReader<T> reader) throws IOException, InterruptedException {
+        return toResponse(httpClient.send(toHttpRequest(request), bodyHandler(reader)));
+    }
+
+    /**
+     * Streams the body with {@link HttpResponse.BodyHandlers#ofPublisher()}, which only reads from the connection
+     * as chunks are requested.
+     */
+    @Override
+    public CompletableFuture<Response<Flow.Publisher<List<ByteBuffer>>>> stream(Request request) {
+        return httpClient.sendAsync(toHttpRequest(request), HttpResponse.BodyHandlers.ofPublisher()).thenApply(HttpClientTransport::toResponse);
+    }
+
+    /**
+     * Shuts the http client down, requests that are in flight still complete.
+     */
+    @Override
+    public void close() {
+        httpClient.shutdown();
+    }
+
+    private static HttpRequest toHttpRequest(Request request) {
+        HttpRequest.BodyPublisher body = request.body() == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(request.body());
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .method(request.method(), body)
+                .uri(request.uri());
+        request.headers().forEach(builder::setHeader);
+        return builder.build();
+    }
+
+    private static <T> Response<T> toResponse(HttpResponse<T> response) {
+        return new Response<>(response.statusCode(), response.headers().map(), response.body());
+    }
+
+    private static <T> HttpResponse.BodyHandler<T> bodyHandler(BodyReader<T> reader) {
+        return responseInfo -> new ConsumerSubscriber<>(reader.open(responseInfo.statusCode(), responseInfo.headers().map()));
+    }
+
+    private static final class ConsumerSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final BodyConsumer<T> consumer;
+        private final CompletableFuture<T> body = new CompletableFuture<>();
+        private boolean failed;
+
+        private ConsumerSubscriber(BodyConsumer<T> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (failed || consumer.isDone()) return;
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    consumer.accept(buffer);
+                    if (consumer.isDone()) return;
+                }
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                body.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failed = true;
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (failed) return;
+            try {
+                body.complete(consumer.finish());
+            } catch (IOException | RuntimeException e) {
+                body.completeExceptionally(e);
+            }
+        }
+    }
+}
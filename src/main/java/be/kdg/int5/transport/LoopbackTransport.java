@@ -0,0 +1,155 @@
+package be.kdg.int5.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-process {@link Transport}, hands every request to a {@link Handler} on the calling thread instead of sending it.
+ * <br><br>
+ * Nothing is copied on the way: the handler gets the request body array the SDK encoded and its reply buffer is passed
+ * to the SDK's body reader as is. This leaves only the SDK's own work, which makes it suitable for measuring its CPU
+ * and allocation cost or for tests that should not open sockets.
+ * <br><br>
+ * Requests sent with {@link #stream} go to a {@link StreamHandler}, whose body publisher is handed to the SDK as is. The
+ * default one publishes the reply of the {@link Handler} as a single chunk, a test that needs a long-lived response
+ * passes its own (e.g. a {@link java.util.concurrent.SubmissionPublisher}, which honours the demand of the SDK).
+ */
+public class LoopbackTransport implements Transport {
+    @FunctionalInterface
+    public interface Handler {
+        Reply handle(Request request) throws IOException;
+    }
+
+    /**
+     * @param statusCode the response status code
+     * @param headers the response headers
+     * @param body the response body, or null for none (the buffer is read from its position to its limit without changing them)
+     */
+    public record Reply(int statusCode, Map<String, List<String>> headers, ByteBuffer body) {
+        public Reply {
+            headers = headers == null ? Map.of() : headers;
+        }
+
+        public static Reply of(int statusCode) {
+            return new Reply(statusCode, Map.of(), null);
+        }
+
+        public static Reply of(int statusCode, byte[] body) {
+            return new Reply(statusCode, Map.of(), ByteBuffer.wrap(body));
+        }
+    }
+
+    @FunctionalInterface
+    public interface StreamHandler {
+        StreamReply stream(Request request) throws IOException;
+    }
+
+    /**
+     * @param statusCode the response status code
+     * @param headers the response headers
+     * @param body the response body, subscribed to once by the SDK
+     */
+    public record StreamReply(int statusCode, Map<String, List<String>> headers, Flow.Publisher<List<ByteBuffer>> body) {
+        public StreamReply {
+            Objects.requireNonNull(body);
+            headers = headers == null ? Map.of() : headers;
+        }
+
+        public static StreamReply of(int statusCode) {
+            return new StreamReply(statusCode, Map.of(), new BufferedBody(null));
+        }
+
+        public static StreamReply of(int statusCode, Flow.Publisher<List<ByteBuffer>> body) {
+            return new StreamReply(statusCode, Map.of(), body);
+        }
+    }
+
+    private final Handler handler;
+    private final StreamHandler streamHandler;
+
+    public LoopbackTransport(Handler handler) {
+        this(handler, request -> {
+            Reply reply = handler.handle(request);
+            return new StreamReply(reply.statusCode(), reply.headers(), new BufferedBody(reply.body()));
+        });
+    }
+
+    public LoopbackTransport(Handler handler, StreamHandler streamHandler) {
+        this.handler = handler;
+        this.streamHandler = streamHandler;
+    }
+
+    @Override
+    public <T> CompletableFuture<Response<T>> send(Request request, BodyReader<T> reader) {
+        try {
+            return CompletableFuture.completedFuture(sendBlocking(request, reader));
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public <T> Response<T> sendBlocking(Request request, BodyReader<T> reader) throws IOException {
+        Reply reply = handler.handle(request);
+        BodyConsumer<T> consumer = reader.open(reply.statusCode(), reply.headers());
+        if (reply.body() != null && reply.body().hasRemaining()) consumer.accept(reply.body().duplicate());
+        return new Response<>(reply.statusCode(), reply.headers(), consumer.finish());
+    }
+
+    @Override
+    public CompletableFuture<Response<Flow.Publisher<List<ByteBuffer>>>> stream(Request request) {
+        try {
+            StreamReply reply = streamHandler.stream(request);
+            return CompletableFuture.completedFuture(new Response<>(reply.statusCode(), reply.headers(), reply.body()));
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Publishes a reply body that is already complete as one chunk, to a single subscriber.
+     */
+    private static final class BufferedBody implements Flow.Publisher<List<ByteBuffer>> {
+        private final ByteBuffer body;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        private BufferedBody(ByteBuffer body) {
+            this.body = body != null && body.hasRemaining() ? body : null;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super List<ByteBuffer>> subscriber) {
+            boolean first = subscribed.compareAndSet(false, true);
+            AtomicBoolean done = new AtomicBoolean(!first);
+            Flow.Subscription subscription = new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    if (!done.compareAndSet(false, true)) return;
+                    if (n <= 0) {
+                        subscriber.onError(new IllegalArgumentException("A subscriber must request a positive number of chunks, got " + n));
+                        return;
+                    }
+                    subscriber.onNext(List.of(body.duplicate()));
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel() {
+                    done.set(true);
+                }
+            };
+            subscriber.onSubscribe(subscription);
+            if (!first) {
+                subscriber.onError(new IllegalStateException("The body was subscribed to already"));
+            } else if (body == null && done.compareAndSet(false, true)) {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
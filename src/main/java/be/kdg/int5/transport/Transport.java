@@ -0,0 +1,187 @@
+package be.kdg.int5.transport;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+/**
+ * Carries the requests of a {@link be.kdg.int5.GameSDK} to the platform, set through {@code GameSDK.Builder.transport(Transport)}.
+ * <br><br>
+ * The default is {@link HttpClientTransport}, {@link LoopbackTransport} hands requests to an in-process handler instead
+ * (e.g. to measure the SDK without the network). Other implementations only need to send a {@link Request} and feed the
+ * response body to the {@link BodyReader} they are given, in as many chunks as is convenient.
+ * <br><br>
+ * <i>Note: Implementations are shared by all calls of an SDK instance and must be thread safe.</i>
+ */
+public interface Transport extends AutoCloseable {
+    /**
+     * Sends the request without blocking the calling thread.
+     * @return a future that completes with the response once its body was read, or exceptionally when the request could not be sent
+     */
+    <T> CompletableFuture<Response<T>> send(Request request, BodyReader<T> reader);
+
+    /**
+     * Sends the request and waits for the response, by default by waiting for {@link #send}.
+     * @throws IOException when the request could not be sent
+     */
+    default <T> Response<T> sendBlocking(Request request, BodyReader<T> reader) throws IOException, InterruptedException {
+        try {
+            return send(request, reader).join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IOException ioException) throw ioException;
+            if (cause instanceof InterruptedException interruptedException) throw interruptedException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Sends a request whose response body is read as it arrives and only as fast as it is requested, for long-lived
+     * responses such as event streams. Cancelling the subscription to the body closes the response.
+     * @return a future that completes with the response once its headers arrived, the body publisher allows a single
+     * subscriber and must be subscribed to (e.g. to cancel it) to release the connection
+     */
+    CompletableFuture<Response<Flow.Publisher<List<ByteBuffer>>>> stream(Request request);
+
+    /**
+     * Releases the resources of the transport, the default does nothing.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * @param method the HTTP method
+     * @param uri the absolute uri of the endpoint
+     * @param headers the request headers
+     * @param body the request body, or null for none (the array is handed over as is, it is not copied)
+     */
+    record Request(String method, URI uri, Map<String, String> headers, byte[] body) {
+        public Request {
+            Objects.requireNonNull(method);
+            Objects.requireNonNull(uri);
+            headers = Collections.unmodifiableMap(headers);
+        }
+
+        public static Builder newBuilder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private String method = "GET";
+            private URI uri;
+            private byte[] body;
+            private final Map<String, String> headers = new LinkedHashMap<>();
+
+            private Builder() {
+            }
+
+            public Builder POST(byte[] body) {
+                return method("POST", body);
+            }
+
+            public Builder method(String method, byte[] body) {
+                this.method = method;
+                this.body = body;
+                return this;
+            }
+
+            public Builder uri(URI uri) {
+                this.uri = uri;
+                return this;
+            }
+
+            public Builder setHeader(String name, String value) {
+                this.headers.put(name, value);
+                return this;
+            }
+
+            public Request build() {
+                return new Request(method, uri, headers, body);
+            }
+        }
+    }
+
+    /**
+     * @param statusCode the response status code
+     * @param headers the response headers (names as sent by the server)
+     * @param body what the {@link BodyReader} made of the response body
+     */
+    record Response<T>(int statusCode, Map<String, List<String>> headers, T body) {
+        public Response {
+            headers = headers == null ? Map.of() : headers;
+        }
+
+        /**
+         * @return the first value of the header, matched case-insensitively, or null when it is missing
+         */
+        public String firstHeader(String name) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) return header.getValue().get(0);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Decides per response how its body is consumed, so bodies that are not needed are never buffered.
+     */
+    @FunctionalInterface
+    interface BodyReader<T> {
+        BodyConsumer<T> open(int statusCode, Map<String, List<String>> headers);
+
+        /**
+         * @return a reader that ignores every body
+         */
+        static <T> BodyReader<T> discarding() {
+            return (statusCode, headers) -> new BodyConsumer<>() {
+                @Override
+                public void accept(ByteBuffer chunk) {
+                }
+
+                @Override
+                public T finish() {
+                    return null;
+                }
+
+                @Override
+                public boolean isDone() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * Receives the body of one response, chunk by chunk in order.
+     */
+    interface BodyConsumer<T> {
+        /**
+         * @param chunk the next part of the body, only valid during the call
+         */
+        void accept(ByteBuffer chunk) throws IOException;
+
+        /**
+         * Called once after the last chunk.
+         * @return the body value
+         */
+        T finish() throws IOException;
+
+        /**
+         * @return true when the consumer does not need any more chunks, the transport may then skip the rest of the body
+         */
+        default boolean isDone() {
+            return false;
+        }
+    }
+}
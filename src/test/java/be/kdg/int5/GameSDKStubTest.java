@@ -0,0 +1,1153 @@
+package be.kdg.int5;
+
+import be.kdg.int5.domain.*;
+import be.kdg.int5.stub.LatencyModel;
+import be.kdg.int5.stub.PlatformStub;
+import be.kdg.int5.transport.LoopbackTransport;
+import be.kdg.int5.transport.Transport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameSDKStubTest {
+    // Fits two records, so a few records span several segments
+    private static final int OUTBOX_SEGMENT_SIZE = 320;
+    private static final String SUBMIT_PATH = Endpoints.submitCompletedSessionPath(new GameContext(UUID.randomUUID()), UUID.randomUUID());
+
+    private PlatformStub stub;
+    private GameSDK sdk;
+
+    @AfterEach
+    void tearDown() {
+        if (sdk != null) sdk.close();
+        if (stub != null) stub.close();
+    }
+
+    private GameSDK init(PlatformStub.Builder builder) throws IOException {
+        return init(builder, ResiliencePolicy.defaults());
+    }
+
+    private GameSDK init(PlatformStub.Builder builder, ResiliencePolicy resilience) throws IOException {
+        stub = builder.start();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).resilience(resilience).init("stub-key");
+        return sdk;
+    }
+
+    /**
+     * Starts an SDK on a {@link LoopbackTransport} that hands out the tokens {@code token-1}, {@code token-2}, ... and
+     * answers lobby event streams with the given handler.
+     */
+    private GameSDK initLoopback(AtomicInteger authentications, LoopbackTransport.StreamHandler lobbyEvents) {
+        LoopbackTransport transport = new LoopbackTransport(request -> {
+            if (!request.uri().getPath().endsWith("/registry/auth")) return LoopbackTransport.Reply.of(200);
+            String token = "{\"access_token\":\"token-" + authentications.incrementAndGet() + "\",\"token_type\":\"Bearer\",\"expires_in\":3600}";
+            return LoopbackTransport.Reply.of(200, token.getBytes(StandardCharsets.UTF_8));
+        }, lobbyEvents);
+        sdk = new GameSDK.Builder().baseUrl("http://loopback").transport(transport).init("loopback-key");
+        return sdk;
+    }
+
+    @Test
+    void callsShouldReachTheMatchingEndpointsWithTheirPayloads() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        UUID playerId = UUID.randomUUID();
+
+        //Act
+        GameContext ctx = sdk.registerGame("Duck!", "http://localhost:4242/duckgame", null, null, null, null, null, null, null);
+        LobbyContext lobby = sdk.createLobby(ctx, playerId, 4);
+        sdk.closeLobby(lobby);
+        boolean submitted = sdk.submitCompletedSession(ctx, playerId, LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, 12, null, null, null, null, null, null);
+
+        //Assert
+        assertTrue(submitted);
+        assertEquals(1, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+        assertEquals(1, stub.requestCount(PlatformStub.Endpoint.REGISTER_GAME));
+        assertEquals(1, stub.requestCount(PlatformStub.Endpoint.CREATE_LOBBY));
+
+        List<PlatformStub.RecordedRequest> patches = stub.recordedRequests(PlatformStub.Endpoint.PATCH_LOBBY);
+        assertEquals(1, patches.size());
+        assertTrue(patches.get(0).bodyAsString().contains("\"closed\":true"));
+        assertTrue(patches.get(0).authorization().startsWith("Bearer "));
+
+        PlatformStub.RecordedRequest session = stub.recordedRequests(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION).get(0);
+        assertTrue(session.uri().getQuery().contains("playerId=" + playerId));
+        assertTrue(session.bodyAsString().contains("\"turnsTaken\":12"));
+    }
+
+    @Test
+    void asyncCallsShouldCompleteWithTheirResultsOrTheSdkException() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().errorRate(PlatformStub.Endpoint.PATCH_LOBBY, 1.0), ResiliencePolicy.disabled());
+        UUID playerId = UUID.randomUUID();
+
+        //Act
+        GameContext ctx = sdk.registerGameAsync("Duck!", "http://localhost:4242/duckgame", null, null, null, null, null, null, null).join();
+        LobbyContext lobby = sdk.createLobbyAsync(ctx, playerId, 4).join();
+        boolean submitted = sdk.submitCompletedSessionAsync(ctx, playerId, LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, 12, null, null, null, null, null, null).join();
+        boolean updated = sdk.updateAchievementProgressAsync(ctx, playerId, 1, 3).join();
+        CompletionException failure = assertThrows(CompletionException.class, () -> sdk.closeLobbyAsync(lobby).join());
+
+        //Assert
+        assertNotNull(ctx.gameId());
+        assertNotNull(lobby.lobbyId());
+        assertTrue(submitted);
+        assertTrue(updated);
+        assertInstanceOf(GameSDK.GeneralMethodFailedException.class, failure.getCause());
+        assertEquals(1, stub.requestCount(PlatformStub.Endpoint.UPDATE_ACHIEVEMENT_PROGRESS));
+    }
+
+    @Test
+    void registerGameBodyShouldMatchTheObjectMapperEncoding() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        List<Rule> rules = List.of(new Rule(1, "Say \"quack\"\n"), new Rule(2, "Back\\slash \u00e9"));
+        List<Achievement> achievements = List.of(new Achievement(1, "\"First\"", "Tab\there"), new Achievement(2, "Second", "Twice", 12));
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("title", "Duck \"Game\"");
+        expected.put("currentHost", "http://localhost:4242/duckgame");
+        expected.put("description", "Ducks\u0001");
+        expected.put("currentPrice", 4.99);
+        expected.put("rules", rules);
+        expected.put("screenshots", List.of("http://localhost/1.png"));
+        expected.put("achievements", achievements);
+
+        //Act
+        byte[] body = RequestBodies.registerGame(sdk, "Duck \"Game\"", "http://localhost:4242/duckgame", "Ducks\u0001", new BigDecimal("4.99"), null, null, rules, List.of("http://localhost/1.png"), achievements);
+
+        //Assert
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsBytes(expected)), objectMapper.readTree(body));
+        assertEquals(objectMapper.valueToTree(achievements.get(1)), objectMapper.readTree(achievements.get(1).toJson()));
+        assertEquals(objectMapper.valueToTree(rules.get(0)), objectMapper.readTree(rules.get(0).toJson()));
+    }
+
+    @Test
+    void responseFieldsShouldBeParsedAcrossChunksAndOnlyAtTheTopLevel() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        byte[] body = "{\"game\":{\"uuid\":\"nested\",\"tags\":[{\"uuid\":\"deeper\"}]},\"title\":\"D\u00fcck \\\"!\\\"\",\"uuid\":\"top\",\"rest\":[1,2,3]}"
+                .getBytes(StandardCharsets.UTF_8);
+        Transport.BodyConsumer<String[]> fields = ResponseBodies.fields(sdk, 200, "uuid", "title", "missing").open(200, Map.of());
+        Transport.BodyConsumer<String[]> failed = ResponseBodies.fields(sdk, 200, "uuid").open(404, Map.of());
+
+        //Act
+        // One byte per chunk splits every token and the two bytes of the u umlaut
+        for (byte b : body) fields.accept(ByteBuffer.wrap(new byte[]{b}));
+        String[] values = fields.finish();
+        failed.accept(ByteBuffer.wrap(body));
+
+        //Assert
+        assertArrayEquals(new String[]{"top", "D\u00fcck \"!\"", null}, values);
+        assertTrue(failed.isDone());
+        assertNull(failed.finish());
+    }
+
+    @Test
+    void expiredTokenShouldBeRenewedAndTheCallReplayed() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        stub.expireTokens();
+
+        //Act
+        Executable test = () -> sdk.createLobby(ctx, UUID.randomUUID(), 4);
+
+        //Assert
+        assertDoesNotThrow(test);
+        assertEquals(1, stub.statusCount(403));
+        assertEquals(2, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+        assertEquals(2, stub.requestCount(PlatformStub.Endpoint.CREATE_LOBBY));
+    }
+
+    @Test
+    void concurrentCallsWithAnExpiredTokenShouldShareOneAuthentication() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().latency(PlatformStub.Endpoint.AUTHENTICATE, LatencyModel.fixed(Duration.ofMillis(200))));
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        stub.expireTokens();
+
+        //Act
+        List<CompletableFuture<LobbyContext>> lobbies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) lobbies.add(sdk.createLobbyAsync(ctx, UUID.randomUUID(), 4));
+        CompletableFuture.allOf(lobbies.toArray(new CompletableFuture<?>[0])).join();
+
+        //Assert
+        assertEquals(2, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+        assertEquals(10, stub.statusCount(201));
+    }
+
+    @Test
+    void tokenShouldBeRefreshedInTheBackgroundBeforeItExpires() throws IOException {
+        //Arrange
+        stub = PlatformStub.builder().tokenLifetime(Duration.ofSeconds(2)).start();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).tokenExpirationMargin(0).init("stub-key");
+        GameContext ctx = new GameContext(UUID.randomUUID());
+
+        //Act
+        awaitUntil(() -> stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE) == 2);
+        sdk.createLobby(ctx, UUID.randomUUID(), 4);
+
+        //Assert
+        assertEquals(0, stub.statusCount(403));
+        assertEquals(2, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+    }
+
+    @Test
+    void expiredTokenShouldResultInAuthenticationFailedException() throws IOException {
+        //Arrange
+        init(PlatformStub.builder(), ResiliencePolicy.disabled());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        stub.expireTokens();
+
+        //Act
+        Executable test = () -> sdk.createLobby(ctx, UUID.randomUUID(), 4);
+
+        //Assert
+        assertThrows(GameSDK.AuthenticationFailedException.class, test);
+        assertEquals(1, stub.statusCount(403));
+    }
+
+    @Test
+    void serverErrorsShouldResultInGeneralMethodFailedException() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().errorRate(PlatformStub.Endpoint.CREATE_LOBBY, 1.0));
+        GameContext ctx = new GameContext(UUID.randomUUID());
+
+        //Act
+        Executable test = () -> sdk.createLobby(ctx, UUID.randomUUID(), 4);
+
+        //Assert
+        assertThrows(GameSDK.GeneralMethodFailedException.class, test);
+        assertEquals(1, stub.statusCount(500));
+    }
+
+    @Test
+    void requestsOverTheThrottleShouldBeRejected() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().throttle(1, 2), ResiliencePolicy.disabled());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+
+        //Act
+        Executable test = () -> sdk.createLobby(ctx, UUID.randomUUID(), 4);
+
+        //Assert
+        // The authentication on init used the first permit of the burst
+        assertDoesNotThrow(test);
+        assertThrows(GameSDK.GeneralMethodFailedException.class, test);
+        assertEquals(1, stub.statusCount(429));
+    }
+
+    @Test
+    void throttledCallsShouldBeRetriedAfterRetryAfter() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().throttle(1, 2));
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        sdk.createLobby(ctx, UUID.randomUUID(), 4);
+
+        //Act
+        long start = System.nanoTime();
+        sdk.createLobby(ctx, UUID.randomUUID(), 4);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        //Assert
+        assertEquals(1, stub.statusCount(429));
+        assertEquals(3, stub.requestCount(PlatformStub.Endpoint.CREATE_LOBBY));
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(1)) >= 0);
+    }
+
+    @Test
+    void idempotentCallsShouldBeRetriedUpToMaxAttempts() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().errorRate(PlatformStub.Endpoint.UPDATE_ACHIEVEMENT_PROGRESS, 1.0),
+                ResiliencePolicy.builder().maxAttempts(3).backoff(Duration.ZERO, Duration.ofMillis(10)).build());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+
+        //Act
+        Executable test = () -> sdk.updateAchievementProgress(ctx, UUID.randomUUID(), 1, 5);
+
+        //Assert
+        assertThrows(GameSDK.GeneralMethodFailedException.class, test);
+        assertEquals(3, stub.statusCount(500));
+    }
+
+    @Test
+    void openCircuitBreakerShouldOnlyRejectCallsToTheFailingService() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().errorRate(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION, 1.0),
+                ResiliencePolicy.builder().circuitBreaker(2, Duration.ofMinutes(1)).build());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        Executable submit = () -> sdk.submitCompletedSession(ctx, UUID.randomUUID(), LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, 12, null, null, null, null, null, null);
+
+        //Act
+        assertThrows(GameSDK.GeneralMethodFailedException.class, submit);
+        assertThrows(GameSDK.GeneralMethodFailedException.class, submit);
+        GameSDK.GeneralMethodFailedException rejected = assertThrows(GameSDK.GeneralMethodFailedException.class, submit);
+
+        //Assert
+        assertEquals(2, stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION));
+        assertTrue(rejected.getMessage().contains("circuit breaker"));
+        assertDoesNotThrow(() -> sdk.createLobby(ctx, UUID.randomUUID(), 4));
+    }
+
+    @Test
+    void callsOverTheConcurrencyLimitShouldBeShedWhenTheQueueIsFull() throws IOException {
+        //Arrange
+        stub = PlatformStub.builder().latency(PlatformStub.Endpoint.CREATE_LOBBY, LatencyModel.fixed(Duration.ofMillis(200))).start();
+        sdk = new GameSDK.Builder()
+                .baseUrl(stub.baseUrl())
+                .concurrencyLimit(ConcurrencyLimitPolicy.builder().initialLimit(1).limitRange(1, 1).maxQueue(0).build())
+                .init("stub-key");
+        GameContext ctx = new GameContext(UUID.randomUUID());
+
+        //Act
+        CompletableFuture<LobbyContext> first = sdk.createLobbyAsync(ctx, UUID.randomUUID(), 4);
+        CompletableFuture<LobbyContext> second = sdk.createLobbyAsync(ctx, UUID.randomUUID(), 4);
+
+        //Assert
+        assertDoesNotThrow(first::join);
+        CompletionException shed = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(GameSDK.GeneralMethodFailedException.class, shed.getCause());
+        assertEquals(1, stub.requestCount(PlatformStub.Endpoint.CREATE_LOBBY));
+        assertEquals(new ConcurrencyLimit(1, 0, 0, 1), sdk.concurrencyLimits().get(PlatformService.GAMEPLAY));
+    }
+
+    @Test
+    void bulkSubmitShouldSendTheSessionsConcurrently() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().latency(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION, LatencyModel.fixed(Duration.ofMillis(200))));
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        List<SessionRecord> sessions = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            sessions.add(new SessionRecord(ctx, UUID.randomUUID(), LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, i, null, null, null, null, null, null));
+        }
+
+        //Act
+        long start = System.nanoTime();
+        BulkResult<SessionRecord> result = sdk.submitCompletedSessions(sessions);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        //Assert
+        assertTrue(result.allSucceeded());
+        assertEquals(sessions, result.items().stream().map(BulkResult.Item::request).toList());
+        assertEquals(8, stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION));
+        assertTrue(elapsed.compareTo(Duration.ofMillis(8 * 200)) < 0);
+    }
+
+    @Test
+    void batcherShouldSubmitTheQueuedSessionsUnchanged() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        UUID playerId = UUID.randomUUID();
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456789);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+
+        //Act
+        try (SessionBatcher batcher = sdk.sessionBatcher().capacity(4).maxDelay(Duration.ofMillis(50)).build()) {
+            for (int i = 0; i < 10; i++) {
+                results.add(batcher.submit(new SessionRecord(ctx, playerId, start, start.plusSeconds(90), EndState.LOSS, i, 1.5, null, 3, null, "Knight", i % 2 == 0)));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+        }
+
+        //Assert
+        List<PlatformStub.RecordedRequest> sessions = stub.recordedRequests(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION);
+        assertEquals(10, sessions.size());
+        String body = sessions.get(0).bodyAsString();
+        assertTrue(body.contains("\"startTime\":\"2024-05-01T12:30:15.123456789\""));
+        assertTrue(body.contains("\"character\":\"Knight\""));
+        assertTrue(body.contains("\"avgSecondsPerTurn\":1.5"));
+        assertTrue(body.contains("\"playerScore\":null"));
+        assertTrue(sessions.get(0).uri().getQuery().contains("playerId=" + playerId));
+    }
+
+    @Test
+    void batcherShouldFailSessionsThatDoNotFitWithFailFast() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().latency(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION, LatencyModel.fixed(Duration.ofMillis(300))));
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        LocalDateTime start = LocalDateTime.now().minusMinutes(5);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+
+        //Act
+        try (SessionBatcher batcher = sdk.sessionBatcher().capacity(4).maxBatchSize(1).overflowPolicy(SessionBatcher.OverflowPolicy.FAIL_FAST).build()) {
+            // The first session keeps the flusher busy while the others fill the queue
+            results.add(batcher.submit(new SessionRecord(ctx, UUID.randomUUID(), start, start.plusMinutes(1), EndState.WIN, 1, null, null, null, null, null, null)));
+            awaitUntil(() -> stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION) == 1);
+            for (int i = 0; i < 20; i++) {
+                results.add(batcher.submit(new SessionRecord(ctx, UUID.randomUUID(), start, start.plusMinutes(1), EndState.WIN, 1, null, null, null, null, null, null)));
+            }
+        }
+
+        //Assert
+        long sent = results.stream().filter(result -> !result.isCompletedExceptionally()).count();
+        CompletionException rejected = assertThrows(CompletionException.class, () -> results.get(20).join());
+        assertInstanceOf(GameSDK.GeneralMethodFailedException.class, rejected.getCause());
+        assertTrue(sent > 1 && sent < 21);
+        assertEquals(sent, stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION));
+    }
+
+    @Test
+    void maxConcurrentStreamsShouldQueueRequestsToTheSameHost() throws IOException {
+        //Arrange
+        stub = PlatformStub.builder().latency(PlatformStub.Endpoint.CREATE_LOBBY, LatencyModel.fixed(Duration.ofMillis(200))).start();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).httpVersion(HttpClient.Version.HTTP_2).maxConcurrentStreams(1).init("stub-key");
+        GameContext ctx = new GameContext(UUID.randomUUID());
+
+        //Act
+        long start = System.nanoTime();
+        CompletableFuture.allOf(
+                sdk.createLobbyAsync(ctx, UUID.randomUUID(), 4),
+                sdk.createLobbyAsync(ctx, UUID.randomUUID(), 4),
+                sdk.createLobbyAsync(ctx, UUID.randomUUID(), 4)
+        ).join();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        //Assert
+        // The stub only speaks HTTP/1.1, the client falls back to it
+        assertEquals(3, stub.requestCount(PlatformStub.Endpoint.CREATE_LOBBY));
+        assertTrue(elapsed.compareTo(Duration.ofMillis(3 * 200)) >= 0);
+    }
+
+    @Test
+    void batcherFlushShouldNotWaitForTheBatchToFillAndCloseShouldRejectLateSessions() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        SessionBatcher batcher = sdk.sessionBatcher().maxDelay(Duration.ofSeconds(30)).build();
+        CompletableFuture<Boolean> queued = batcher.submit(new SessionRecord(ctx, UUID.randomUUID(), LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, 1, null, null, null, null, null, null));
+
+        //Act
+        long start = System.nanoTime();
+        batcher.flush();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        batcher.close();
+        Executable late = () -> batcher.submit(new SessionRecord(ctx, UUID.randomUUID(), LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, 1, null, null, null, null, null, null));
+
+        //Assert
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(10)) < 0);
+        assertTrue(queued.join());
+        assertThrows(IllegalStateException.class, late);
+    }
+
+    @Test
+    void batcherShouldKeepCharactersBeyondTheCodecTable() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        int characters = SessionCodec.MAX_CHARACTERS + 20;
+
+        //Act
+        try (SessionBatcher batcher = sdk.sessionBatcher().maxDelay(Duration.ofMillis(10)).build()) {
+            for (int i = 0; i < characters; i++) {
+                batcher.submit(new SessionRecord(ctx, UUID.randomUUID(), LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, i, null, null, null, null, "Character " + i, null));
+            }
+        }
+
+        //Assert
+        List<PlatformStub.RecordedRequest> sessions = stub.recordedRequests(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION);
+        assertEquals(characters, sessions.size());
+        for (PlatformStub.RecordedRequest session : sessions) {
+            String body = session.bodyAsString();
+            String turns = body.replaceAll(".*\"turnsTaken\":(\\d+).*", "$1");
+            assertTrue(body.contains("\"character\":\"Character " + turns + "\""));
+        }
+    }
+
+    @Test
+    void latencyShouldDelayTheResponse() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().latency(PlatformStub.Endpoint.CREATE_LOBBY, LatencyModel.fixed(Duration.ofMillis(200))));
+        GameContext ctx = new GameContext(UUID.randomUUID());
+
+        //Act
+        long start = System.nanoTime();
+        sdk.createLobby(ctx, UUID.randomUUID(), 4);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        //Assert
+        assertTrue(elapsed.compareTo(Duration.ofMillis(200)) >= 0);
+    }
+
+    @Test
+    void metricsShouldCountCallsPerOperationAndOutcome() throws IOException {
+        //Arrange
+        stub = PlatformStub.builder()
+                .latency(PlatformStub.Endpoint.CREATE_LOBBY, LatencyModel.fixed(Duration.ofMillis(50)))
+                .errorRate(PlatformStub.Endpoint.PATCH_LOBBY, 1.0)
+                .start();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).metrics(true).init("stub-key");
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        List<SdkMetrics.Outcome> outcomes = new CopyOnWriteArrayList<>();
+        sdk.metrics().addListener((operation, outcome, statusCode, durationNanos) -> outcomes.add(outcome));
+
+        //Act
+        LobbyContext lobby = sdk.createLobby(ctx, UUID.randomUUID(), 4);
+        assertThrows(GameSDK.GeneralMethodFailedException.class, () -> sdk.closeLobby(lobby));
+        MetricsSnapshot snapshot = sdk.metrics().snapshot();
+
+        //Assert
+        MetricsSnapshot.OperationStats created = snapshot.operation(Operation.CREATE_LOBBY);
+        assertEquals(1, created.successes());
+        assertEquals(Map.of(201, 1L), created.statusCodes());
+        assertTrue(created.p50().compareTo(Duration.ofMillis(45)) >= 0);
+
+        MetricsSnapshot.OperationStats patched = snapshot.operation(Operation.PATCH_LOBBY);
+        assertEquals(1, patched.failures());
+        assertEquals(Map.of(500, 1L), patched.statusCodes());
+
+        assertEquals(1, snapshot.tokenRefreshes());
+        assertEquals(List.of(SdkMetrics.Outcome.SUCCESS, SdkMetrics.Outcome.FAILED), outcomes);
+    }
+
+    @Test
+    void flightRecorderShouldRecordCallsAndTokenRefreshes() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        stub.expireTokens();
+        Path dump = Files.createTempFile("sdk", ".jfr");
+
+        //Act
+        try (Recording recording = new Recording()) {
+            recording.enable(SdkCallEvent.NAME);
+            recording.enable("be.kdg.int5.TokenRefresh");
+            recording.start();
+            sdk.createLobby(ctx, UUID.randomUUID(), 4);
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+
+        //Assert
+        List<RecordedEvent> calls = events.stream().filter(event -> event.getEventType().getName().equals(SdkCallEvent.NAME)).toList();
+        List<RecordedEvent> refreshes = events.stream().filter(event -> event.getEventType().getName().equals("be.kdg.int5.TokenRefresh")).toList();
+        RecordedEvent call = calls.stream().filter(event -> event.getString("operation").equals(Operation.CREATE_LOBBY.name())).findFirst().orElseThrow();
+        assertEquals(201, call.getInt("statusCode"));
+        assertEquals(1, call.getInt("retries"));
+        assertTrue(call.getString("endpoint").startsWith("POST /"));
+        assertTrue(call.getLong("requestBytes") > 0);
+        assertEquals(1, refreshes.size());
+        assertTrue(refreshes.get(0).getBoolean("succeeded"));
+        assertFalse(refreshes.get(0).getBoolean("background"));
+    }
+
+    @Test
+    void registrationCacheShouldOnlySendChangedRegistrations() throws IOException {
+        //Arrange
+        stub = PlatformStub.start();
+        Path cacheFile = Files.createTempDirectory("registration-cache").resolve("registration.properties");
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).registrationCache(cacheFile).init("stub-key");
+        List<Rule> rules = List.of(new Rule(1, "Quack"));
+
+        //Act
+        GameContext registered = sdk.registerGame("Duck!", "http://localhost:4242/duckgame", null, null, null, null, rules, null, null);
+        GameContext unchanged = sdk.registerGame("Duck!", "http://localhost:4242/duckgame", null, null, null, null, rules, null, null);
+        sdk.registerGame("Duck!", "http://localhost:4242/duckgame", "Quack quack", null, null, null, rules, null, null);
+
+        //Assert
+        assertEquals(registered, unchanged);
+        List<PlatformStub.RecordedRequest> registrations = stub.recordedRequests(PlatformStub.Endpoint.REGISTER_GAME);
+        assertEquals(2, registrations.size());
+        assertTrue(registrations.get(0).bodyAsString().contains("\"rules\""));
+        String delta = registrations.get(1).bodyAsString();
+        assertTrue(delta.contains("\"description\":\"Quack quack\""));
+        assertTrue(delta.contains("\"title\""));
+        assertFalse(delta.contains("\"rules\""));
+    }
+
+    @Test
+    void compressionShouldOnlyCompressLargeBodiesAndDecodeCompressedResponses() throws IOException {
+        //Arrange
+        stub = PlatformStub.start();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).compression(CompressionPolicy.gzip()).init("stub-key");
+        List<Achievement> achievements = new ArrayList<>();
+        for (int i = 0; i < 100; i++) achievements.add(new Achievement(i, "Achievement " + i, "Quack " + i + " times", i + 1));
+
+        //Act
+        GameContext ctx = sdk.registerGame("Duck!", "http://localhost:4242/duckgame", null, null, null, null, null, null, achievements);
+        boolean submitted = sdk.submitCompletedSession(ctx, UUID.randomUUID(), LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, 12, null, null, null, null, null, null);
+
+        //Assert
+        assertNotNull(ctx.gameId());
+        assertTrue(submitted);
+        PlatformStub.RecordedRequest registration = stub.recordedRequests(PlatformStub.Endpoint.REGISTER_GAME).get(0);
+        assertEquals("gzip", registration.contentEncoding());
+        assertTrue(registration.wireSize() < registration.body().length / 4);
+        assertTrue(registration.bodyAsString().contains("\"Achievement 99\""));
+        assertNull(stub.recordedRequests(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION).get(0).contentEncoding());
+    }
+
+    @Test
+    void loopbackTransportShouldCarryEveryCallToItsHandler() {
+        //Arrange
+        List<Transport.Request> requests = new CopyOnWriteArrayList<>();
+        byte[] uuid = ("{\"uuid\":\"" + UUID.randomUUID() + "\"}").getBytes(StandardCharsets.UTF_8);
+        LoopbackTransport transport = new LoopbackTransport(request -> {
+            requests.add(request);
+            String path = request.uri().getPath();
+            if (path.endsWith("/registry/auth")) return LoopbackTransport.Reply.of(200, "{\"access_token\":\"token\",\"expires_in\":3600}".getBytes(StandardCharsets.UTF_8));
+            if (path.endsWith("/registry/games")) return LoopbackTransport.Reply.of(200, uuid);
+            if (path.endsWith("/lobby") && request.method().equals("POST")) return LoopbackTransport.Reply.of(201, uuid);
+            return LoopbackTransport.Reply.of(200);
+        });
+        sdk = new GameSDK.Builder().baseUrl("http://loopback").transport(transport).init("loopback-key");
+        UUID playerId = UUID.randomUUID();
+
+        //Act
+        GameContext ctx = sdk.registerGame("Duck!", "http://localhost:4242/duckgame", null, null, null, null, null, null, null);
+        LobbyContext lobby = sdk.createLobby(ctx, playerId, 4);
+        sdk.closeLobby(lobby);
+        boolean submitted = sdk.submitCompletedSession(ctx, playerId, LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), EndState.WIN, 12, null, null, null, null, null, null);
+        boolean updated = sdk.updateAchievementProgress(ctx, playerId, 1, 3);
+
+        //Assert
+        assertTrue(submitted);
+        assertTrue(updated);
+        assertEquals(List.of("POST /registry/auth", "PATCH /registry/games", "POST /lobby", "PATCH /lobby", "POST /statistics/submit", "POST /statistics/achievements/1"),
+                requests.stream().map(request -> request.method() + " " + request.uri().getPath()).toList());
+        assertTrue(requests.stream().skip(1).allMatch(request -> "Bearer token".equals(request.headers().get("Authorization"))));
+        assertTrue(new String(requests.get(2).body(), StandardCharsets.UTF_8).contains("\"maxPlayers\":4"));
+    }
+
+    @Test
+    void requestTemplatesShouldReuseTheHeadersOfATokenUntilItChanges() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        RequestTemplate template = sdk.endpoints.createLobby;
+        byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+        TokenManager.Token token = sdk.tokenManager.token();
+        TokenManager.Token renewed = new TokenManager.Token("renewed", System.currentTimeMillis() + 60_000);
+
+        //Act
+        Transport.Request first = template.request(token, body);
+        Transport.Request second = template.prepare(body).create(token);
+        Transport.Request third = template.request(renewed, body);
+        Transport.Request anonymous = template.request(null, body);
+
+        //Assert
+        assertSame(first.headers(), second.headers());
+        assertSame(first.uri(), second.uri());
+        assertSame(body, first.body());
+        assertEquals(token.authorization(), first.headers().get("Authorization"));
+        assertEquals("Bearer renewed", third.headers().get("Authorization"));
+        assertEquals("application/json", third.headers().get("Content-Type"));
+        assertNull(anonymous.headers().get("Authorization"));
+        assertEquals(stub.baseUrl() + "/lobby", first.uri().toString());
+    }
+
+    @Test
+    void retriedCallShouldReuseTheCompressedBody() {
+        //Arrange
+        List<Transport.Request> registrations = new CopyOnWriteArrayList<>();
+        LoopbackTransport transport = new LoopbackTransport(request -> {
+            String path = request.uri().getPath();
+            if (path.endsWith("/registry/auth")) return LoopbackTransport.Reply.of(200, "{\"access_token\":\"token\",\"expires_in\":3600}".getBytes(StandardCharsets.UTF_8));
+            if (!path.endsWith("/registry/games")) return LoopbackTransport.Reply.of(200);
+            registrations.add(request);
+            if (registrations.size() == 1) return LoopbackTransport.Reply.of(503);
+            return LoopbackTransport.Reply.of(200, ("{\"uuid\":\"" + UUID.randomUUID() + "\"}").getBytes(StandardCharsets.UTF_8));
+        });
+        sdk = new GameSDK.Builder().baseUrl("http://loopback").transport(transport).compression(CompressionPolicy.gzip()).init("loopback-key");
+        List<Achievement> achievements = new ArrayList<>();
+        for (int i = 0; i < 100; i++) achievements.add(new Achievement(i, "Achievement " + i, "Quack " + i + " times", i + 1));
+
+        //Act
+        GameContext ctx = sdk.registerGame("Duck!", "http://localhost:4242/duckgame", null, null, null, null, null, null, achievements);
+
+        //Assert
+        assertNotNull(ctx.gameId());
+        assertEquals(2, registrations.size());
+        assertEquals("gzip", registrations.get(1).headers().get("Content-Encoding"));
+        assertSame(registrations.get(0).body(), registrations.get(1).body());
+    }
+
+    @Test
+    void lazyInitShouldAuthenticateAndWarmUpInTheBackground() throws IOException {
+        //Arrange
+        stub = PlatformStub.builder()
+                .latency(PlatformStub.Endpoint.AUTHENTICATE, LatencyModel.fixed(Duration.ofMillis(300)))
+                .start();
+
+        //Act
+        long start = System.nanoTime();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).warmUp(true).initLazily("stub-key");
+        Duration initDuration = Duration.ofNanos(System.nanoTime() - start);
+        GameSDK ready = sdk.ready().join();
+
+        //Assert
+        assertTrue(initDuration.compareTo(Duration.ofMillis(300)) < 0);
+        assertSame(sdk, ready);
+        assertEquals(1, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+        assertTrue(stub.recordedRequests().stream().anyMatch(request -> request.method().equals("HEAD")));
+        assertNotNull(sdk.createLobby(new GameContext(UUID.randomUUID()), UUID.randomUUID(), 4));
+    }
+
+    @Test
+    void tokenStoreShouldLetARestartedInstanceReuseTheToken() throws IOException {
+        //Arrange
+        stub = PlatformStub.start();
+        TokenStore tokenStore = TokenStore.file(Files.createTempDirectory("token-store"));
+        new GameSDK.Builder().baseUrl(stub.baseUrl()).tokenStore(tokenStore).init("stub-key").close();
+
+        //Act
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).tokenStore(tokenStore).init("stub-key");
+        LobbyContext lobby = sdk.createLobby(new GameContext(UUID.randomUUID()), UUID.randomUUID(), 4);
+
+        //Assert
+        assertNotNull(lobby);
+        assertEquals(1, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+    }
+
+    @Test
+    void closeShouldOnlyCloseATransportTheSdkCreated() throws IOException {
+        //Arrange
+        stub = PlatformStub.start();
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        GameSDK owning = new GameSDK.Builder().baseUrl(stub.baseUrl()).resilience(ResiliencePolicy.disabled()).init("stub-key");
+        HttpClient httpClient = HttpClient.newHttpClient();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).httpClient(httpClient).init("stub-key");
+
+        //Act
+        owning.close();
+        sdk.close();
+
+        //Assert
+        assertThrows(GameSDK.GeneralMethodFailedException.class, () -> owning.createLobby(ctx, UUID.randomUUID(), 4));
+        assertFalse(httpClient.isTerminated());
+        assertNotNull(sdk.createLobby(ctx, UUID.randomUUID(), 4));
+    }
+
+    @Test
+    void poolTenantsShouldShareTheTransportAndMetrics() throws IOException {
+        //Arrange
+        stub = PlatformStub.start();
+        List<String> apiKeys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) apiKeys.add("tenant-" + i);
+
+        try (GameSDKPool pool = new GameSDK.Builder().baseUrl(stub.baseUrl()).metrics(true).buildPool()) {
+            //Act
+            for (String apiKey : apiKeys) {
+                pool.tenant(apiKey).createLobby(new GameContext(UUID.randomUUID()), UUID.randomUUID(), 4);
+            }
+            boolean evicted = pool.evict("tenant-0");
+
+            //Assert
+            assertSame(pool.tenant("tenant-1").transport, pool.tenant("tenant-2").transport);
+            assertEquals(50, pool.metrics().snapshot().operation(Operation.CREATE_LOBBY).successes());
+            assertEquals(50, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+            assertTrue(evicted);
+            assertEquals(49, pool.tenants().size());
+        }
+    }
+
+    @Test
+    void lobbySubscriptionsShouldReceiveTheirEventsAndResumeAfterADroppedStream() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        LobbyContext first = new LobbyContext(UUID.randomUUID());
+        LobbyContext second = new LobbyContext(UUID.randomUUID());
+        UUID playerId = UUID.randomUUID();
+        RecordingSubscriber firstEvents = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber secondEvents = new RecordingSubscriber(1);
+        sdk.subscribeLobby(first).subscribe(firstEvents);
+        sdk.subscribeLobby(second).subscribe(secondEvents);
+        // The stream covering the second lobby covers the first one as well
+        awaitUntil(() -> stub.openLobbyEventStreams(second.lobbyId()) == 1);
+
+        //Act
+        stub.publishLobbyEvent(first.lobbyId(), "PLAYER_JOINED", playerId);
+        stub.publishLobbyEvent(second.lobbyId(), "PLAYER_INVITED", playerId);
+        stub.publishLobbyEvent(second.lobbyId(), "PLAYER_JOINED", playerId);
+        awaitUntil(() -> firstEvents.events.size() == 1 && secondEvents.events.size() == 1);
+        stub.dropLobbyEventStreams();
+        stub.publishLobbyEvent(first.lobbyId(), "OWNER_CHANGED", playerId);
+        awaitUntil(() -> firstEvents.events.size() == 2);
+        int secondBeforeRequest = secondEvents.events.size();
+        secondEvents.subscription.request(1);
+        awaitUntil(() -> secondEvents.events.size() == 2);
+
+        //Assert
+        assertEquals(List.of(LobbyEvent.Type.PLAYER_JOINED, LobbyEvent.Type.OWNER_CHANGED), firstEvents.events.stream().map(LobbyEvent::type).toList());
+        assertEquals(List.of("1", "4"), firstEvents.events.stream().map(LobbyEvent::eventId).toList());
+        assertEquals(playerId, firstEvents.events.get(0).playerId());
+        assertEquals(1, secondBeforeRequest);
+        assertEquals(List.of(LobbyEvent.Type.PLAYER_INVITED, LobbyEvent.Type.PLAYER_JOINED), secondEvents.events.stream().map(LobbyEvent::type).toList());
+    }
+
+    @Test
+    void lobbySubscriptionsShouldResumeAfterTheLastEventIdWhenTheStreamEnds() {
+        //Arrange
+        List<Transport.Request> streams = new CopyOnWriteArrayList<>();
+        List<SubmissionPublisher<List<ByteBuffer>>> bodies = new CopyOnWriteArrayList<>();
+        initLoopback(new AtomicInteger(), request -> {
+            SubmissionPublisher<List<ByteBuffer>> body = new SubmissionPublisher<>();
+            streams.add(request);
+            bodies.add(body);
+            return LoopbackTransport.StreamReply.of(200, body);
+        });
+        LobbyContext lobby = new LobbyContext(UUID.randomUUID());
+        RecordingSubscriber events = new RecordingSubscriber(Long.MAX_VALUE);
+        sdk.subscribeLobby(lobby).subscribe(events);
+        awaitUntil(() -> bodies.size() == 1 && bodies.get(0).hasSubscribers());
+
+        //Act
+        bodies.get(0).submit(lobbyEvent("7", lobby, "PLAYER_JOINED"));
+        awaitUntil(() -> events.events.size() == 1);
+        bodies.get(0).close();
+        awaitUntil(() -> bodies.size() == 2 && bodies.get(1).hasSubscribers());
+        bodies.get(1).submit(lobbyEvent("8", lobby, "PLAYER_LEFT"));
+        awaitUntil(() -> events.events.size() == 2);
+
+        //Assert
+        assertNull(streams.get(0).headers().get("Last-Event-ID"));
+        assertEquals("7", streams.get(1).headers().get("Last-Event-ID"));
+        assertEquals(List.of("7", "8"), events.events.stream().map(LobbyEvent::eventId).toList());
+        assertEquals(LobbyEvent.Type.PLAYER_LEFT, events.events.get(1).type());
+    }
+
+    @Test
+    void lobbySubscriptionShouldPauseTheStreamWhileItsBufferIsFull() {
+        //Arrange
+        SubmissionPublisher<List<ByteBuffer>> body = new SubmissionPublisher<>();
+        initLoopback(new AtomicInteger(), request -> LoopbackTransport.StreamReply.of(200, body));
+        LobbyContext lobby = new LobbyContext(UUID.randomUUID());
+        RecordingSubscriber events = new RecordingSubscriber(0);
+        sdk.subscribeLobby(lobby).subscribe(events);
+        awaitUntil(body::hasSubscribers);
+        int published = LobbyEventStream.BUFFER_SIZE + 10;
+
+        //Act
+        for (int i = 1; i <= published; i++) body.submit(lobbyEvent(String.valueOf(i), lobby, "PLAYER_JOINED"));
+        awaitUntil(() -> body.estimateMaximumLag() == 10);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+        long lagWhilePaused = body.estimateMaximumLag();
+        int receivedWhilePaused = events.events.size();
+        events.subscription.request(Long.MAX_VALUE);
+        awaitUntil(() -> events.events.size() == published);
+
+        //Assert
+        assertEquals(10, lagWhilePaused);
+        assertEquals(0, receivedWhilePaused);
+        assertEquals(0, body.estimateMaximumLag());
+        assertEquals(String.valueOf(published), events.events.get(published - 1).eventId());
+    }
+
+    @Test
+    void rejectedLobbyStreamShouldBeReopenedWithANewToken() {
+        //Arrange
+        AtomicInteger authentications = new AtomicInteger();
+        List<Transport.Request> streams = new CopyOnWriteArrayList<>();
+        SubmissionPublisher<List<ByteBuffer>> body = new SubmissionPublisher<>();
+        initLoopback(authentications, request -> {
+            streams.add(request);
+            return streams.size() == 1 ? LoopbackTransport.StreamReply.of(403) : LoopbackTransport.StreamReply.of(200, body);
+        });
+        LobbyContext lobby = new LobbyContext(UUID.randomUUID());
+        RecordingSubscriber events = new RecordingSubscriber(Long.MAX_VALUE);
+
+        //Act
+        sdk.subscribeLobby(lobby).subscribe(events);
+        awaitUntil(body::hasSubscribers);
+        body.submit(lobbyEvent("1", lobby, "OPENED"));
+        awaitUntil(() -> events.events.size() == 1);
+
+        //Assert
+        assertEquals(2, authentications.get());
+        assertEquals(2, streams.size());
+        assertEquals("Bearer token-1", streams.get(0).headers().get("Authorization"));
+        assertEquals("Bearer token-2", streams.get(1).headers().get("Authorization"));
+    }
+
+    @Test
+    void lobbyPatchesShouldBeSentInOrderAndMergedWhileOneIsInFlight() throws IOException {
+        //Arrange
+        init(PlatformStub.builder().latency(PlatformStub.Endpoint.PATCH_LOBBY, LatencyModel.fixed(Duration.ofMillis(200))), ResiliencePolicy.disabled());
+        LobbyContext lobby = sdk.createLobby(new GameContext(UUID.randomUUID()), UUID.randomUUID(), 4);
+        UUID newOwnerId = UUID.randomUUID();
+
+        //Act
+        CompletableFuture<Void> first = sdk.updateLobbyPlayerCountAsync(lobby, 2);
+        CompletableFuture<Void> second = sdk.updateLobbyPlayerCountAsync(lobby, 3);
+        CompletableFuture<Void> third = sdk.changeLobbyOwnerAsync(lobby, newOwnerId);
+        CompletableFuture.allOf(first, second, third).join();
+        sdk.updateLobbyPlayerCount(lobby, 3);
+
+        //Assert
+        List<PlatformStub.RecordedRequest> patches = stub.recordedRequests(PlatformStub.Endpoint.PATCH_LOBBY);
+        assertEquals(2, patches.size());
+        assertTrue(patches.get(0).bodyAsString().contains("\"currentPlayerCount\":2"));
+        String merged = patches.get(1).bodyAsString();
+        assertTrue(merged.contains("\"currentPlayerCount\":3"));
+        assertTrue(merged.contains("\"ownerId\":\"" + newOwnerId + "\""));
+    }
+
+    @Test
+    void lobbyPatchesShouldBeSentAgainAfterTheLobbyChangedElsewhere() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        LobbyContext lobby = sdk.createLobby(new GameContext(UUID.randomUUID()), UUID.randomUUID(), 4);
+        RecordingSubscriber events = new RecordingSubscriber(Long.MAX_VALUE);
+        sdk.subscribeLobby(lobby).subscribe(events);
+        awaitUntil(() -> stub.openLobbyEventStreams(lobby.lobbyId()) == 1);
+        sdk.updateLobbyPlayerCount(lobby, 3);
+        sdk.closeLobby(lobby);
+
+        //Act
+        sdk.updateLobbyPlayerCount(lobby, 3);
+        long patchesBeforeEvents = stub.requestCount(PlatformStub.Endpoint.PATCH_LOBBY);
+        stub.publishLobbyEvent(lobby.lobbyId(), "PLAYER_LEFT", UUID.randomUUID());
+        stub.publishLobbyEvent(lobby.lobbyId(), "OPENED", null);
+        awaitUntil(() -> events.events.size() == 2);
+        sdk.updateLobbyPlayerCount(lobby, 3);
+        sdk.closeLobby(lobby);
+
+        //Assert
+        List<PlatformStub.RecordedRequest> patches = stub.recordedRequests(PlatformStub.Endpoint.PATCH_LOBBY);
+        assertEquals(2, patchesBeforeEvents);
+        assertEquals(4, patches.size());
+        assertTrue(patches.get(2).bodyAsString().contains("\"currentPlayerCount\":3"));
+        assertTrue(patches.get(3).bodyAsString().contains("\"closed\":true"));
+    }
+
+    @Test
+    void aggregatorShouldContinueFromTheSentTotalAfterForgettingIt() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        UUID playerId = UUID.randomUUID();
+        int heldWhileIdle;
+
+        //Act
+        try (AchievementAggregator aggregator = sdk.achievementAggregator().window(Duration.ofMillis(50)).expireAfter(Duration.ofMillis(100)).build()) {
+            for (int i = 0; i < 5; i++) aggregator.increment(ctx, playerId, 1);
+            awaitUntil(() -> stub.requestCount(PlatformStub.Endpoint.UPDATE_ACHIEVEMENT_PROGRESS) == 1);
+            // Two sweeps that see the same total forget its counter
+            awaitUntil(() -> aggregator.heldCounters() == 0);
+            heldWhileIdle = aggregator.heldCounters();
+            aggregator.increment(ctx, playerId, 1);
+        }
+
+        //Assert
+        List<PlatformStub.RecordedRequest> updates = stub.recordedRequests(PlatformStub.Endpoint.UPDATE_ACHIEVEMENT_PROGRESS);
+        assertEquals(0, heldWhileIdle);
+        assertEquals(2, updates.size());
+        assertTrue(updates.get(0).bodyAsString().contains("\"newProgressAmount\":5"));
+        assertTrue(updates.get(1).bodyAsString().contains("\"newProgressAmount\":6"));
+    }
+
+    @Test
+    void aggregatorShouldKeepIdleTotalsByDefault() throws IOException {
+        //Arrange
+        init(PlatformStub.builder());
+        GameContext ctx = new GameContext(UUID.randomUUID());
+        int heldWhileIdle;
+
+        //Act
+        try (AchievementAggregator aggregator = sdk.achievementAggregator().window(Duration.ofMillis(20)).build()) {
+            aggregator.increment(ctx, UUID.randomUUID(), 1);
+            awaitUntil(() -> stub.requestCount(PlatformStub.Endpoint.UPDATE_ACHIEVEMENT_PROGRESS) == 1);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(300));
+            heldWhileIdle = aggregator.heldCounters();
+        }
+
+        //Assert
+        assertEquals(1, heldWhileIdle);
+    }
+
+    @Test
+    void outboxShouldReplayUnsentRecordsAcrossSegmentsAfterReopening() throws IOException {
+        //Arrange
+        Path directory = Files.createTempDirectory("outbox");
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) bodies.add("{\"record\":" + i + "}");
+        appendWhileUnreachable(directory, bodies);
+        long segmentsWritten = segmentFiles(directory);
+        stub = PlatformStub.start();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).metrics(true).init("stub-key");
+
+        //Act
+        Outbox outbox = new Outbox(sdk, directory, OUTBOX_SEGMENT_SIZE);
+        // A record is acknowledged once its response arrived, closing before would send it again
+        awaitUntil(() -> sdk.metrics().snapshot().operation(Operation.SUBMIT_COMPLETED_SESSION).successes() == 10);
+        outbox.close();
+        ByteBuffer ack = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("outbox.ack")));
+        Outbox reopened = new Outbox(sdk, directory, OUTBOX_SEGMENT_SIZE);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(300));
+        reopened.close();
+
+        //Assert
+        assertTrue(segmentsWritten > 1);
+        assertEquals(bodies, stub.recordedRequests(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION).stream().map(PlatformStub.RecordedRequest::bodyAsString).toList());
+        // Sent segments are deleted and the ack points behind the last record of the one that is left
+        assertEquals(1, segmentFiles(directory));
+        assertEquals(segmentsWritten - 1, ack.getLong(0) >>> 32);
+        assertTrue((int) ack.getLong(0) > 0);
+        assertEquals(10, stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION));
+    }
+
+    @Test
+    void outboxShouldStopReplayingAtACorruptRecord() throws IOException {
+        //Arrange
+        Path directory = Files.createTempDirectory("outbox");
+        appendWhileUnreachable(directory, List.of("{\"record\":0}", "{\"record\":1}"));
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow();
+        }
+        byte[] content = Files.readAllBytes(segment);
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        content[text.indexOf("{\"record\":1}") + 10] = '7';
+        Files.write(segment, content);
+        init(PlatformStub.builder());
+
+        //Act
+        Outbox outbox = new Outbox(sdk, directory, OUTBOX_SEGMENT_SIZE);
+        awaitUntil(() -> stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION) == 1);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(300));
+        outbox.close();
+
+        //Assert
+        List<PlatformStub.RecordedRequest> sent = stub.recordedRequests(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION);
+        assertEquals(1, sent.size());
+        assertEquals("{\"record\":0}", sent.get(0).bodyAsString());
+    }
+
+    @Test
+    void outboxShouldNotReuseARejectedToken() throws IOException {
+        //Arrange
+        stub = PlatformStub.start();
+        sdk = new GameSDK.Builder().baseUrl(stub.baseUrl()).tokenStore(TokenStore.shared()).init("stub-key");
+        Outbox outbox = new Outbox(sdk, Files.createTempDirectory("outbox"), OUTBOX_SEGMENT_SIZE);
+        stub.expireTokens();
+
+        //Act
+        outbox.append(Outbox.SUBMIT_COMPLETED_SESSION, SUBMIT_PATH, "{}".getBytes(StandardCharsets.UTF_8));
+        awaitUntil(() -> stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION) == 2);
+        outbox.close();
+
+        //Assert
+        assertEquals(1, stub.statusCount(403));
+        assertEquals(2, stub.requestCount(PlatformStub.Endpoint.AUTHENTICATE));
+        assertEquals(2, stub.requestCount(PlatformStub.Endpoint.SUBMIT_COMPLETED_SESSION));
+    }
+
+    @Test
+    void outboxShouldKeepRetryingWhenTheTransportThrows() throws IOException {
+        //Arrange
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        LoopbackTransport transport = new LoopbackTransport(request -> {
+            if (request.uri().getPath().endsWith("/registry/auth")) return LoopbackTransport.Reply.of(200, "{\"access_token\":\"token\",\"expires_in\":3600}".getBytes(StandardCharsets.UTF_8));
+            if (attempts.incrementAndGet() <= 2) throw new IllegalStateException("Transport failure");
+            delivered.add(new String(request.body(), StandardCharsets.UTF_8));
+            return LoopbackTransport.Reply.of(200);
+        });
+        sdk = new GameSDK.Builder().baseUrl("http://loopback").transport(transport).init("loopback-key");
+        Outbox outbox = new Outbox(sdk, Files.createTempDirectory("outbox"), OUTBOX_SEGMENT_SIZE);
+
+        //Act
+        outbox.append(Outbox.SUBMIT_COMPLETED_SESSION, SUBMIT_PATH, "{\"record\":0}".getBytes(StandardCharsets.UTF_8));
+        outbox.append(Outbox.SUBMIT_COMPLETED_SESSION, SUBMIT_PATH, "{\"record\":1}".getBytes(StandardCharsets.UTF_8));
+        awaitUntil(() -> delivered.size() == 2);
+        outbox.close();
+
+        //Assert
+        assertEquals(List.of("{\"record\":0}", "{\"record\":1}"), delivered);
+        assertEquals(4, attempts.get());
+    }
+
+    /**
+     * Leaves the records unsent in the outbox directory, as after a crash while the statistics service was unreachable.
+     */
+    private static void appendWhileUnreachable(Path directory, List<String> bodies) throws IOException {
+        PlatformStub unreachable = PlatformStub.start();
+        try (GameSDK offline = new GameSDK.Builder().baseUrl(unreachable.baseUrl()).init("stub-key")) {
+            unreachable.close();
+            Outbox outbox = new Outbox(offline, directory, OUTBOX_SEGMENT_SIZE);
+            for (String body : bodies) outbox.append(Outbox.SUBMIT_COMPLETED_SESSION, SUBMIT_PATH, body.getBytes(StandardCharsets.UTF_8));
+            outbox.close();
+        }
+    }
+
+    private static long segmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).count();
+        }
+    }
+
+    private static List<ByteBuffer> lobbyEvent(String id, LobbyContext lobby, String type) {
+        String event = "id: " + id + "\nevent: " + type + "\ndata: {\"lobbyId\":\"" + lobby.lobbyId() + "\"}\n\n";
+        return List.of(ByteBuffer.wrap(event.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() - deadline < 0, "Condition not met within 10 seconds");
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<LobbyEvent> {
+        private final long initialRequest;
+        private final List<LobbyEvent> events = new CopyOnWriteArrayList<>();
+        private volatile Flow.Subscription subscription;
+
+        private RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(LobbyEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
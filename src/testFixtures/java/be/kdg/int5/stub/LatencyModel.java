@@ -0,0 +1,66 @@
+package be.kdg.int5.stub;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * How long the {@link PlatformStub} waits before answering a request.
+ * <br><br>
+ * Samples are drawn from the random generator the stub hands in, which is derived from its seed and the sequence
+ * number of the request, so a run with the same seed and the same request order sees the same latencies.
+ */
+@FunctionalInterface
+public interface LatencyModel {
+    /**
+     * @return the delay in nanoseconds, 0 or less for none
+     */
+    long sampleNanos(RandomGenerator random);
+
+    static LatencyModel none() {
+        return random -> 0;
+    }
+
+    static LatencyModel fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return random -> nanos;
+    }
+
+    static LatencyModel uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if (maxNanos < minNanos) throw new IllegalArgumentException("max must not be smaller than min");
+        return random -> minNanos == maxNanos ? minNanos : random.nextLong(minNanos, maxNanos + 1);
+    }
+
+    /**
+     * @param mean the average latency
+     * @return exponentially distributed latencies, many short ones and a long tail
+     */
+    static LatencyModel exponential(Duration mean) {
+        double meanNanos = mean.toNanos();
+        return random -> (long) (random.nextExponential() * meanNanos);
+    }
+
+    /**
+     * Log-normal latencies, the usual shape of service response times.
+     * @param median the 50th percentile
+     * @param p99 the 99th percentile, at least the median
+     */
+    static LatencyModel logNormal(Duration median, Duration p99) {
+        if (p99.compareTo(median) < 0) throw new IllegalArgumentException("p99 must not be smaller than the median");
+        double mu = Math.log(median.toNanos());
+        // 2.326 is the 99th percentile of the standard normal distribution
+        double sigma = (Math.log(p99.toNanos()) - mu) / 2.326;
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+
+    /**
+     * @param probability the chance a request gets the spike on top of its latency, between 0 and 1
+     * @param spike the extra latency, e.g. a garbage collection pause or a cold cache
+     * @return this model with occasional spikes
+     */
+    default LatencyModel withSpikes(double probability, Duration spike) {
+        long spikeNanos = spike.toNanos();
+        return random -> sampleNanos(random) + (random.nextDouble() < probability ? spikeNanos : 0);
+    }
+}
@@ -0,0 +1,595 @@
+package be.kdg.int5.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * In-process stand-in for the registry, gameplay and statistics services, for load tests of game servers that use the SDK.
+ * <br><br>
+ * The stub runs on {@code com.sun.net.httpserver} with a virtual thread per request, so latency is simulated by
+ * sleeping without tying up platform threads. On top of the happy path it can inject latency per endpoint, server
+ * errors, expiring tokens (answered with 403 like the platform does) and throttling (429), and it records every request
+ * it received. Point the SDK at {@link #baseUrl()} with {@code GameSDK.Builder.baseUrl(String)}.
+ * <br><br>
+ * Like a platform service behind a compressing proxy, the stub accepts gzip and deflate request bodies and compresses
+ * response bodies for clients that send {@code Accept-Encoding}.
+ * <br><br>
+ * Lobby events published with {@link #publishLobbyEvent(UUID, String, UUID)} are pushed over {@code POST /lobby/events}
+ * as server-sent events with increasing numeric ids, a stream that sends {@code Last-Event-ID} first gets the events of
+ * its lobbies after that id. {@link #dropLobbyEventStreams()} ends the open streams to test resumption.
+ * <br><br>
+ * <i>Note: Random decisions (latency, errors) are drawn from the seed and the sequence number of the request, a run
+ * with the same seed and request order behaves the same.</i>
+ */
+public class PlatformStub implements AutoCloseable {
+    public enum Endpoint {
+        AUTHENTICATE("POST", 200),
+        REGISTER_GAME("PATCH", 200),
+        CREATE_LOBBY("POST", 201),
+        PATCH_LOBBY("PATCH", 200),
+        SUBMIT_COMPLETED_SESSION("POST", 200),
+        UPDATE_ACHIEVEMENT_PROGRESS("POST", 200),
+        LOBBY_EVENTS("POST", 200);
+
+        private final String method;
+        private final int successStatus;
+
+        Endpoint(String method, int successStatus) {
+            this.method = method;
+            this.successStatus = successStatus;
+        }
+
+        static Endpoint match(String method, String path) {
+            Endpoint endpoint = switch (path) {
+                case "/registry/auth" -> AUTHENTICATE;
+                case "/registry/games" -> REGISTER_GAME;
+                case "/lobby" -> method.equals("POST") ? CREATE_LOBBY : PATCH_LOBBY;
+                case "/lobby/events" -> LOBBY_EVENTS;
+                case "/statistics/submit" -> SUBMIT_COMPLETED_SESSION;
+                default -> path.startsWith("/statistics/achievements/") ? UPDATE_ACHIEVEMENT_PROGRESS : null;
+            };
+            return endpoint != null && endpoint.method.equals(method) ? endpoint : null;
+        }
+    }
+
+    /**
+     * @param sequence the order in which the stub received the request, starting at 0
+     * @param status the status the stub answered with
+     * @param authorization the {@code Authorization} header, or null
+     * @param contentEncoding the {@code Content-Encoding} header, or null
+     * @param wireSize the size of the request body as it was sent, before decompressing it
+     * @param body the (decompressed) request body, empty when payload recording is disabled
+     */
+    public record RecordedRequest(
+            long sequence,
+            Endpoint endpoint,
+            String method,
+            URI uri,
+            int status,
+            String authorization,
+            String contentEncoding,
+            int wireSize,
+            byte[] body
+    ) {
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final Pattern UUID_PATTERN = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long seed;
+    private final LatencyModel defaultLatency;
+    private final Map<Endpoint, LatencyModel> latencies;
+    private final double defaultErrorRate;
+    private final Map<Endpoint, Double> errorRates;
+    private final Duration tokenLifetime;
+    private final boolean recordRequests;
+    private final boolean recordPayloads;
+    private final TokenBucket throttle;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+    private final Queue<RecordedRequest> recorded = new ConcurrentLinkedQueue<>();
+    private final Map<Endpoint, LongAdder> counts = new EnumMap<>(Endpoint.class);
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lobbyEventsLock = new ReentrantLock();
+    private final Condition lobbyEventsChanged = lobbyEventsLock.newCondition();
+    // Guarded by lobbyEventsLock, the id of an event is its index + 1
+    private final List<PublishedLobbyEvent> lobbyEvents = new ArrayList<>();
+    private final List<Set<UUID>> lobbyEventStreams = new ArrayList<>();
+    private long lobbyEventStreamDrops;
+
+    private PlatformStub(Builder builder) throws IOException {
+        this.seed = builder.seed;
+        this.defaultLatency = builder.defaultLatency;
+        this.latencies = Map.copyOf(builder.latencies);
+        this.defaultErrorRate = builder.defaultErrorRate;
+        this.errorRates = Map.copyOf(builder.errorRates);
+        this.tokenLifetime = builder.tokenLifetime;
+        this.recordRequests = builder.recordRequests;
+        this.recordPayloads = builder.recordPayloads;
+        this.throttle = builder.requestsPerSecond > 0 ? new TokenBucket(builder.requestsPerSecond, builder.burst) : null;
+        for (Endpoint endpoint : Endpoint.values()) counts.put(endpoint, new LongAdder());
+
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), builder.backlog);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a stub with the default settings: no latency, no errors, no throttling and tokens valid for an hour
+     */
+    public static PlatformStub start() throws IOException {
+        return builder().start();
+    }
+
+    /**
+     * @return the base url of all three services, e.g. {@code http://127.0.0.1:43127}
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Invalidates every token handed out so far, the next request with one of them is answered with 403.
+     */
+    public void expireTokens() {
+        tokens.clear();
+    }
+
+    /**
+     * @return the requests received so far, in the order they were received
+     */
+    public List<RecordedRequest> recordedRequests() {
+        List<RecordedRequest> requests = new ArrayList<>(recorded);
+        requests.sort((a, b) -> Long.compare(a.sequence(), b.sequence()));
+        return requests;
+    }
+
+    public List<RecordedRequest> recordedRequests(Endpoint endpoint) {
+        return recordedRequests().stream().filter(request -> request.endpoint() == endpoint).toList();
+    }
+
+    /**
+     * @return how many requests for the endpoint were received, including the ones that were answered with an error
+     */
+    public long requestCount(Endpoint endpoint) {
+        return counts.get(endpoint).sum();
+    }
+
+    /**
+     * @return how many responses with the status were sent
+     */
+    public long statusCount(int status) {
+        LongAdder count = statusCounts.get(status);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Forgets the recorded requests and counts, issued tokens stay valid.
+     */
+    public void reset() {
+        recorded.clear();
+        counts.values().forEach(LongAdder::reset);
+        statusCounts.clear();
+    }
+
+    /**
+     * Appends an event to the lobby event log, it is pushed to the open lobby event streams that cover the lobby.
+     * @param type the event type, e.g. {@code PLAYER_JOINED}
+     * @param playerId the player the event is about, or null
+     * @return the id of the event
+     */
+    public String publishLobbyEvent(UUID lobbyId, String type, UUID playerId) {
+        lobbyEventsLock.lock();
+        try {
+            lobbyEvents.add(new PublishedLobbyEvent(Objects.requireNonNull(lobbyId), Objects.requireNonNull(type), playerId));
+            lobbyEventsChanged.signalAll();
+            return String.valueOf(lobbyEvents.size());
+        } finally {
+            lobbyEventsLock.unlock();
+        }
+    }
+
+    /**
+     * Ends every open lobby event stream, like a proxy that drops long-lived connections.
+     */
+    public void dropLobbyEventStreams() {
+        lobbyEventsLock.lock();
+        try {
+            lobbyEventStreamDrops++;
+            lobbyEventsChanged.signalAll();
+        } finally {
+            lobbyEventsLock.unlock();
+        }
+    }
+
+    /**
+     * @return how many open lobby event streams cover the lobby
+     */
+    public int openLobbyEventStreams(UUID lobbyId) {
+        lobbyEventsLock.lock();
+        try {
+            return (int) lobbyEventStreams.stream().filter(lobbyIds -> lobbyIds.contains(lobbyId)).count();
+        } finally {
+            lobbyEventsLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long number = sequence.getAndIncrement();
+        SplittableRandom random = new SplittableRandom(seed + number * GOLDEN_GAMMA);
+
+        byte[] wireBody;
+        try (InputStream input = exchange.getRequestBody()) {
+            wireBody = input.readAllBytes();
+        }
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        byte[] requestBody;
+        try {
+            requestBody = decompress(wireBody, contentEncoding);
+        } catch (IOException e) {
+            exchange.sendResponseHeaders(contentEncoding != null && isSupported(contentEncoding) ? 400 : 415, -1);
+            exchange.close();
+            return;
+        }
+        String method = exchange.getRequestMethod();
+        URI uri = exchange.getRequestURI();
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        Endpoint endpoint = Endpoint.match(method, uri.getPath());
+
+        LatencyModel latency = endpoint == null ? defaultLatency : latencies.getOrDefault(endpoint, defaultLatency);
+        long latencyNanos = latency.sampleNanos(random);
+        if (latencyNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            } catch (InterruptedException e) {
+                exchange.close();
+                return;
+            }
+        }
+
+        int status;
+        byte[] responseBody = null;
+        if (endpoint == null) {
+            status = 404;
+        } else if (throttle != null && !throttle.tryAcquire()) {
+            status = 429;
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        } else if (random.nextDouble() < errorRates.getOrDefault(endpoint, defaultErrorRate)) {
+            status = 500;
+        } else if (endpoint == Endpoint.AUTHENTICATE) {
+            status = endpoint.successStatus;
+            responseBody = issueToken();
+        } else if (!isValid(authorization)) {
+            status = 403;
+        } else {
+            status = endpoint.successStatus;
+            if (endpoint == Endpoint.REGISTER_GAME || endpoint == Endpoint.CREATE_LOBBY) {
+                responseBody = ("{\"uuid\":\"" + UUID.randomUUID() + "\"}").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        if (endpoint != null) counts.get(endpoint).increment();
+        statusCounts.computeIfAbsent(status, s -> new LongAdder()).increment();
+        if (recordRequests) recorded.add(new RecordedRequest(number, endpoint, method, uri, status, authorization, contentEncoding, wireBody.length, recordPayloads ? requestBody : new byte[0]));
+
+        if (endpoint == Endpoint.LOBBY_EVENTS && status == endpoint.successStatus) {
+            streamLobbyEvents(exchange, requestBody, exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+            return;
+        }
+
+        if (responseBody != null) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            String accepted = acceptedEncoding(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            if (accepted != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", accepted);
+                responseBody = compress(responseBody, accepted);
+            }
+        }
+        exchange.sendResponseHeaders(status, responseBody == null ? -1 : responseBody.length);
+        if (responseBody != null) exchange.getResponseBody().write(responseBody);
+        exchange.close();
+    }
+
+    /**
+     * Writes the events of the requested lobbies until the stream is dropped or the client goes away,
+     * with a comment line as heartbeat when there is nothing to send.
+     */
+    private void streamLobbyEvents(HttpExchange exchange, byte[] requestBody, String lastEventId) throws IOException {
+        Set<UUID> lobbyIds = new HashSet<>();
+        Matcher matcher = UUID_PATTERN.matcher(new String(requestBody, StandardCharsets.UTF_8));
+        while (matcher.find()) lobbyIds.add(UUID.fromString(matcher.group()));
+        int next;
+        try {
+            next = lastEventId == null ? 0 : Math.max(0, Integer.parseInt(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            next = 0;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream output = exchange.getResponseBody();
+        // Sends the headers, so the client sees the stream open before the first event
+        output.flush();
+        long drops;
+        lobbyEventsLock.lock();
+        try {
+            drops = lobbyEventStreamDrops;
+            lobbyEventStreams.add(lobbyIds);
+        } finally {
+            lobbyEventsLock.unlock();
+        }
+        try {
+            while (true) {
+                StringBuilder pending = new StringBuilder();
+                lobbyEventsLock.lock();
+                try {
+                    long remaining = HEARTBEAT_NANOS;
+                    while (next >= lobbyEvents.size() && drops == lobbyEventStreamDrops && remaining > 0) {
+                        remaining = lobbyEventsChanged.awaitNanos(remaining);
+                    }
+                    if (drops != lobbyEventStreamDrops) return;
+                    for (; next < lobbyEvents.size(); next++) {
+                        PublishedLobbyEvent event = lobbyEvents.get(next);
+                        if (!lobbyIds.contains(event.lobbyId())) continue;
+                        pending.append("id: ").append(next + 1).append('\n')
+                                .append("event: ").append(event.type()).append('\n')
+                                .append("data: {\"lobbyId\":\"").append(event.lobbyId()).append('"');
+                        if (event.playerId() != null) pending.append(",\"playerId\":\"").append(event.playerId()).append('"');
+                        pending.append("}\n\n");
+                    }
+                } finally {
+                    lobbyEventsLock.unlock();
+                }
+                output.write((pending.isEmpty() ? ":\n\n" : pending.toString()).getBytes(StandardCharsets.UTF_8));
+                output.flush();
+            }
+        } catch (InterruptedException e) {
+            // The stub is closing
+        } finally {
+            lobbyEventsLock.lock();
+            try {
+                lobbyEventStreams.removeIf(open -> open == lobbyIds);
+            } finally {
+                lobbyEventsLock.unlock();
+            }
+            exchange.close();
+        }
+    }
+
+    private static boolean isSupported(String contentEncoding) {
+        return contentEncoding.equalsIgnoreCase("gzip") || contentEncoding.equalsIgnoreCase("deflate");
+    }
+
+    private static byte[] decompress(byte[] body, String contentEncoding) throws IOException {
+        if (contentEncoding == null || contentEncoding.equalsIgnoreCase("identity")) return body;
+        if (!isSupported(contentEncoding)) throw new IOException("Unsupported Content-Encoding " + contentEncoding);
+        InputStream input = new ByteArrayInputStream(body);
+        try (InputStream decompressed = contentEncoding.equalsIgnoreCase("gzip") ? new GZIPInputStream(input) : new InflaterInputStream(input)) {
+            return decompressed.readAllBytes();
+        }
+    }
+
+    private static String acceptedEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) return null;
+        for (String coding : acceptEncoding.split(",")) {
+            String name = coding.split(";")[0].trim();
+            if (isSupported(name)) return name.toLowerCase(Locale.ROOT);
+        }
+        return null;
+    }
+
+    private static byte[] compress(byte[] body, String contentEncoding) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream compressed = contentEncoding.equals("gzip") ? new GZIPOutputStream(output) : new DeflaterOutputStream(output)) {
+            compressed.write(body);
+        }
+        return output.toByteArray();
+    }
+
+    private byte[] issueToken() {
+        String token = UUID.randomUUID().toString();
+        tokens.put(token, System.nanoTime() + tokenLifetime.toNanos());
+        return ("{\"access_token\":\"" + token + "\",\"token_type\":\"Bearer\",\"expires_in\":" + tokenLifetime.toSeconds() + "}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean isValid(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) return false;
+        Long expiresAt = tokens.get(authorization.substring("Bearer ".length()));
+        return expiresAt != null && expiresAt - System.nanoTime() > 0;
+    }
+
+    private record PublishedLobbyEvent(UUID lobbyId, String type, UUID playerId) {
+    }
+
+    private static final class TokenBucket {
+        private final double permitsPerNano;
+        private final double capacity;
+        private double available;
+        private long refilledAt = System.nanoTime();
+
+        private TokenBucket(int permitsPerSecond, int burst) {
+            this.permitsPerNano = permitsPerSecond / 1e9;
+            this.capacity = Math.max(1, burst);
+            this.available = capacity;
+        }
+
+        private synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            available = Math.min(capacity, available + (now - refilledAt) * permitsPerNano);
+            refilledAt = now;
+            if (available < 1) return false;
+            available--;
+            return true;
+        }
+    }
+
+
+    public static class Builder {
+        private int port;
+        private int backlog = 1024;
+        private long seed = 42;
+        private LatencyModel defaultLatency = LatencyModel.none();
+        private final Map<Endpoint, LatencyModel> latencies = new EnumMap<>(Endpoint.class);
+        private double defaultErrorRate;
+        private final Map<Endpoint, Double> errorRates = new EnumMap<>(Endpoint.class);
+        private Duration tokenLifetime = Duration.ofHours(1);
+        private int requestsPerSecond;
+        private int burst;
+        private boolean recordRequests = true;
+        private boolean recordPayloads = true;
+
+        private Builder() {
+        }
+
+        /**
+         * @param port the port to listen on, 0 (the default) for a free one
+         * @return the builder
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param latency the latency of every endpoint that has none of its own
+         * @return the builder
+         */
+        public Builder latency(LatencyModel latency) {
+            this.defaultLatency = Objects.requireNonNull(latency);
+            return this;
+        }
+
+        public Builder latency(Endpoint endpoint, LatencyModel latency) {
+            this.latencies.put(endpoint, Objects.requireNonNull(latency));
+            return this;
+        }
+
+        /**
+         * @param errorRate the share of requests answered with 500, between 0 and 1, for every endpoint that has none of its own
+         * @return the builder
+         */
+        public Builder errorRate(double errorRate) {
+            this.defaultErrorRate = checkRate(errorRate);
+            return this;
+        }
+
+        public Builder errorRate(Endpoint endpoint, double errorRate) {
+            this.errorRates.put(endpoint, checkRate(errorRate));
+            return this;
+        }
+
+        /**
+         * Requests with a token older than this are answered with 403, like the platform does with an expired token.
+         * @param tokenLifetime how long a token stays valid, also reported as {@code expires_in}
+         * @return the builder
+         */
+        public Builder tokenLifetime(Duration tokenLifetime) {
+            if (tokenLifetime.toSeconds() < 1) throw new IllegalArgumentException("tokenLifetime must be at least one second");
+            this.tokenLifetime = tokenLifetime;
+            return this;
+        }
+
+        /**
+         * Answers requests over the limit with 429 and {@code Retry-After: 1}.
+         * @param requestsPerSecond the sustained rate over all endpoints
+         * @param burst how many requests can be made at once after a quiet period
+         * @return the builder
+         */
+        public Builder throttle(int requestsPerSecond, int burst) {
+            if (requestsPerSecond <= 0) throw new IllegalArgumentException("requestsPerSecond must be positive");
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * @param recordRequests false to only keep the counts, e.g. for long load tests
+         * @return the builder
+         */
+        public Builder recordRequests(boolean recordRequests) {
+            this.recordRequests = recordRequests;
+            return this;
+        }
+
+        /**
+         * @param recordPayloads false to only record the metadata of requests and drop their bodies
+         * @return the builder
+         */
+        public Builder recordPayloads(boolean recordPayloads) {
+            this.recordPayloads = recordPayloads;
+            return this;
+        }
+
+        public PlatformStub start() throws IOException {
+            return new PlatformStub(this);
+        }
+
+        private static double checkRate(double rate) {
+            if (rate < 0 || rate > 1) throw new IllegalArgumentException("rate must be between 0 and 1");
+            return rate;
+        }
+    }
+}